@@ -0,0 +1,358 @@
+package com.example.flutterdynamic
+
+import android.content.Context
+import android.content.res.AssetManager
+import android.util.Log
+import com.example.flutterdynamic.mode.AssetPackageInfo
+import com.example.flutterdynamic.util.MD5Util
+import com.google.gson.Gson
+import java.io.File
+import java.io.FileOutputStream
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.ZipFile
+
+/**
+ * Flutter资源包管理器
+ * 负责flutter_assets资源包的校验、安装和查找
+ *
+ * 资源包本身按 `assets/flutter_assets/...` 组织，安装后直接作为AssetManager的资源路径使用，
+ * 不再解压，只有icudtl.dat会被解出供引擎按路径读取
+ *
+ * 与 [SoStore] 使用相同的校验和淘汰策略：安装时记录文件的校验信息（[SoStore.Verification]），
+ * 之后启动时只做快速检查，加载后在后台抽样完整校验；索引保存在 `flutter_assets_packages/index.json`，
+ * 当前进程使用中、最近一次激活和暂存待激活的组合引用的资源包之外，按最近使用时间和总大小淘汰。
+ */
+object AssetPackageManager {
+
+    private const val TAG = "AssetPackageManager"
+    private const val PACKAGE_INFO_FILE = "package_info.json"
+    private const val INSTALL_DIR = "flutter_assets_packages"
+    private const val BUNDLE_FILE = "assets.zip"
+    private const val ICU_DATA_FILE = "icudtl.dat"
+    private const val INDEX_FILE = "index.json"
+    private const val TEMP_SUFFIX = ".tmp"
+
+    /**
+     * 已安装的资源包
+     * @param bundlePath 资源包路径，作为AssetManager的资源路径
+     * @param icuDataPath 解出的icudtl.dat路径，资源包中没有时为null
+     */
+    data class AssetBundle(
+        val version: String,
+        val md5: String,
+        val bundlePath: String,
+        val icuDataPath: String?
+    )
+
+    /**
+     * 索引中的一个资源包
+     * @param md5 资源包MD5（内容地址，即assets.zip的MD5）
+     * @param icuMd5 解出的icudtl.dat的MD5，资源包中没有时为null
+     */
+    private data class Entry(
+        val md5: String,
+        val version: String,
+        val size: Long,
+        val icuMd5: String?,
+        val installTime: Long,
+        var lastUsed: Long,
+        var verification: SoStore.Verification? = null,
+        var icuVerification: SoStore.Verification? = null
+    )
+
+    private class Index {
+        var entries: MutableList<Entry> = mutableListOf()
+    }
+
+    private var index: Index? = null
+
+    // 当前进程正在使用的资源包，AssetManager已打开，不能被淘汰
+    private val inUse = ConcurrentHashMap.newKeySet<String>()
+
+    private fun root(context: Context) = File(context.filesDir, INSTALL_DIR)
+
+    /**
+     * 查找已安装的资源包，文件缺失或与安装时的校验记录不符时移除
+     */
+    @Synchronized
+    fun findInstalled(context: Context, md5: String, version: String = ""): AssetBundle? {
+        if (md5.isEmpty()) return null
+        val index = loadIndex(context)
+        val dir = File(root(context), md5)
+        val entry = index.entries.firstOrNull { it.md5 == md5 }
+            ?: adoptLegacy(context, dir, md5, version)
+            ?: return null
+        if (!isIntact(dir, entry)) {
+            Log.w(TAG, "资源包缺失或已损坏，移除: $md5")
+            index.entries.remove(entry)
+            dir.deleteRecursively()
+            saveIndex(context)
+            return null
+        }
+        entry.lastUsed = System.currentTimeMillis()
+        saveIndex(context)
+        return toBundle(dir, entry, version)
+    }
+
+    /**
+     * 旧版本安装的资源包没有索引记录（安装时已逐个校验过文件），按当前文件补写记录
+     */
+    private fun adoptLegacy(context: Context, dir: File, md5: String, version: String): Entry? {
+        val bundle = File(dir, BUNDLE_FILE)
+        if (!bundle.exists()) {
+            return null
+        }
+        val now = System.currentTimeMillis()
+        val icuData = File(dir, ICU_DATA_FILE)
+        val entry = Entry(md5, version, bundle.length(), null, now, now,
+            SoStore.fingerprint(bundle, 0),
+            if (icuData.exists()) SoStore.fingerprint(icuData, 0) else null)
+        if (entry.verification == null) {
+            return null
+        }
+        loadIndex(context).entries.add(entry)
+        return entry
+    }
+
+    private fun isIntact(dir: File, entry: Entry): Boolean {
+        val bundleVerification = entry.verification ?: return false
+        if (!SoStore.matches(File(dir, BUNDLE_FILE), bundleVerification)) {
+            return false
+        }
+        val icuVerification = entry.icuVerification ?: return true
+        return SoStore.matches(File(dir, ICU_DATA_FILE), icuVerification)
+    }
+
+    private fun toBundle(dir: File, entry: Entry, version: String): AssetBundle {
+        val icuData = File(dir, ICU_DATA_FILE)
+        return AssetBundle(
+            version.ifEmpty { entry.version },
+            entry.md5,
+            File(dir, BUNDLE_FILE).absolutePath,
+            if (entry.icuVerification != null) icuData.absolutePath else null
+        )
+    }
+
+    /**
+     * 校验并安装资源包
+     * @param zipFile 下载的资源包
+     * @param expectedMd5 资源包MD5（内容地址），为空时使用实际MD5
+     */
+    fun installAssetPackage(context: Context, zipFile: File, expectedMd5: String): AssetBundle? {
+        try {
+            val actualMd5 = MD5Util.getFileMD5(zipFile)
+            if (expectedMd5.isNotEmpty() && actualMd5 != expectedMd5) {
+                Log.e(TAG, "资源包MD5校验失败: 期望=$expectedMd5, 实际=$actualMd5")
+                return null
+            }
+
+            val installRoot = root(context)
+            val tempDir = File(installRoot, "$actualMd5$TEMP_SUFFIX")
+            tempDir.deleteRecursively()
+            tempDir.mkdirs()
+
+            val packageInfo = ZipFile(zipFile).use { zip ->
+                val infoEntry = zip.getEntry(PACKAGE_INFO_FILE)
+                if (infoEntry == null) {
+                    Log.e(TAG, "包信息文件不存在: $PACKAGE_INFO_FILE")
+                    return null
+                }
+                val info = zip.getInputStream(infoEntry).use { it.readBytes().decodeToString() }
+                val packageInfo = Gson().fromJson(info, AssetPackageInfo::class.java)
+
+                // 逐个校验资源文件
+                for ((path, md5) in packageInfo.files) {
+                    val entry = zip.getEntry("assets/$path")
+                    if (entry == null) {
+                        Log.e(TAG, "资源文件缺失: $path")
+                        return null
+                    }
+                    val digest = MessageDigest.getInstance("MD5")
+                    val icuOutput = if (path == ICU_DATA_FILE) FileOutputStream(File(tempDir, ICU_DATA_FILE)) else null
+                    zip.getInputStream(entry).use { input ->
+                        icuOutput.use { output ->
+                            val buffer = ByteArray(8192)
+                            var bytesRead: Int
+                            while (input.read(buffer).also { bytesRead = it } != -1) {
+                                digest.update(buffer, 0, bytesRead)
+                                output?.write(buffer, 0, bytesRead)
+                            }
+                        }
+                    }
+                    val actual = digest.digest().joinToString("") { "%02x".format(it) }
+                    if (actual != md5) {
+                        Log.e(TAG, "资源文件MD5校验失败: $path, 期望=$md5, 实际=$actual")
+                        tempDir.deleteRecursively()
+                        return null
+                    }
+                }
+                packageInfo
+            }
+
+            val bundleTemp = File(tempDir, BUNDLE_FILE)
+            if (!zipFile.renameTo(bundleTemp)) {
+                zipFile.copyTo(bundleTemp, overwrite = true)
+                zipFile.delete()
+            }
+
+            return commit(context, tempDir, actualMd5, packageInfo)
+        } catch (e: Exception) {
+            Log.e(TAG, "安装资源包失败", e)
+            return null
+        }
+    }
+
+    /**
+     * 整个目录原子替换，保证可见的资源包都已校验，并记录校验信息
+     */
+    @Synchronized
+    private fun commit(context: Context, tempDir: File, md5: String, packageInfo: AssetPackageInfo): AssetBundle? {
+        val index = loadIndex(context)
+        val installDir = File(root(context), md5)
+        index.entries.removeAll { it.md5 == md5 }
+        installDir.deleteRecursively()
+        if (!tempDir.renameTo(installDir)) {
+            Log.e(TAG, "资源包安装失败: ${installDir.absolutePath}")
+            tempDir.deleteRecursively()
+            saveIndex(context)
+            return null
+        }
+        val now = System.currentTimeMillis()
+        val bundle = File(installDir, BUNDLE_FILE)
+        val icuData = File(installDir, ICU_DATA_FILE)
+        val icuMd5 = packageInfo.files[ICU_DATA_FILE]
+        val entry = Entry(md5, packageInfo.version, bundle.length(), icuMd5, now, now,
+            SoStore.fingerprint(bundle, now),
+            if (icuMd5 != null) SoStore.fingerprint(icuData, now) else null)
+        index.entries.add(entry)
+        saveIndex(context)
+        Log.i(TAG, "资源包安装成功: 版本=${packageInfo.version}, 文件数=${packageInfo.files.size}")
+        return toBundle(installDir, entry, packageInfo.version)
+    }
+
+    /**
+     * 标记资源包正在被当前进程使用
+     */
+    fun acquire(bundle: AssetBundle) {
+        inUse.add(bundle.md5)
+    }
+
+    /**
+     * 后台抽样完整校验已加载的资源包，抽样规则与 [SoStore.rehashSampled] 相同。
+     * MD5不一致时移除，下次冷启动重新下载（当前进程已打开，无法替换）
+     */
+    fun rehashSampled(context: Context, bundle: AssetBundle) {
+        val now = System.currentTimeMillis()
+        val entry = synchronized(this) {
+            loadIndex(context).entries.firstOrNull { it.md5 == bundle.md5 }
+        } ?: return
+        if (!SoStore.shouldRehash(entry.verification, now)) {
+            return
+        }
+        // 计算MD5时不持有锁
+        val dir = File(root(context), entry.md5)
+        val bundleMd5 = MD5Util.getFileMD5(File(dir, BUNDLE_FILE))
+        val icuMd5 = entry.icuMd5?.let { MD5Util.getFileMD5(File(dir, ICU_DATA_FILE)) }
+        synchronized(this) {
+            val index = loadIndex(context)
+            if (bundleMd5 == entry.md5 && icuMd5 == entry.icuMd5) {
+                entry.verification = entry.verification?.copy(verifiedAt = now)
+                entry.icuVerification = entry.icuVerification?.copy(verifiedAt = now)
+            } else {
+                Log.e(TAG, "资源包MD5校验失败，移除: ${entry.md5}, 实际=$bundleMd5")
+                index.entries.remove(entry)
+                inUse.remove(entry.md5)
+                dir.deleteRecursively()
+            }
+            saveIndex(context)
+        }
+    }
+
+    /**
+     * 淘汰旧资源包：先删除超过保留时间的，再按最近使用时间删除直到总大小不超过上限
+     * 当前进程使用中、最近一次激活和暂存待激活的组合引用的资源包不会被删除
+     */
+    @Synchronized
+    fun evict(
+        context: Context,
+        maxBytes: Long = SoStore.DEFAULT_MAX_BYTES,
+        maxAgeMs: Long = SoStore.DEFAULT_MAX_AGE_MS
+    ) {
+        val index = loadIndex(context)
+        val now = System.currentTimeMillis()
+        val protected = SoStore.referencedAssets(context) + inUse
+        val candidates = index.entries.filter { it.md5 !in protected }.sortedBy { it.lastUsed }
+        var totalBytes = index.entries.sumOf { it.size }
+        val removed = mutableListOf<Entry>()
+        for (entry in candidates) {
+            if (now - entry.lastUsed <= maxAgeMs && totalBytes <= maxBytes) {
+                continue
+            }
+            File(root(context), entry.md5).deleteRecursively()
+            totalBytes -= entry.size
+            removed.add(entry)
+            Log.i(TAG, "淘汰资源包: ${entry.md5}, 版本: ${entry.version}")
+        }
+        // 清理中断安装留下的临时目录（跳过可能正在安装的）
+        root(context).listFiles()?.forEach { dir ->
+            if (dir.isDirectory && dir.name.endsWith(TEMP_SUFFIX) && now - dir.lastModified() > SoStore.STAGING_EXPIRE_MS) {
+                dir.deleteRecursively()
+            }
+        }
+        if (removed.isNotEmpty()) {
+            index.entries.removeAll(removed)
+            saveIndex(context)
+        }
+    }
+
+    /**
+     * 创建只包含资源包的AssetManager，供引擎读取flutter_assets
+     */
+    fun createAssetManager(bundle: AssetBundle): AssetManager {
+        val assetManager = AssetManager::class.java.getDeclaredConstructor().newInstance()
+        val addAssetPath = ShareReflectUtil.findMethod(assetManager, "addAssetPath", String::class.java)
+        val cookie = addAssetPath.invoke(assetManager, bundle.bundlePath) as Int
+        if (cookie == 0) {
+            throw IllegalStateException("添加资源包失败: ${bundle.bundlePath}")
+        }
+        return assetManager
+    }
+
+    /**
+     * 清理资源包
+     */
+    @Synchronized
+    fun clearAssetCache(context: Context) {
+        val installRoot = root(context)
+        index = null
+        if (installRoot.exists()) {
+            installRoot.deleteRecursively()
+            Log.i(TAG, "清理Flutter资源包")
+        }
+    }
+
+    private fun loadIndex(context: Context): Index {
+        index?.let { return it }
+        val file = File(root(context), INDEX_FILE)
+        val loaded = try {
+            if (file.exists()) Gson().fromJson(file.readText(), Index::class.java) else null
+        } catch (e: Exception) {
+            Log.e(TAG, "读取资源包索引失败", e)
+            null
+        } ?: Index()
+        index = loaded
+        return loaded
+    }
+
+    private fun saveIndex(context: Context) {
+        val current = index ?: return
+        val dir = root(context)
+        dir.mkdirs()
+        val tempFile = File(dir, "$INDEX_FILE.tmp")
+        tempFile.writeText(Gson().toJson(current))
+        if (!tempFile.renameTo(File(dir, INDEX_FILE))) {
+            Log.e(TAG, "写入资源包索引失败")
+        }
+    }
+}
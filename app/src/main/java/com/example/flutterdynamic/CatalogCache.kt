@@ -0,0 +1,178 @@
+package com.example.flutterdynamic
+
+import android.content.Context
+import android.util.Log
+import com.example.flutterdynamic.mode.SoPackageInfo
+import com.example.flutterdynamic.util.MD5Util
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+import java.io.File
+import java.io.OutputStream
+
+/**
+ * 服务器包列表的本地缓存
+ *
+ * 按请求URL（含过滤参数）保存最近一次的包列表、ETag和有效期（服务器Cache-Control的max-age），
+ * 有效期内直接使用缓存不访问网络；过期后带If-None-Match重新验证，服务器返回304时只刷新有效期。
+ *
+ * 元数据（URL、ETag、有效期）和包列表分开保存：`<URL哈希>.meta.json` 只有几个字段，304时只改写它；
+ * `<URL哈希>.list.json` 与服务器响应格式相同，通过 [PackageCatalog.readPackageList] 流式读取，不经过反射。
+ */
+object CatalogCache {
+
+    private const val TAG = "CatalogCache"
+    private const val CACHE_DIR = "so_catalog"
+    // 服务器未返回max-age时的有效期
+    const val DEFAULT_MAX_AGE_MS = 5L * 60 * 1000
+
+    data class Entry(
+        val url: String,
+        val etag: String?,
+        var fetchedAt: Long,
+        var maxAgeMs: Long,
+        val packages: List<SoPackageInfo>
+    ) {
+        fun isFresh(now: Long = System.currentTimeMillis()): Boolean {
+            return now >= fetchedAt && now - fetchedAt < maxAgeMs
+        }
+    }
+
+    // 进程内已读取的缓存，避免重复读取文件
+    private val memoryCache = HashMap<String, Entry>()
+
+    /**
+     * 持久化的元数据，字段可能缺失（文件损坏或旧格式）
+     */
+    private class Meta(val url: String?, val etag: String?, val fetchedAt: Long, val maxAgeMs: Long)
+
+    private fun cacheFile(context: Context, url: String, suffix: String): File {
+        return File(File(context.filesDir, CACHE_DIR), MD5Util.getStringMD5(url) + suffix)
+    }
+
+    private fun metaFile(context: Context, url: String) = cacheFile(context, url, ".meta.json")
+
+    private fun listFile(context: Context, url: String) = cacheFile(context, url, ".list.json")
+
+    @Synchronized
+    fun get(context: Context, url: String): Entry? {
+        memoryCache[url]?.let { return it }
+        val metaFile = metaFile(context, url)
+        if (!metaFile.exists()) {
+            // 旧版本把整个缓存保存在一个文件中，不再使用
+            cacheFile(context, url, ".json").delete()
+            return null
+        }
+        val entry = try {
+            val meta = readMeta(metaFile)
+            if (meta.url != url) {
+                return null
+            }
+            val packages = listFile(context, url).inputStream().use { PackageCatalog.readPackageList(it) }
+            Entry(url, meta.etag, meta.fetchedAt, meta.maxAgeMs, packages)
+        } catch (e: Exception) {
+            Log.e(TAG, "读取包列表缓存失败", e)
+            null
+        } ?: return null
+        memoryCache[url] = entry
+        return entry
+    }
+
+    @Synchronized
+    fun put(context: Context, entry: Entry) {
+        memoryCache[entry.url] = entry
+        save(context, entry)
+    }
+
+    /**
+     * 服务器返回304，缓存内容仍有效，只刷新有效期
+     */
+    @Synchronized
+    fun refresh(context: Context, entry: Entry, maxAgeMs: Long) {
+        entry.fetchedAt = System.currentTimeMillis()
+        entry.maxAgeMs = maxAgeMs
+        saveMeta(context, entry)
+    }
+
+    @Synchronized
+    fun clear(context: Context) {
+        memoryCache.clear()
+        File(context.filesDir, CACHE_DIR).deleteRecursively()
+    }
+
+    /**
+     * 先写包列表再写元数据，元数据存在时包列表一定完整
+     */
+    private fun save(context: Context, entry: Entry) {
+        metaFile(context, entry.url).delete()
+        writeAtomically(listFile(context, entry.url)) { output ->
+            PackageCatalog.writePackageList(output, entry.packages)
+        }
+        saveMeta(context, entry)
+    }
+
+    private fun saveMeta(context: Context, entry: Entry) {
+        writeAtomically(metaFile(context, entry.url)) { output ->
+            JsonWriter(output.writer()).use { writer ->
+                writer.beginObject()
+                writer.name("url").value(entry.url)
+                writer.name("etag").value(entry.etag)
+                writer.name("fetchedAt").value(entry.fetchedAt)
+                writer.name("maxAgeMs").value(entry.maxAgeMs)
+                writer.endObject()
+            }
+        }
+    }
+
+    private fun readMeta(file: File): Meta {
+        var url: String? = null
+        var etag: String? = null
+        var fetchedAt = 0L
+        var maxAgeMs = 0L
+        JsonReader(file.reader()).use { reader ->
+            reader.beginObject()
+            while (reader.hasNext()) {
+                val name = reader.nextName()
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull()
+                    continue
+                }
+                when (name) {
+                    "url" -> url = reader.nextString()
+                    "etag" -> etag = reader.nextString()
+                    "fetchedAt" -> fetchedAt = reader.nextLong()
+                    "maxAgeMs" -> maxAgeMs = reader.nextLong()
+                    else -> reader.skipValue()
+                }
+            }
+            reader.endObject()
+        }
+        return Meta(url, etag, fetchedAt, maxAgeMs)
+    }
+
+    private fun writeAtomically(file: File, write: (OutputStream) -> Unit) {
+        file.parentFile?.mkdirs()
+        val tempFile = File(file.parentFile, file.name + ".tmp")
+        tempFile.outputStream().use(write)
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "写入包列表缓存失败: ${file.name}")
+        }
+    }
+
+    /**
+     * 解析Cache-Control中的max-age（毫秒），no-cache/no-store时为0，未设置时使用默认值
+     */
+    fun parseMaxAge(cacheControl: String?): Long {
+        if (cacheControl == null) {
+            return DEFAULT_MAX_AGE_MS
+        }
+        val directives = cacheControl.split(',').map { it.trim().lowercase() }
+        if (directives.any { it == "no-cache" || it == "no-store" }) {
+            return 0
+        }
+        val maxAge = directives.firstOrNull { it.startsWith("max-age=") }
+            ?.substringAfter('=')?.toLongOrNull()
+            ?: return DEFAULT_MAX_AGE_MS
+        return maxAge * 1000
+    }
+}
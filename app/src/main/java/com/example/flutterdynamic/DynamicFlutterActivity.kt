@@ -10,9 +10,8 @@ import android.widget.TextView
 import androidx.appcompat.app.AppCompatActivity
 import androidx.lifecycle.lifecycleScope
 import io.flutter.embedding.android.FlutterActivity
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.launch
-import kotlin.coroutines.resume
-import kotlin.coroutines.suspendCoroutine
 
 /**
  * 动态Flutter Activity
@@ -23,8 +22,15 @@ class DynamicFlutterActivity : AppCompatActivity() {
     private lateinit var progressBar: ProgressBar
     private lateinit var statusText: TextView
     
+    // 按各阶段耗时权重计算的整体进度，驱动进度条
+    private val loadListener = object : LoadTrace.Listener {
+        override fun onProgress(breakdown: LoadTrace.LoadBreakdown) = showProgress(breakdown)
+        override fun onFinished(breakdown: LoadTrace.LoadBreakdown) = showProgress(breakdown)
+    }
+    
     companion object {
         private const val TAG = "DynamicFlutterActivity"
+        private const val PROGRESS_MAX = 1000
         
         fun createIntent(context: Context): Intent {
             return Intent(context, DynamicFlutterActivity::class.java)
@@ -34,9 +40,15 @@ class DynamicFlutterActivity : AppCompatActivity() {
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setupLoadingUI()
+        FlutterManager.addLoadListener(loadListener)
         startDynamicLoading()
     }
     
+    override fun onDestroy() {
+        FlutterManager.removeLoadListener(loadListener)
+        super.onDestroy()
+    }
+    
     private fun setupLoadingUI() {
         // 创建加载界面
         val layout = android.widget.LinearLayout(this).apply {
@@ -63,7 +75,8 @@ class DynamicFlutterActivity : AppCompatActivity() {
         
         // 进度条
         progressBar = ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal).apply {
-            isIndeterminate = true
+            isIndeterminate = false
+            max = PROGRESS_MAX
             setPadding(0, 0, 0, 32)
         }
         
@@ -85,27 +98,15 @@ class DynamicFlutterActivity : AppCompatActivity() {
     
     private fun startDynamicLoading() {
         lifecycleScope.launch {
+            // 显示加载阶段
+            val phaseJob = launch {
+                FlutterManager.loadPhase.collect { phase -> showPhase(phase) }
+            }
             try {
-                updateStatus("检查本地服务器连接...")
-                
-                // 检查FlutterManager是否已经初始化
-                val engineGroup = FlutterManager.getEngineGroup()
+                // 初始化可能已在Application中开始，这里等待同一个任务完成
+                val engineGroup = FlutterManager.awaitReady(this@DynamicFlutterActivity)
+                phaseJob.cancel()
                 if (engineGroup != null) {
-                    updateStatus("Flutter引擎已就绪")
-                    launchFlutterPage()
-                    return@launch
-                }
-                
-                updateStatus("正在下载Flutter引擎...")
-                
-                // 初始化FlutterManager（这会触发SO下载和加载）
-                FlutterManager.init(this@DynamicFlutterActivity)
-                
-                // 等待初始化完成
-                kotlinx.coroutines.delay(3000)
-                
-                val newEngineGroup = FlutterManager.getEngineGroup()
-                if (newEngineGroup != null) {
                     updateStatus("Flutter引擎初始化成功")
                     launchFlutterPage()
                 } else {
@@ -113,7 +114,10 @@ class DynamicFlutterActivity : AppCompatActivity() {
                     showError("无法初始化Flutter引擎，请检查网络连接")
                 }
                 
+            } catch (e: CancellationException) {
+                throw e
             } catch (e: Exception) {
+                phaseJob.cancel()
                 Log.e(TAG, "动态加载Flutter失败", e)
                 updateStatus("加载失败")
                 showError("加载Flutter引擎时发生错误: ${e.message}")
@@ -121,6 +125,30 @@ class DynamicFlutterActivity : AppCompatActivity() {
         }
     }
     
+    private fun showPhase(phase: FlutterManager.LoadPhase) {
+        when (phase) {
+            is FlutterManager.LoadPhase.Idle,
+            is FlutterManager.LoadPhase.Resolving -> updateStatus("检查本地SO...")
+            is FlutterManager.LoadPhase.Downloading -> {
+                if (phase.totalBytes > 0) {
+                    val percent = (phase.downloadedBytes * 100 / phase.totalBytes).toInt().coerceIn(0, 100)
+                    statusText.text = "正在下载Flutter引擎... $percent%"
+                } else {
+                    statusText.text = "正在下载Flutter引擎..."
+                }
+            }
+            is FlutterManager.LoadPhase.Initializing -> updateStatus("正在初始化Flutter引擎...")
+            is FlutterManager.LoadPhase.Ready -> updateStatus("Flutter引擎已就绪")
+            is FlutterManager.LoadPhase.Failed -> updateStatus(phase.message)
+        }
+    }
+    
+    private fun showProgress(breakdown: LoadTrace.LoadBreakdown) {
+        runOnUiThread {
+            progressBar.progress = (breakdown.progress * PROGRESS_MAX).toInt()
+        }
+    }
+    
     private fun updateStatus(message: String) {
         runOnUiThread {
             statusText.text = message
@@ -133,6 +161,12 @@ class DynamicFlutterActivity : AppCompatActivity() {
             statusText.text = "❌ $message"
             progressBar.visibility = View.GONE
             
+            // FlutterLoader已初始化失败时本进程无法重试，只提示重启应用
+            if (!FlutterManager.canRetry()) {
+                statusText.text = "❌ $message\n请重启应用后重试"
+                return@runOnUiThread
+            }
+            
             // 添加重试按钮
             val retryButton = android.widget.Button(this).apply {
                 text = "重试"
@@ -151,8 +185,15 @@ class DynamicFlutterActivity : AppCompatActivity() {
             try {
                 updateStatus("启动Flutter页面...")
                 
-                // 启动Flutter Activity
-                val flutterIntent = FlutterActivity.createDefaultIntent(this)
+                // 优先使用预热好的引擎，页面关闭时随之销毁
+                val engineId = FlutterEnginePool.obtain(this)
+                val flutterIntent = if (engineId != null) {
+                    FlutterActivity.withCachedEngine(engineId)
+                        .destroyEngineWithActivity(true)
+                        .build(this)
+                } else {
+                    FlutterActivity.createDefaultIntent(this)
+                }
                 startActivity(flutterIntent)
                 
                 // 关闭当前Activity
@@ -2,13 +2,17 @@ package com.example.flutterdynamic
 
 import android.content.Context
 import android.util.Log
+import com.example.flutterdynamic.download.ResumableDownloader
 import com.example.flutterdynamic.mode.SoPackageInfo
+import com.example.flutterdynamic.util.SharedHttpClient
 import com.google.gson.Gson
 import com.google.gson.reflect.TypeToken
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import okhttp3.Request
 import java.io.File
-import java.net.URL
+import java.io.IOException
+import java.io.InputStream
 
 /**
  * 动态SO辅助工具
@@ -20,21 +24,20 @@ object DynamicSoHelper {
     private const val SERVER_BASE_URL = "http://127.0.0.1:1234"
     
     /**
-     * 检查本地服务器连接
+     * 通过共享客户端请求接口并读取响应
+     * 不单独探测服务器是否可用，连接失败或响应码异常时直接抛出IOException
      */
-    suspend fun checkServerConnection(): Boolean {
-        return withContext(Dispatchers.IO) {
-            try {
-                val url = "$SERVER_BASE_URL/api/status"
-                val connection = URL(url).openConnection()
-                connection.connectTimeout = 5000
-                connection.readTimeout = 10000
-                connection.connect()
-                true
-            } catch (e: Exception) {
-                Log.e(TAG, "服务器连接失败", e)
-                false
+    @Throws(IOException::class)
+    fun <T> getJson(url: String, reader: (InputStream) -> T): T {
+        val request = Request.Builder()
+            .url(url)
+            .header("Accept", "application/json")
+            .build()
+        SharedHttpClient.client.newCall(request).execute().use { response ->
+            if (!response.isSuccessful) {
+                throw IOException("请求失败，HTTP响应码: ${response.code}, $url")
             }
+            return response.body!!.byteStream().use(reader)
         }
     }
     
@@ -44,15 +47,7 @@ object DynamicSoHelper {
     suspend fun getAvailableSoPackages(): List<SoPackageInfo> {
         return withContext(Dispatchers.IO) {
             try {
-                val url = "$SERVER_BASE_URL/api/so-packages"
-                val connection = URL(url).openConnection()
-                connection.connectTimeout = 5000
-                connection.readTimeout = 10000
-                
-                val response = connection.getInputStream().readBytes().toString(Charsets.UTF_8)
-                val gson = Gson()
-                val listType = object : TypeToken<List<SoPackageInfo>>() {}.type
-                gson.fromJson(response, listType) ?: emptyList()
+                getJson("$SERVER_BASE_URL/api/so-packages") { PackageCatalog.readPackageList(it) }
             } catch (e: Exception) {
                 Log.e(TAG, "获取SO包列表失败", e)
                 emptyList()
@@ -65,6 +60,9 @@ object DynamicSoHelper {
      */
     fun clearSoCache(context: Context) {
         SoPackageManager.clearSoCache(context)
+        SoStore.clear(context)
+        CatalogCache.clear(context)
+        AssetPackageManager.clearAssetCache(context)
     }
     
     /**
@@ -79,13 +77,7 @@ object DynamicSoHelper {
      */
     fun isSoPackageCached(context: Context, packageName: String): Boolean {
         return try {
-            val cacheDir = when (packageName) {
-                "libflutter" -> File(context.cacheDir, "server_flutter")
-                "libapp" -> File(context.cacheDir, "server_app")
-                else -> return false
-            }
-            
-            cacheDir.exists() && cacheDir.listFiles()?.isNotEmpty() == true
+            SoStore.findLatest(context, packageName) != null
         } catch (e: Exception) {
             Log.e(TAG, "检查SO包缓存失败", e)
             false
@@ -97,13 +89,8 @@ object DynamicSoHelper {
      */
     fun getCachedSoPackageInfo(context: Context, packageName: String): SoPackageInfo? {
         return try {
-            val cacheDir = when (packageName) {
-                "libflutter" -> File(context.cacheDir, "server_flutter")
-                "libapp" -> File(context.cacheDir, "server_app")
-                else -> return null
-            }
-            
-            SoPackageManager.getSoPackageInfo(cacheDir)
+            val entry = SoStore.findLatest(context, packageName) ?: return null
+            SoStore.getPackageInfo(context, entry)
         } catch (e: Exception) {
             Log.e(TAG, "获取缓存SO包信息失败", e)
             null
@@ -116,15 +103,10 @@ object DynamicSoHelper {
     suspend fun getServerStatus(): Map<String, Any> {
         return withContext(Dispatchers.IO) {
             try {
-                val url = "$SERVER_BASE_URL/api/status"
-                val connection = URL(url).openConnection()
-                connection.connectTimeout = 5000
-                connection.readTimeout = 10000
-                
-                val response = connection.getInputStream().readBytes().toString(Charsets.UTF_8)
-                val gson = Gson()
                 val mapType = object : TypeToken<Map<String, Any>>() {}.type
-                gson.fromJson(response, mapType) ?: emptyMap()
+                getJson("$SERVER_BASE_URL/api/status") { input ->
+                    Gson().fromJson<Map<String, Any>>(input.reader(Charsets.UTF_8), mapType)
+                } ?: emptyMap()
             } catch (e: Exception) {
                 Log.e(TAG, "获取服务器状态失败", e)
                 mapOf("error" to e.message.orEmpty())
@@ -139,17 +121,10 @@ object DynamicSoHelper {
         return withContext(Dispatchers.IO) {
             try {
                 val url = getSoPackageDownloadUrl(fileName)
-                val connection = URL(url).openConnection()
-                connection.connectTimeout = 10000
-                connection.readTimeout = 30000
-                
                 val tempFile = File(context.cacheDir, "test_$fileName")
                 
-                connection.getInputStream().use { input ->
-                    java.io.FileOutputStream(tempFile).use { output ->
-                        input.copyTo(output)
-                    }
-                }
+                // 支持断点续传，网络中断后从已下载位置继续
+                ResumableDownloader().download(url, tempFile)
                 
                 val success = tempFile.exists() && tempFile.length() > 0
                 tempFile.delete() // 清理测试文件
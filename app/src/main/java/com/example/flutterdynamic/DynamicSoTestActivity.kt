@@ -12,11 +12,15 @@ import androidx.lifecycle.lifecycleScope
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import com.example.flutterdynamic.download.ResumableDownloader
 import com.example.flutterdynamic.mode.SoPackageInfo
-import com.google.gson.reflect.TypeToken
 
 class DynamicSoTestActivity : AppCompatActivity() {
 
+    companion object {
+        private const val SERVER_BASE_URL = "http://192.168.1.2:1234"
+    }
+
     private lateinit var statusText: TextView
     private lateinit var testButton: Button
     private lateinit var cleanButton: Button
@@ -58,19 +62,15 @@ class DynamicSoTestActivity : AppCompatActivity() {
         lifecycleScope.launch {
             updateStatus("开始测试动态SO加载功能...\n")
             
-            // 测试服务器连接
-            updateStatus("1. 测试服务器连接...")
-            val serverConnected = testServerConnection()
-            updateStatus(if (serverConnected) "✅ 服务器连接成功\n" else "❌ 服务器连接失败\n")
-            
-            if (!serverConnected) {
+            // 直接请求SO包列表，连接失败时立即结束，不再单独探测服务器状态
+            updateStatus("1. 获取SO包列表...")
+            val soPackages = try {
+                getSoPackageList()
+            } catch (e: Exception) {
+                updateStatus("❌ 获取SO包列表失败: ${e.message}\n")
                 updateStatus("请确保本地服务器正在运行并且ADB端口转发已设置\n")
                 return@launch
             }
-            
-            // 测试SO包列表
-            updateStatus("2. 获取SO包列表...")
-            val soPackages = getSoPackageList()
             updateStatus("✅ 找到 ${soPackages.size} 个SO包\n")
             
             soPackages.forEach { packageInfo ->
@@ -79,7 +79,7 @@ class DynamicSoTestActivity : AppCompatActivity() {
             
             // 测试下载功能
             if (soPackages.isNotEmpty()) {
-                updateStatus("3. 测试下载功能...")
+                updateStatus("2. 测试下载功能...")
                 val firstPackage = soPackages.first()
                 val downloadSuccess = testDownload(firstPackage.fileName)
                 updateStatus(if (downloadSuccess) "✅ 下载测试成功\n" else "❌ 下载测试失败\n")
@@ -109,6 +109,12 @@ class DynamicSoTestActivity : AppCompatActivity() {
                     updateStatus("✅ 清理App缓存\n")
                 }
                 
+                // 清理SO仓库
+                SoStore.clear(this@DynamicSoTestActivity)
+                updateStatus("✅ 清理SO仓库\n")
+                CatalogCache.clear(this@DynamicSoTestActivity)
+                updateStatus("✅ 清理SO包列表缓存\n")
+                
                 // 清理临时文件
                 cacheDir.listFiles()?.forEach { file ->
                     if (file.name.startsWith("temp_")) {
@@ -124,53 +130,17 @@ class DynamicSoTestActivity : AppCompatActivity() {
         }
     }
 
-    private suspend fun testServerConnection(): Boolean {
-        return withContext(Dispatchers.IO) {
-            try {
-                val url = java.net.URL("http://192.168.1.2:1234/api/status")
-                val connection = url.openConnection()
-                connection.connectTimeout = 5000
-                connection.readTimeout = 5000
-                connection.connect()
-                true
-            } catch (e: Exception) {
-                false
-            }
-        }
-    }
-
     private suspend fun getSoPackageList(): List<SoPackageInfo> {
         return withContext(Dispatchers.IO) {
-            try {
-                val url = java.net.URL("http://192.168.1.2:1234/api/so-packages")
-                val connection = url.openConnection()
-                connection.connectTimeout = 5000
-                connection.readTimeout = 10000
-                
-                val response = connection.getInputStream().readBytes().toString(Charsets.UTF_8)
-                val gson = com.google.gson.Gson()
-                val listType = object : TypeToken<List<SoPackageInfo>>() {}.type
-                gson.fromJson<List<SoPackageInfo>>(response, listType) ?: emptyList()
-            } catch (e: Exception) {
-                emptyList()
-            }
+            DynamicSoHelper.getJson("$SERVER_BASE_URL/api/so-packages") { PackageCatalog.readPackageList(it) }
         }
     }
 
     private suspend fun testDownload(fileName: String): Boolean {
         return withContext(Dispatchers.IO) {
             try {
-                val url = java.net.URL("http://192.168.1.2:1234/api/download/$fileName")
-                val connection = url.openConnection()
-                connection.connectTimeout = 10000
-                connection.readTimeout = 30000
-                
                 val tempFile = java.io.File(cacheDir, "test_$fileName")
-                connection.getInputStream().use { input ->
-                    java.io.FileOutputStream(tempFile).use { output ->
-                        input.copyTo(output)
-                    }
-                }
+                ResumableDownloader().download("$SERVER_BASE_URL/api/download/$fileName", tempFile)
                 
                 val success = tempFile.exists() && tempFile.length() > 0
                 tempFile.delete() // 清理测试文件
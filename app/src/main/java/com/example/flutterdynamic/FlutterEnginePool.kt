@@ -0,0 +1,131 @@
+package com.example.flutterdynamic
+
+import android.content.ComponentCallbacks2
+import android.content.Context
+import android.os.Looper
+import android.os.MessageQueue
+import android.util.Log
+import io.flutter.embedding.engine.FlutterEngine
+import io.flutter.embedding.engine.FlutterEngineCache
+import io.flutter.embedding.engine.FlutterEngineGroup
+import io.flutter.embedding.engine.dart.DartExecutor
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.MainScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlin.coroutines.resume
+
+/**
+ * 预热的FlutterEngine池
+ *
+ * 引擎由 [FlutterManager] 初始化好的 [FlutterEngineGroup] 派生（共享Dart VM和代码，创建开销小），
+ * 在主线程空闲时提前执行Dart入口，并注册到 [FlutterEngineCache]，打开页面时通过 `withCachedEngine` 直接复用。
+ * 被页面取走的引擎随页面销毁；空闲引擎在内存紧张时（onTrimMemory）释放。
+ *
+ * 所有方法都需要在主线程调用。
+ */
+object FlutterEnginePool {
+
+    private const val TAG = "FlutterEnginePool"
+    private const val ENGINE_ID_PREFIX = "pooled_engine_"
+
+    // 空闲引擎数量上限，每个引擎都会占用一个Dart isolate的内存
+    private const val MAX_IDLE_ENGINES = 1
+
+    private val mainScope = MainScope()
+    private val idleEngineIds = ArrayDeque<String>()
+    private var nextEngineId = 0
+    private var prewarmJob: Job? = null
+
+    /**
+     * Flutter加载完成后，在主线程空闲时补齐空闲引擎
+     * 可在页面onResume中重复调用，已在等待时不会重复安排；
+     * 只等待已经开始的加载，加载失败后不会替用户发起新的下载
+     */
+    fun prewarmWhenIdle(context: Context) {
+        if (prewarmJob?.isActive == true || idleEngineIds.size >= MAX_IDLE_ENGINES) {
+            return
+        }
+        val appContext = context.applicationContext ?: context
+        prewarmJob = mainScope.launch {
+            val group = FlutterManager.awaitCurrentLoad() ?: return@launch
+            while (idleEngineIds.size < MAX_IDLE_ENGINES) {
+                awaitMainIdle()
+                idleEngineIds.addLast(createEngine(appContext, group) ?: return@launch)
+            }
+        }
+    }
+
+    /**
+     * 取出一个已执行Dart入口的引擎，返回其在 [FlutterEngineCache] 中的ID
+     * 没有空闲引擎时现场创建；取走后在空闲时补充新的引擎
+     * @return Flutter尚未加载完成时返回null
+     */
+    fun obtain(context: Context): String? {
+        val engineId = idleEngineIds.removeFirstOrNull()?.takeIf { FlutterEngineCache.getInstance().contains(it) }
+            ?: run {
+                val group = FlutterManager.getEngineGroup() ?: return null
+                Log.i(TAG, "没有预热的引擎，直接创建")
+                createEngine(context.applicationContext ?: context, group) ?: return null
+            }
+        prewarmWhenIdle(context)
+        return engineId
+    }
+
+    /**
+     * 内存紧张时释放空闲引擎
+     */
+    fun onTrimMemory(level: Int) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return
+        }
+        prewarmJob?.cancel()
+        while (idleEngineIds.isNotEmpty()) {
+            val engineId = idleEngineIds.removeFirst()
+            FlutterEngineCache.getInstance().get(engineId)?.destroy()
+            FlutterEngineCache.getInstance().remove(engineId)
+            Log.i(TAG, "内存不足，释放空闲引擎: $engineId")
+        }
+    }
+
+    private fun createEngine(context: Context, group: FlutterEngineGroup): String? {
+        return try {
+            val startTime = System.currentTimeMillis()
+            val engine = group.createAndRunEngine(
+                FlutterEngineGroup.Options(context)
+                    .setDartEntrypoint(DartExecutor.DartEntrypoint.createDefault())
+            )
+            val engineId = ENGINE_ID_PREFIX + nextEngineId++
+            // 页面销毁引擎时同步移出缓存
+            engine.addEngineLifecycleListener(object : FlutterEngine.EngineLifecycleListener {
+                override fun onPreEngineRestart() {}
+
+                override fun onEngineWillDestroy() {
+                    FlutterEngineCache.getInstance().remove(engineId)
+                    idleEngineIds.remove(engineId)
+                }
+            })
+            FlutterEngineCache.getInstance().put(engineId, engine)
+            Log.i(TAG, "引擎预热完成: $engineId, 耗时: ${System.currentTimeMillis() - startTime}ms")
+            engineId
+        } catch (e: Exception) {
+            Log.e(TAG, "创建FlutterEngine失败", e)
+            null
+        }
+    }
+
+    /**
+     * 等待主线程消息队列空闲，避免预热抢占页面绘制
+     */
+    private suspend fun awaitMainIdle() = suspendCancellableCoroutine { continuation ->
+        val idleHandler = MessageQueue.IdleHandler {
+            if (continuation.isActive) {
+                continuation.resume(Unit)
+            }
+            false
+        }
+        val queue = Looper.getMainLooper().queue
+        queue.addIdleHandler(idleHandler)
+        continuation.invokeOnCancellation { queue.removeIdleHandler(idleHandler) }
+    }
+}
@@ -2,164 +2,500 @@ package com.example.flutterdynamic
 
 import android.content.Context
 import android.content.pm.PackageManager
+import android.content.res.AssetManager
 import android.net.Uri
+import android.os.Handler
+import android.os.Looper
+import android.os.Trace
 import android.text.TextUtils
 import android.util.Log
+import com.example.flutterdynamic.download.BandwidthEstimator
 import com.example.flutterdynamic.download.DownloadConfig
 import com.example.flutterdynamic.download.DownloadManager
 import com.example.flutterdynamic.download.IDownloadListener
+import com.example.flutterdynamic.download.ResumableDownloader
+import com.example.flutterdynamic.download.SegmentedDownloader
+import com.example.flutterdynamic.LoadTrace.Phase
 import com.example.flutterdynamic.mode.FlutterConfig
+import com.example.flutterdynamic.mode.PackageVariant
 import com.example.flutterdynamic.mode.SoPackageInfo
+import com.example.flutterdynamic.util.BufferPool
 import com.example.flutterdynamic.util.MD5Util
+import com.example.flutterdynamic.util.SharedHttpClient
 import com.example.flutterdynamic.util.fromJsonProxy
 import com.google.gson.Gson
 import io.flutter.FlutterInjector
 import io.flutter.embedding.engine.FlutterEngineGroup
 import io.flutter.embedding.engine.FlutterJNI
-import kotlinx.coroutines.MainScope
+import io.flutter.embedding.engine.loader.FlutterLoader
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.job
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import java.io.File
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.coroutines.coroutineContext
 import kotlin.coroutines.resume
-import kotlin.coroutines.suspendCoroutine
+import okhttp3.Request
+import okhttp3.Response
 
 object FlutterManager {
 
     private const val TAG = "FlutterManager"
+    private const val ASSETS_PACKAGE_PREFIX = "flutterassets"
+    private const val LOCAL_SERVER_URL = "http://localhost:1234"
+    private const val LOADER_PARALLELISM = 3
+    // 超过该大小的SO包使用断点续传下载
+    private const val RESUMABLE_THRESHOLD = 2L * 1024 * 1024
+    private const val FLUTTER_INIT_TIMEOUT_MS = 20_000L
     private var engineGroup: FlutterEngineGroup? = null
+    
+    /**
+     * SO包下载、解压、校验使用的有界IO调度器
+     */
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val loaderDispatcher = Dispatchers.IO.limitedParallelism(LOADER_PARALLELISM)
+    
+    // FlutterLoader初始化使用的后台线程
+    private val flutterInitExecutor = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "flutter-loader").apply { isDaemon = true }
+    }
+    
+    // FlutterInjector在instance()之后不能再设置，整个进程只设置一次；重试时只更新SO目录和JNI参数
+    private val flutterJNIFactory = CustomFlutterJNI.CustomFactory()
+    private var injectorInstalled = false
+    // FlutterLoader在一个进程中只能初始化一次，开始初始化后失败的无法在本进程重试
+    @Volatile
+    private var loaderStarted = false
+    
+    private val bandwidthEstimator = BandwidthEstimator.instance
 
-    fun init(context: Context) {
-        // 使用Thread来避免NetworkOnMainThreadException
-        Thread {
-            try {
-                // 直接从本地服务器加载SO包
-                val success = loadFromLocalServerSync(context)
-                if (!success) {
-                    // 如果本地服务器失败，回退到assets配置
-                    MainScope().launch {
-                        loadFromAssetsConfig(context)
-                    }
+    /**
+     * 加载阶段
+     */
+    sealed class LoadPhase {
+        object Idle : LoadPhase()
+        // 查找可用的SO组合
+        object Resolving : LoadPhase()
+        // 下载中，totalBytes未知时为-1
+        data class Downloading(val downloadedBytes: Long, val totalBytes: Long) : LoadPhase()
+        // 初始化Flutter引擎
+        object Initializing : LoadPhase()
+        data class Ready(val engineGroup: FlutterEngineGroup) : LoadPhase()
+        data class Failed(val message: String) : LoadPhase()
+    }
+
+    private val initScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private var initDeferred: Deferred<Boolean>? = null
+    private val _loadPhase = MutableStateFlow<LoadPhase>(LoadPhase.Idle)
+
+    /**
+     * 当前加载阶段，可用于展示进度
+     */
+    val loadPhase: StateFlow<LoadPhase> = _loadPhase.asStateFlow()
+
+    /**
+     * 开始加载SO并初始化Flutter，可重复调用：加载中或已成功时返回同一个任务，失败后再次调用会重试
+     * （FlutterLoader已开始初始化后失败的不能重试，返回同一个失败的任务，见 [canRetry]）
+     * 可在Application.onCreate中提前调用
+     * @return 加载是否成功
+     */
+    @Synchronized
+    fun init(context: Context): Deferred<Boolean> {
+        initDeferred?.let { current ->
+            if (!current.isCompleted || _loadPhase.value is LoadPhase.Ready || !canRetry()) {
+                return current
+            }
+        }
+        val appContext = context.applicationContext ?: context
+        _loadPhase.value = LoadPhase.Resolving
+        return initScope.async(LoadTrace.begin()) { doInit(appContext) }.also { initDeferred = it }
+    }
+
+    /**
+     * 添加加载进度监听，可获取每次加载各阶段的耗时和字节数，回调在后台线程
+     */
+    fun addLoadListener(listener: LoadTrace.Listener) = LoadTrace.addListener(listener)
+
+    fun removeLoadListener(listener: LoadTrace.Listener) = LoadTrace.removeListener(listener)
+
+    /**
+     * 最近一次加载的耗时明细
+     */
+    fun lastLoadBreakdown(): LoadTrace.LoadBreakdown? = LoadTrace.lastBreakdown()
+
+    /**
+     * 加载失败后能否在本进程重试；FlutterLoader开始初始化后失败的需要重启进程
+     */
+    fun canRetry(): Boolean = !loaderStarted
+
+    /**
+     * 等待加载完成，成功时返回FlutterEngineGroup
+     */
+    suspend fun awaitReady(context: Context): FlutterEngineGroup? {
+        init(context).await()
+        return engineGroup
+    }
+
+    /**
+     * 等待已经开始的加载完成，不会发起新的加载，失败后也不会重试
+     * @return 没有开始加载或加载失败时返回null
+     */
+    suspend fun awaitCurrentLoad(): FlutterEngineGroup? {
+        engineGroup?.let { return it }
+        val current = synchronized(this) { initDeferred } ?: return null
+        current.await()
+        return engineGroup
+    }
+
+    private suspend fun doInit(context: Context): Boolean {
+        bandwidthEstimator.applyNetworkPrior(context)
+        val loaded = try {
+            // 优先使用上次校验通过的SO组合立即启动，服务器上的更新在后台准备，下次冷启动生效
+            if (loadFromStore(context)) {
+                initScope.launch { revalidateFromLocalServer(context) }
+                true
+            } else {
+                // 从本地服务器加载SO包，失败时回退到assets配置；FlutterLoader已初始化失败时回退也无法成功
+                canRetry() && (loadFromLocalServer(context) || (canRetry() && loadFromAssetsConfig(context)))
+            }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.e(TAG, "Flutter初始化失败", e)
+            canRetry() && loadFromAssetsConfig(context)
+        }
+        val group = engineGroup
+        LoadTrace.finish(loaded && group != null)
+        _loadPhase.value = if (loaded && group != null) {
+            LoadPhase.Ready(group)
+        } else if (!canRetry()) {
+            LoadPhase.Failed("Flutter引擎初始化失败，请重启应用")
+        } else {
+            LoadPhase.Failed("无法加载Flutter引擎")
+        }
+        return loaded && group != null
+    }
+
+    /**
+     * 初始化Flutter：反射修改native库路径和FlutterLoader初始化（加载libflutter.so、解压资源）都在后台线程完成，
+     * 主线程只负责启动初始化和创建FlutterEngineGroup
+     */
+    private suspend fun initFlutter(
+        context: Context,
+        flutterSoDir: File,
+        appSoPath: String,
+        assetBundle: AssetPackageManager.AssetBundle?
+    ): Boolean {
+        if (!canRetry()) {
+            Log.e(TAG, "FlutterLoader已在本进程初始化失败，无法重试")
+            return false
+        }
+        _loadPhase.value = LoadPhase.Initializing
+        return try {
+            val flutterLoader = withContext(loaderDispatcher) {
+                LoadTrace.section(Phase.NATIVE_PATH) {
+                    installFlutterLoader(context, flutterSoDir, appSoPath, assetBundle)
+                }.also {
+                    LoadTrace.section(Phase.JNI_INIT, "warmUp") { warmUpNative(flutterSoDir, appSoPath) }
                 }
-            } catch (e: Exception) {
-                Log.e(TAG, "Flutter初始化失败", e)
-                // 如果本地服务器失败，回退到assets配置
-                MainScope().launch {
-                    loadFromAssetsConfig(context)
+            }
+            withContext(Dispatchers.Main) {
+                LoadTrace.section(Phase.JNI_INIT, "flutterLoader") {
+                    // 需要在主线程调用，实际工作在Flutter的后台线程池中执行，等待期间主线程不阻塞
+                    loaderStarted = true
+                    flutterLoader.startInitialization(context)
+                    // 初始化失败时Flutter不会回调，超时按失败处理
+                    withTimeoutOrNull(FLUTTER_INIT_TIMEOUT_MS) {
+                        suspendCancellableCoroutine<Unit> { continuation ->
+                            flutterLoader.ensureInitializationCompleteAsync(context, null, Handler(Looper.getMainLooper())) {
+                                continuation.resume(Unit)
+                            }
+                        }
+                    } ?: throw IllegalStateException("FlutterLoader初始化超时")
+                }
+                // FlutterLoader已初始化完成，这里不会再同步加载
+                engineGroup = LoadTrace.section(Phase.ENGINE) { FlutterEngineGroup(context) }
+            }
+            Log.i(TAG, "FlutterEngineGroup初始化完成")
+            true
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.e(TAG, "Flutter初始化失败", e)
+            false
+        }
+    }
+
+    /**
+     * 引擎启动前预热native库：
+     * 按绝对路径提前加载libflutter.so（之后FlutterLoader的loadLibrary("flutter")解析到同一路径，不会重复加载），
+     * 同时顺序读取一遍libapp.so，让Dart VM映射时直接命中页缓存，减少冷存储上的缺页
+     * 预热失败不影响后续初始化
+     */
+    private suspend fun warmUpNative(flutterSoDir: File, appSoPath: String) = coroutineScope {
+        val flutterSo = File(flutterSoDir, "libflutter.so")
+        if (flutterSo.exists()) {
+            launch { traceSection("FlutterWarmUp.loadFlutter") { preloadLibrary(flutterSo) } }
+        }
+        if (appSoPath.isNotEmpty()) {
+            launch { traceSection("FlutterWarmUp.readAheadApp") { readAhead(File(appSoPath)) } }
+        }
+    }
+
+    private fun preloadLibrary(soFile: File) {
+        val startTime = System.currentTimeMillis()
+        try {
+            System.load(soFile.absolutePath)
+            Log.i(TAG, "预加载${soFile.name}完成，耗时: ${System.currentTimeMillis() - startTime}ms")
+        } catch (e: Throwable) {
+            Log.w(TAG, "预加载${soFile.name}失败: ${e.message}")
+        }
+    }
+
+    private fun readAhead(file: File) {
+        val startTime = System.currentTimeMillis()
+        try {
+            file.inputStream().use { input ->
+                BufferPool.use { buffer ->
+                    while (input.read(buffer) != -1) {
+                        // 只需把文件读入页缓存
+                    }
                 }
             }
-        }.start()
+            Log.i(TAG, "预读${file.name}完成，大小: ${file.length()}, 耗时: ${System.currentTimeMillis() - startTime}ms")
+        } catch (e: IOException) {
+            Log.w(TAG, "预读${file.name}失败: ${e.message}")
+        }
+    }
+
+    private inline fun <T> traceSection(name: String, block: () -> T): T {
+        Trace.beginSection(name)
+        try {
+            return block()
+        } finally {
+            Trace.endSection()
+        }
+    }
+
+    /**
+     * 服务器上选中的一组兼容包
+     */
+    private data class ServerSelection(
+        val flutterPackage: SoPackageInfo,
+        val appPackage: SoPackageInfo,
+        val assetsPackage: SoPackageInfo?,
+        val deviceAbi: String,
+        val appVersion: String
+    ) {
+        val manifestHash: String
+            get() = MD5Util.getStringMD5(
+                listOfNotNull(flutterPackage.md5, appPackage.md5, assetsPackage?.md5).joinToString("|")
+            )
     }
 
     /**
-     * 从本地服务器加载SO文件（同步版本）
+     * 安装到本地的一组包
+     */
+    private data class InstalledSet(
+        val flutterEntry: SoStore.Entry,
+        val appEntry: SoStore.Entry,
+        val assetBundle: AssetPackageManager.AssetBundle?
+    )
+
+    /**
+     * 使用SO仓库中最近一次校验通过的组合启动，不访问网络
      */
-    private fun loadFromLocalServerSync(context: Context): Boolean {
-        val localServerUrl = "http://localhost:1234"
-        Log.i(TAG, "开始从本地服务器加载SO: $localServerUrl")
+    private suspend fun loadFromStore(context: Context): Boolean {
+        val resolved = LoadTrace.section(Phase.VERIFY, "store") {
+            SoStore.loadStartupSet(context, getAppVersion(context))
+        } ?: return false
+        val flutterEntry = resolved.entries.firstOrNull { it.library == "libflutter" } ?: return false
+        val appEntry = resolved.entries.firstOrNull { it.library == "libapp" }
+        val assetBundle = resolved.set.assetsMd5?.let {
+            AssetPackageManager.findInstalled(context, it) ?: return false
+        }
+        Log.i(TAG, "使用SO仓库中的组合启动: ${resolved.set.manifestHash}")
+        SoStore.acquire(*resolved.entries.toTypedArray())
+        assetBundle?.let { AssetPackageManager.acquire(it) }
         
+        val flutterSoDir = SoStore.soDir(context, flutterEntry)
+        val appSoPath = appEntry?.let { SoStore.soFile(context, it).absolutePath } ?: ""
+        if (!initFlutter(context, flutterSoDir, appSoPath, assetBundle)) {
+            return false
+        }
+        // 启动时只做了快速检查，后台抽样完整校验
+        initScope.launch {
+            SoStore.rehashSampled(context, resolved.entries)
+            assetBundle?.let { AssetPackageManager.rehashSampled(context, it) }
+        }
+        Log.i(TAG, "从SO仓库加载成功 - Flutter版本: ${flutterEntry.version}, App版本: ${appEntry?.version}")
+        return true
+    }
+
+    /**
+     * 后台检查服务器上的新包，下载校验后暂存，下次冷启动时激活
+     */
+    private suspend fun revalidateFromLocalServer(context: Context) {
         try {
-            // 获取设备ABI
-            val deviceAbi = getDeviceAbi()
-            Log.i(TAG, "设备ABI: $deviceAbi")
-            
-            // 获取SO包列表
-            val soListUrl = "$localServerUrl/api/so-packages"
-            val soPackages = fetchSoPackageListSync(soListUrl)
-            
-            if (soPackages.isEmpty()) {
-                Log.w(TAG, "本地服务器没有可用的SO包")
-                return false
+            val selection = selectFromLocalServer(context, LOCAL_SERVER_URL) ?: return
+            if (selection.manifestHash == SoStore.latestManifest(context)) {
+                Log.i(TAG, "服务器没有新的SO包")
+                return
             }
-            
-            val appVersion = getAppVersion(context)
-            
-            // 查找兼容的Flutter SO包（根据设备架构）
-            val flutterPackage = findCompatiblePackage(soPackages, "libflutter", appVersion, deviceAbi)
-            val appPackage = findCompatiblePackage(soPackages, "libapp", appVersion, deviceAbi)
-            
-            if (flutterPackage == null) {
-                Log.w(TAG, "未找到兼容的Flutter SO包版本（架构: $deviceAbi）")
-                return false
+            Log.i(TAG, "发现新的SO包，后台准备中: ${selection.manifestHash}")
+            val installed = installFromLocalServer(context, LOCAL_SERVER_URL, selection, reportProgress = false)
+            SoStore.stage(context, SoStore.SoSet(
+                selection.manifestHash,
+                listOf(installed.flutterEntry.md5, installed.appEntry.md5),
+                installed.assetBundle?.md5,
+                selection.appVersion
+            ))
+            SoStore.evict(context)
+            AssetPackageManager.evict(context)
+            Log.i(TAG, "新的SO包已就绪，下次冷启动生效")
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.w(TAG, "后台更新SO包失败: ${e.message}")
+        }
+    }
+
+    /**
+     * 从本地服务器获取包列表并选出兼容的包
+     */
+    private suspend fun selectFromLocalServer(context: Context, localServerUrl: String): ServerSelection? {
+        // 获取设备ABI
+        val deviceAbi = getDeviceAbi()
+        Log.i(TAG, "设备ABI: $deviceAbi")
+        
+        val appVersion = getAppVersion(context)
+        val libraries = listOf("libflutter", "libapp", ASSETS_PACKAGE_PREFIX)
+        
+        // 由服务器按架构、库名和App版本过滤，只返回每个库可用的最新包
+        val soListUrl = Uri.parse("$localServerUrl/api/so-packages").buildUpon()
+            .appendQueryParameter("abi", deviceAbi)
+            .appendQueryParameter("library", libraries.joinToString(","))
+            .appendQueryParameter("appVersion", appVersion)
+            .build()
+            .toString()
+        val soPackages = LoadTrace.section(Phase.CATALOG) { fetchSoPackageListSync(context, soListUrl) }
+        
+        if (soPackages.isEmpty()) {
+            Log.w(TAG, "本地服务器没有可用的SO包")
+            return null
+        }
+        
+        // 按库名和架构建立索引，选择设备可用的最高版本（兼容不支持过滤的旧服务器）
+        val catalog = PackageCatalog(soPackages, libraries)
+        val flutterPackage = findCompatiblePackage(catalog, "libflutter", deviceAbi)
+        val appPackage = findCompatiblePackage(catalog, "libapp", deviceAbi)
+        
+        if (flutterPackage == null) {
+            Log.w(TAG, "未找到兼容的Flutter SO包版本（架构: $deviceAbi）")
+            return null
+        }
+        
+        if (appPackage == null) {
+            Log.w(TAG, "未找到兼容的App SO包版本（架构: $deviceAbi）")
+            return null
+        }
+        
+        Log.i(TAG, "找到Flutter SO包: ${flutterPackage.fileName}, 版本: ${flutterPackage.version}, 架构: ${flutterPackage.abi}")
+        Log.i(TAG, "找到App SO包: ${appPackage.fileName}, 版本: ${appPackage.version}, 架构: ${appPackage.abi}")
+        
+        // 资源包是可选的，未发布时使用APK内置资源
+        val assetsPackage = findCompatiblePackage(catalog, ASSETS_PACKAGE_PREFIX, deviceAbi)
+        return ServerSelection(flutterPackage, appPackage, assetsPackage, deviceAbi, appVersion)
+    }
+
+    /**
+     * 并发下载、解压并校验各个包，任一失败时取消其余任务，全部安装完成后才返回
+     * 仓库中已有相同内容的包直接复用，不再下载
+     */
+    private suspend fun installFromLocalServer(
+        context: Context,
+        localServerUrl: String,
+        selection: ServerSelection,
+        reportProgress: Boolean = true
+    ): InstalledSet {
+        val packages = listOfNotNull(selection.flutterPackage, selection.appPackage, selection.assetsPackage)
+        val launch = LoadTrace.currentLaunch()
+        val progress = if (reportProgress) {
+            ProgressTracker(packages.sumOf { it.size }) { downloaded, total ->
+                _loadPhase.value = LoadPhase.Downloading(downloaded, total)
+                launch?.reportBytes("server", downloaded, total)
             }
-            
-            if (appPackage == null) {
-                Log.w(TAG, "未找到兼容的App SO包版本（架构: $deviceAbi）")
-                return false
+        } else null
+        progress?.add(0)
+        val installed = withContext(loaderDispatcher) {
+            val flutter = async {
+                installSoPackageFromServer(context, localServerUrl, selection.flutterPackage, "libflutter", selection.deviceAbi, progress)
             }
-            
-            Log.i(TAG, "找到Flutter SO包: ${flutterPackage.fileName}, 版本: ${flutterPackage.version}, 架构: ${flutterPackage.abi}")
-            Log.i(TAG, "找到App SO包: ${appPackage.fileName}, 版本: ${appPackage.version}, 架构: ${appPackage.abi}")
-            
-            // 下载Flutter SO包
-            val flutterZipFile = downloadSoPackageFromServerSync(
-                context, 
-                "$localServerUrl${flutterPackage.url}",
-                flutterPackage.fileName
-            )
-            
-            // 下载App SO包
-            val appZipFile = downloadSoPackageFromServerSync(
-                context,
-                "$localServerUrl${appPackage.url}",
-                appPackage.fileName
-            )
-            
-            if (flutterZipFile == null) {
-                Log.e(TAG, "从本地服务器下载Flutter SO包失败")
-                return false
+            val app = async {
+                installSoPackageFromServer(context, localServerUrl, selection.appPackage, "libapp", selection.deviceAbi, progress)
             }
-            
-            if (appZipFile == null) {
-                Log.e(TAG, "从本地服务器下载App SO包失败")
-                flutterZipFile.delete()
-                return false
+            val assets = async {
+                selection.assetsPackage?.let {
+                    loadAssetBundleFromServer(context, localServerUrl, it, progress)
+                        ?: throw IOException("从本地服务器加载资源包失败: ${it.fileName}")
+                }
             }
+            InstalledSet(flutter.await(), app.await(), assets.await())
+        }
+        Log.i(TAG, "SO包并发安装完成")
+        return installed
+    }
+
+    /**
+     * 从本地服务器加载SO文件
+     */
+    private suspend fun loadFromLocalServer(context: Context): Boolean {
+        Log.i(TAG, "开始从本地服务器加载SO: $LOCAL_SERVER_URL")
+        
+        try {
+            val selection = selectFromLocalServer(context, LOCAL_SERVER_URL) ?: return false
+            val (flutterEntry, appEntry, assetBundle) = installFromLocalServer(context, LOCAL_SERVER_URL, selection)
             
-            // 解压并验证Flutter SO包
-            val flutterExtractDir = File(context.cacheDir, "server_flutter")
-            val flutterInfo = SoPackageManager.extractAndVerifySoPackage(
-                context, flutterZipFile, flutterExtractDir
-            )
+            SoStore.acquire(flutterEntry, appEntry)
+            assetBundle?.let { AssetPackageManager.acquire(it) }
+            SoStore.setActive(context, SoStore.SoSet(
+                selection.manifestHash,
+                listOf(flutterEntry.md5, appEntry.md5),
+                assetBundle?.md5,
+                selection.appVersion
+            ))
+            SoStore.evict(context)
+            AssetPackageManager.evict(context)
             
-            // 解压并验证App SO包
-            val appExtractDir = File(context.cacheDir, "server_app")
-            val appInfo = SoPackageManager.extractAndVerifySoPackage(
-                context, appZipFile, appExtractDir
-            )
+            val flutterSoDir = SoStore.soDir(context, flutterEntry)
+            val appSoFile = SoStore.soFile(context, appEntry)
             
-            if (flutterInfo != null && appInfo != null) {
-                val flutterSoFile = File(flutterExtractDir, flutterInfo.fileName)
-                val appSoFile = File(appExtractDir, appInfo.fileName)
-                
-                if (flutterSoFile.exists() && appSoFile.exists()) {
-                    // Flutter初始化必须在主线程执行
-                    android.os.Handler(android.os.Looper.getMainLooper()).post {
-                        try {
-                            // 使用实际的app SO路径
-                            loadAndInitFlutter(context, flutterExtractDir, appSoFile.absolutePath)
-                            Log.i(TAG, "从本地服务器加载双SO成功 - Flutter版本: ${flutterInfo.version}, App版本: ${appInfo.version}")
-                        } catch (e: Exception) {
-                            Log.e(TAG, "Flutter初始化失败", e)
-                        }
-                    }
-                    
-                    // 清理下载的ZIP文件
-                    flutterZipFile.delete()
-                    appZipFile.delete()
-                    
-                    return true
-                } else {
-                    Log.e(TAG, "SO文件不存在 - Flutter: ${flutterSoFile.exists()}, App: ${appSoFile.exists()}")
-                }
-            } else {
-                Log.e(TAG, "SO包解压或验证失败 - Flutter: ${flutterInfo != null}, App: ${appInfo != null}")
+            // 使用实际的app SO路径
+            if (!initFlutter(context, flutterSoDir, appSoFile.absolutePath, assetBundle)) {
+                return false
             }
+            Log.i(TAG, "从本地服务器加载双SO成功 - Flutter版本: ${flutterEntry.version}, App版本: ${appEntry.version}")
+            return true
             
-            // 清理失败的文件
-            flutterZipFile.delete()
-            appZipFile.delete()
-            
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Log.e(TAG, "从本地服务器加载SO失败", e)
         }
@@ -170,7 +506,7 @@ object FlutterManager {
     /**
      * 从assets配置加载SO文件
      */
-    private suspend fun loadFromAssetsConfig(context: Context) {
+    private suspend fun loadFromAssetsConfig(context: Context): Boolean {
         try {
             // 获取设备ABI
             val deviceAbi = getDeviceAbi()
@@ -195,8 +531,7 @@ object FlutterManager {
             // 如果新配置文件不存在，尝试使用旧版配置
             if (flutterSoConfig == null && appSoConfig == null) {
                 Log.w(TAG, "未找到任何配置文件，尝试使用旧版配置")
-                loadFromLegacyConfig(context)
-                return
+                return loadFromLegacyConfig(context)
             }
             
             var flutterConfig: FlutterConfig? = null
@@ -221,7 +556,7 @@ object FlutterManager {
             // 检查是否至少有一个配置可用
             if (flutterConfig == null && appConfig == null) {
                 Log.e(TAG, "所有配置文件解析失败")
-                return
+                return false
             }
             
             // 检查版本兼容性
@@ -267,11 +602,11 @@ object FlutterManager {
             // 如果都没有找到合适的配置，尝试旧版配置
             if (flutterAbiConfig == null && appAbiConfig == null) {
                 Log.w(TAG, "未找到任何兼容的SO配置，尝试使用旧版配置")
-                loadFromLegacyConfig(context)
-                return
+                return loadFromLegacyConfig(context)
             }
             
             Log.i(TAG, "开始从assets配置下载SO文件")
+            _loadPhase.value = LoadPhase.Downloading(0, -1)
             if (flutterAbiConfig != null) {
                 Log.i(TAG, "Flutter SO URL: ${flutterAbiConfig.url}")
             }
@@ -279,53 +614,140 @@ object FlutterManager {
                 Log.i(TAG, "App SO URL: ${appAbiConfig.url}")
             }
             
-            val libFlutterSOSaveDir = context.getDir("libflutter", Context.MODE_PRIVATE)
-            var libFlutterResult: String? = null
-            var libAppResult: String? = null
-            
-            // 下载Flutter SO（如果配置存在）
-            if (flutterAbiConfig != null) {
-                libFlutterResult = downloadDynamicSO(context, DownloadConfig(
-                    flutterAbiConfig.url,
-                    libFlutterSOSaveDir.absolutePath
-                ).apply {
-                    fileName = "libflutter.so"
-                    expectedMd5 = flutterAbiConfig.md5
-                    expectedSize = flutterAbiConfig.size
-                })
-            }
-            
-            // 下载App SO（如果配置存在）
-            if (appAbiConfig != null) {
-                libAppResult = downloadDynamicSO(context, DownloadConfig(
-                    appAbiConfig.url,
-                    context.getDir("libapp", Context.MODE_PRIVATE).absolutePath
-                ).apply {
-                    fileName = "libapp.so"
-                    expectedMd5 = appAbiConfig.md5
-                    expectedSize = appAbiConfig.size
-                })
+            // Flutter SO、App SO和资源包并发下载（配置存在时），SO仓库中已有相同内容时不再下载
+            val (flutterEntry, appEntry, assetBundle) = coroutineScope {
+                val flutterJob = async {
+                    flutterAbiConfig?.let {
+                        loadSoFromConfig(context, "libflutter", deviceAbi, flutterConfig?.libflutterVersion ?: "", it)
+                    }
+                }
+                val appJob = async {
+                    appAbiConfig?.let {
+                        loadSoFromConfig(context, "libapp", deviceAbi, appConfig?.libappVersion ?: "", it)
+                    }
+                }
+                val assetsJob = async { loadAssetBundleFromAssetsConfig(context, appVersion) }
+                Triple(flutterJob.await(), appJob.await(), assetsJob.await())
             }
             
             // 检查下载结果并初始化Flutter
-            val hasFlutter = !TextUtils.isEmpty(libFlutterResult)
-            val hasApp = !TextUtils.isEmpty(libAppResult)
+            val hasFlutter = flutterEntry != null
+            val hasApp = appEntry != null
             
             if (hasFlutter || hasApp) {
-                Log.i(TAG, "SO文件下载完成 - Flutter: $hasFlutter, App: $hasApp，开始初始化Flutter")
-                loadAndInitFlutter(context, libFlutterSOSaveDir, libAppResult ?: "")
+                Log.i(TAG, "SO文件准备完成 - Flutter: $hasFlutter, App: $hasApp, 资源包: ${assetBundle != null}，开始初始化Flutter")
+                val loaded = listOfNotNull(flutterEntry, appEntry)
+                SoStore.acquire(*loaded.toTypedArray())
+                assetBundle?.let { AssetPackageManager.acquire(it) }
+                SoStore.setActive(context, SoStore.SoSet(
+                    MD5Util.getStringMD5(loaded.joinToString("|") { it.md5 }),
+                    loaded.map { it.md5 },
+                    assetBundle?.md5,
+                    appVersion
+                ))
+                val libFlutterSODir = flutterEntry?.let { SoStore.soDir(context, it) }
+                    ?: context.getDir("libflutter", Context.MODE_PRIVATE)
+                val libAppPath = appEntry?.let { SoStore.soFile(context, it).absolutePath } ?: ""
+                return initFlutter(context, libFlutterSODir, libAppPath, assetBundle)
             } else {
                 Log.e(TAG, "所有SO文件下载失败")
             }
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Log.e(TAG, "从assets配置加载SO文件失败", e)
         }
+        return false
+    }
+    
+    /**
+     * 按assets配置准备SO：仓库中已有相同内容时直接复用，否则下载并导入仓库
+     */
+    private suspend fun loadSoFromConfig(
+        context: Context,
+        library: String,
+        deviceAbi: String,
+        version: String,
+        abiConfig: AbiConfigInfo
+    ): SoStore.Entry? {
+        val candidates = abiConfig.candidates()
+        candidates.firstNotNullOfOrNull { SoStore.find(context, library, deviceAbi, it.md5) }?.let {
+            Log.i(TAG, "SO仓库中已有相同内容，跳过下载: $library")
+            return it
+        }
+        val variant = selectVariant(library, candidates) ?: return null
+        if (variant.isArchive()) {
+            return loadSoArchiveFromConfig(context, library, deviceAbi, variant)
+        }
+        val savePath = downloadDynamicSO(context, DownloadConfig(
+            variant.url,
+            context.getDir(library, Context.MODE_PRIVATE).absolutePath
+        ).apply {
+            fileName = "$library.so"
+            expectedMd5 = variant.md5
+            expectedSize = variant.size
+        }) ?: return null
+        val soFile = File(savePath)
+        return withContext(loaderDispatcher) {
+            LoadTrace.section(Phase.VERIFY, library) {
+                val md5 = variant.md5.ifEmpty { MD5Util.getFileMD5(soFile) }
+                SoStore.importFile(context, soFile, library, deviceAbi, version, md5)
+            }
+        }
+    }
+    
+    /**
+     * 下载压缩的SO包变体，解压校验后安装到仓库
+     */
+    private suspend fun loadSoArchiveFromConfig(
+        context: Context,
+        library: String,
+        deviceAbi: String,
+        variant: PackageVariant
+    ): SoStore.Entry? {
+        val zipPath = downloadDynamicSO(context, DownloadConfig(
+            variant.url,
+            context.getDir(library, Context.MODE_PRIVATE).absolutePath
+        ).apply {
+            fileName = "$library.zip"
+            expectedMd5 = variant.md5
+            expectedSize = variant.size
+        }) ?: return null
+        return withContext(loaderDispatcher) {
+            val zipFile = File(zipPath)
+            val stagingDir = SoStore.newStagingDir(context)
+            try {
+                val info = LoadTrace.section(Phase.EXTRACT, library) {
+                    SoPackageManager.extractAndVerifySoPackage(context, zipFile, stagingDir)
+                } ?: return@withContext null
+                LoadTrace.section(Phase.VERIFY, library) {
+                    SoStore.commit(context, stagingDir, library, deviceAbi, variant.md5, info)
+                }
+            } finally {
+                zipFile.delete()
+                stagingDir.deleteRecursively()
+            }
+        }
+    }
+    
+    /**
+     * 按当前带宽估计选择预计就绪最快的包变体
+     */
+    private fun selectVariant(name: String, candidates: List<PackageVariant>): PackageVariant? {
+        val variant = bandwidthEstimator.selectVariant(candidates)
+        if (variant == null) {
+            Log.e(TAG, "没有可用的包变体: $name")
+        } else if (candidates.size > 1) {
+            Log.i(TAG, "选择包变体: $name, 编码: ${variant.codecOrDefault()}, 大小: ${variant.size}, " +
+                "预计就绪: ${bandwidthEstimator.expectedReadyMs(variant)}ms, 带宽估计: ${bandwidthEstimator.bandwidth()}B/s")
+        }
+        return variant
     }
     
     /**
      * 从旧版配置加载SO文件
      */
-    private suspend fun loadFromLegacyConfig(context: Context) {
+    private suspend fun loadFromLegacyConfig(context: Context): Boolean {
         try {
             // 尝试加载旧版统一配置文件
             val legacyConfigContent = try {
@@ -337,13 +759,13 @@ object FlutterManager {
             
             if (legacyConfigContent == null) {
                 Log.e(TAG, "未找到任何可用的配置文件")
-                return
+                return false
             }
             
             val flutterConfig = Gson().fromJsonProxy(legacyConfigContent, FlutterConfig::class.java)
             if (flutterConfig == null) {
                 Log.e(TAG, "解析旧版配置文件失败")
-                return
+                return false
             }
             
             // 检查版本兼容性
@@ -355,39 +777,43 @@ object FlutterManager {
                     flutterConfig.maxAppVersion
                 )) {
                 Log.w(TAG, "Flutter SO版本不兼容，当前App版本: $appVersion")
-                return
+                return false
             }
             
             Log.i(TAG, "开始从旧版配置下载SO文件")
+            _loadPhase.value = LoadPhase.Downloading(0, -1)
             Log.i(TAG, "Flutter SO URL: ${flutterConfig.flutterSoUrl}")
             Log.i(TAG, "App SO URL: ${flutterConfig.appSoUrl}")
             
             val libFlutterSOSaveDir = context.getDir("libflutter", Context.MODE_PRIVATE)
-            var libFlutterResult: String? = null
-            var libAppResult: String? = null
             
-            // 下载Flutter SO（如果URL存在）
-            if (!flutterConfig.flutterSoUrl.isNullOrEmpty()) {
-                libFlutterResult = downloadDynamicSO(context, DownloadConfig(
-                    flutterConfig.flutterSoUrl,
-                    libFlutterSOSaveDir.absolutePath
-                ).apply {
-                    fileName = "libflutter.so"
-                    expectedMd5 = flutterConfig.flutterSoMd5 ?: ""
-                    expectedSize = flutterConfig.flutterSoSize
-                })
-            }
-            
-            // 下载App SO（如果URL存在）
-            if (!flutterConfig.appSoUrl.isNullOrEmpty()) {
-                libAppResult = downloadDynamicSO(context, DownloadConfig(
-                    flutterConfig.appSoUrl,
-                    context.getDir("libapp", Context.MODE_PRIVATE).absolutePath
-                ).apply {
-                    fileName = "libapp.so"
-                    expectedMd5 = flutterConfig.appSoMd5 ?: ""
-                    expectedSize = flutterConfig.appSoSize
-                })
+            // 并发下载Flutter SO和App SO（如果URL存在）
+            val (libFlutterResult, libAppResult) = coroutineScope {
+                val flutterJob = async {
+                    if (!flutterConfig.flutterSoUrl.isNullOrEmpty()) {
+                        downloadDynamicSO(context, DownloadConfig(
+                            flutterConfig.flutterSoUrl,
+                            libFlutterSOSaveDir.absolutePath
+                        ).apply {
+                            fileName = "libflutter.so"
+                            expectedMd5 = flutterConfig.flutterSoMd5 ?: ""
+                            expectedSize = flutterConfig.flutterSoSize
+                        })
+                    } else null
+                }
+                val appJob = async {
+                    if (!flutterConfig.appSoUrl.isNullOrEmpty()) {
+                        downloadDynamicSO(context, DownloadConfig(
+                            flutterConfig.appSoUrl,
+                            context.getDir("libapp", Context.MODE_PRIVATE).absolutePath
+                        ).apply {
+                            fileName = "libapp.so"
+                            expectedMd5 = flutterConfig.appSoMd5 ?: ""
+                            expectedSize = flutterConfig.appSoSize
+                        })
+                    } else null
+                }
+                Pair(flutterJob.await(), appJob.await())
             }
             
             // 检查下载结果并初始化Flutter
@@ -396,13 +822,153 @@ object FlutterManager {
             
             if (hasFlutter || hasApp) {
                 Log.i(TAG, "SO文件下载完成 - Flutter: $hasFlutter, App: $hasApp，开始初始化Flutter")
-                loadAndInitFlutter(context, libFlutterSOSaveDir, libAppResult ?: "")
+                return initFlutter(context, libFlutterSOSaveDir, libAppResult ?: "", null)
             } else {
                 Log.e(TAG, "所有SO文件下载失败")
             }
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Log.e(TAG, "从旧版配置加载SO文件失败", e)
         }
+        return false
+    }
+
+    /**
+     * 从本地服务器下载SO包并解压校验后安装到SO仓库，失败时抛出异常以取消并发的其他任务
+     * 仓库中已有相同内容时直接返回；小包边下载边解压校验，大包走断点续传
+     */
+    private suspend fun installSoPackageFromServer(
+        context: Context,
+        serverUrl: String,
+        soPackage: SoPackageInfo,
+        library: String,
+        deviceAbi: String,
+        progress: ProgressTracker? = null
+    ): SoStore.Entry = withContext(loaderDispatcher) {
+        val abi = if (soPackage.abi.isNotEmpty()) soPackage.abi else deviceAbi
+        SoStore.find(context, library, abi, soPackage.md5)?.let {
+            Log.i(TAG, "SO仓库中已有相同内容，跳过下载: ${soPackage.fileName}")
+            progress?.add(soPackage.size)
+            return@withContext it
+        }
+        val downloadUrl = "$serverUrl${soPackage.url}"
+        val tempFile = File(context.cacheDir, "temp_${soPackage.fileName}")
+        val stagingDir = SoStore.newStagingDir(context)
+        try {
+            val info = if (soPackage.size >= RESUMABLE_THRESHOLD || hasResumeProgress(tempFile)) {
+                // 大包或上次下载中断过：先断点续传下载ZIP再解压，避免网络中断后从头下载
+                val zipFile = downloadSoPackageFromServer(context, downloadUrl, soPackage.fileName, soPackage.md5, progress)
+                    ?: throw IOException("从本地服务器下载SO包失败: ${soPackage.fileName}")
+                try {
+                    LoadTrace.section(Phase.EXTRACT, soPackage.fileName) {
+                        SoPackageManager.extractAndVerifySoPackage(context, zipFile, stagingDir)
+                    }
+                } finally {
+                    zipFile.delete()
+                }
+            } else {
+                Log.i(TAG, "开始流式下载SO包: $downloadUrl")
+                // 边下载边解压校验，整体计入下载阶段
+                LoadTrace.section(Phase.DOWNLOAD, soPackage.fileName) {
+                    openDownload(downloadUrl).use { response ->
+                        if (response.code != 200) {
+                            throw IOException("下载失败，HTTP响应码: ${response.code}")
+                        }
+                        val input = if (progress != null) {
+                            ProgressTracker.CountingInputStream(response.body!!.byteStream(), progress)
+                        } else {
+                            response.body!!.byteStream()
+                        }
+                        input.use {
+                            SoPackageManager.streamExtractAndVerifySoPackage(it, stagingDir, soPackage.md5)
+                        }
+                    }
+                }
+            } ?: throw IOException("SO包解压或验证失败: ${soPackage.fileName}")
+            Log.i(TAG, "SO包校验完成: ${info.fileName}, 大小: ${info.size} bytes")
+            LoadTrace.section(Phase.VERIFY, soPackage.fileName) {
+                SoStore.commit(context, stagingDir, library, abi, soPackage.md5, info)
+            } ?: throw IOException("SO包安装失败: ${soPackage.fileName}")
+        } finally {
+            // 安装成功后staging目录已被移走
+            stagingDir.deleteRecursively()
+        }
+    }
+    
+    /**
+     * 从本地服务器加载资源包，已安装相同内容时直接复用
+     */
+    private suspend fun loadAssetBundleFromServer(
+        context: Context,
+        serverUrl: String,
+        assetsPackage: SoPackageInfo,
+        progress: ProgressTracker? = null
+    ): AssetPackageManager.AssetBundle? {
+        AssetPackageManager.findInstalled(context, assetsPackage.md5, assetsPackage.version)?.let {
+            Log.i(TAG, "资源包已安装: ${assetsPackage.fileName}")
+            progress?.add(assetsPackage.size)
+            return it
+        }
+        val zipFile = downloadSoPackageFromServer(
+            context,
+            "$serverUrl${assetsPackage.url}",
+            assetsPackage.fileName,
+            progress = progress
+        ) ?: return null
+        val bundle = LoadTrace.section(Phase.EXTRACT, assetsPackage.fileName) {
+            AssetPackageManager.installAssetPackage(context, zipFile, assetsPackage.md5)
+        }
+        zipFile.delete()
+        return bundle
+    }
+    
+    /**
+     * 按flutterassets.json加载资源包，未配置时返回null
+     */
+    private suspend fun loadAssetBundleFromAssetsConfig(context: Context, appVersion: String): AssetPackageManager.AssetBundle? {
+        val assetsConfigContent = try {
+            context.assets.open("flutterassets.json").readBytes().decodeToString()
+        } catch (e: Exception) {
+            return null
+        }
+        val assetsConfig = Gson().fromJsonProxy(assetsConfigContent, FlutterConfig::class.java)
+        val universal = assetsConfig?.universal
+        if (universal == null) {
+            Log.e(TAG, "解析flutterassets.json失败")
+            return null
+        }
+        if (!SoPackageManager.isVersionCompatible(
+                assetsConfig.flutterassetsVersion ?: "",
+                appVersion,
+                assetsConfig.minAppVersion,
+                assetsConfig.maxAppVersion
+            )) {
+            Log.w(TAG, "资源包版本不兼容，当前App版本: $appVersion")
+            return null
+        }
+        // 资源包本身是压缩包，只能在压缩方式不同的变体中选择
+        val candidates = listOf(PackageVariant(universal.url, universal.md5, universal.size, PackageVariant.CODEC_DEFLATE)) +
+            universal.variants.orEmpty().filter { it.isArchive() }
+        candidates.firstNotNullOfOrNull {
+            AssetPackageManager.findInstalled(context, it.md5, assetsConfig.flutterassetsVersion ?: "")
+        }?.let {
+            return it
+        }
+        val variant = selectVariant(ASSETS_PACKAGE_PREFIX, candidates) ?: return null
+        
+        Log.i(TAG, "资源包 URL: ${variant.url}")
+        val zipPath = downloadDynamicSO(context, DownloadConfig(
+            variant.url,
+            context.getDir(ASSETS_PACKAGE_PREFIX, Context.MODE_PRIVATE).absolutePath
+        ).apply {
+            fileName = "$ASSETS_PACKAGE_PREFIX.zip"
+            expectedMd5 = variant.md5
+            expectedSize = variant.size
+        }) ?: return null
+        return LoadTrace.section(Phase.EXTRACT, ASSETS_PACKAGE_PREFIX) {
+            AssetPackageManager.installAssetPackage(context, File(zipPath), variant.md5)
+        }
     }
 
     /**
@@ -460,7 +1026,8 @@ object FlutterManager {
             return AbiConfigInfo(
                 md5 = abiConfig.md5,
                 size = abiConfig.size,
-                url = abiConfig.url
+                url = abiConfig.url,
+                variants = abiConfig.variants.orEmpty()
             )
         }
         
@@ -492,13 +1059,25 @@ object FlutterManager {
     data class AbiConfigInfo(
         val md5: String,
         val size: Long,
-        val url: String
-    )
+        val url: String,
+        val variants: List<PackageVariant> = emptyList()
+    ) {
+        /**
+         * 主地址（SO文件本身）和配置的其他变体
+         */
+        fun candidates(): List<PackageVariant> =
+            listOf(PackageVariant(url, md5, size, PackageVariant.CODEC_RAW)) + variants
+    }
 
-    private suspend fun downloadDynamicSO(context: Context, downloadConfig: DownloadConfig): String? {
-        return suspendCoroutine { continuation ->
+    private suspend fun downloadDynamicSO(
+        context: Context,
+        downloadConfig: DownloadConfig
+    ): String? = LoadTrace.section(Phase.DOWNLOAD, downloadConfig.fileName ?: "") {
+        val launch = LoadTrace.currentLaunch()
+        val key = downloadConfig.fileName ?: downloadConfig.url
+        suspendCancellableCoroutine { continuation ->
             var startTime = System.currentTimeMillis()
-            DownloadManager.instance.start(
+            val handle = DownloadManager.instance.start(
                 context,
                 downloadConfig,
                 object : IDownloadListener {
@@ -507,32 +1086,15 @@ object FlutterManager {
                         startTime = System.currentTimeMillis()
                     }
 
+                    override fun onProgress(url: String?, downloaded: Long, length: Long) {
+                        launch?.reportBytes(key, downloaded, if (length > 0) length else downloadConfig.expectedSize)
+                    }
+
                     override fun onSuccess(url: String?, savePath: Uri?) {
                         super.onSuccess(url, savePath)
                         
-                        // 验证下载的文件
-                        val downloadedFile = File(savePath?.path ?: "")
-                        if (downloadedFile.exists()) {
-                            val actualMd5 = MD5Util.getFileMD5(downloadedFile)
-                            val actualSize = downloadedFile.length()
-                            
-                            if (downloadConfig.expectedMd5.isNotEmpty() && 
-                                actualMd5 != downloadConfig.expectedMd5) {
-                                Log.e(TAG, "文件MD5校验失败: 期望=${downloadConfig.expectedMd5}, 实际=$actualMd5")
-                                downloadedFile.delete()
-                                continuation.resume(null)
-                                return
-                            }
-                            
-                            if (downloadConfig.expectedSize > 0 && 
-                                actualSize != downloadConfig.expectedSize) {
-                                Log.e(TAG, "文件大小校验失败: 期望=${downloadConfig.expectedSize}, 实际=$actualSize")
-                                downloadedFile.delete()
-                                continuation.resume(null)
-                                return
-                            }
-                        }
-                        
+                        // MD5和大小已由DownloadManager在下载过程中校验
+                        savePath?.path?.let { File(it).length() }?.let { launch?.reportBytes(key, it, it) }
                         Log.i(TAG, "下载成功[$url] -> ${downloadConfig.fileName} & 耗时-> ${System.currentTimeMillis() - startTime}")
                         continuation.resume(savePath?.path)
                     }
@@ -543,64 +1105,77 @@ object FlutterManager {
                         continuation.resume(null)
                     }
                 })
+            // 只取消本次请求，合并到同一传输的其他请求继续下载
+            continuation.invokeOnCancellation { handle.cancel() }
         }
     }
 
-    private fun loadAndInitFlutter(context: Context, flutterSOSaveDir: File, appSOSavePath: String) {
-        TinkerLoadLibrary.installNativeLibraryPath(context.classLoader, flutterSOSaveDir)
+    /**
+     * 把SO目录加入native库搜索路径并更新JNI参数，首次调用时配置FlutterInjector，返回用于初始化的FlutterLoader
+     */
+    private fun installFlutterLoader(
+        context: Context,
+        flutterSOSaveDir: File,
+        appSOSavePath: String,
+        assetBundle: AssetPackageManager.AssetBundle? = null
+    ): FlutterLoader {
+        // Flutter和App的SO目录一次加入搜索路径
+        val soDirs = listOfNotNull(flutterSOSaveDir, appSOSavePath.takeIf { it.isNotEmpty() }?.let { File(it).parentFile })
+        TinkerLoadLibrary.installNativeLibraryPaths(context.classLoader, soDirs)
         
-        if (appSOSavePath.isNotEmpty()) {
-            // 有app SO文件时使用自定义JNI
-            FlutterInjector.setInstance(
-                FlutterInjector.Builder()
-                .setFlutterJNIFactory(CustomFlutterJNI.CustomFactory(appSOSavePath))
-                .build())
-        } else {
-            // 只有Flutter SO时使用默认配置
-            Log.i(TAG, "使用默认Flutter配置（无app SO）")
+        // 没有app SO和资源包时也要更新，清除之前尝试留下的参数；空值不会追加启动参数
+        flutterJNIFactory.update(appSOSavePath, assetBundle)
+        synchronized(this) {
+            if (!injectorInstalled) {
+                FlutterInjector.setInstance(
+                    FlutterInjector.Builder()
+                        .setExecutorService(flutterInitExecutor)
+                        .setFlutterJNIFactory(flutterJNIFactory)
+                        .build()
+                )
+                injectorInstalled = true
+            }
         }
-        
-        engineGroup = FlutterEngineGroup(context)
-        Log.i(TAG, "FlutterEngineGroup初始化完成")
+        return FlutterInjector.instance().flutterLoader()
     }
 
-    private fun fetchSoPackageListSync(url: String): List<SoPackageInfo> {
+    /**
+     * 获取包列表：缓存有效期内直接使用本地缓存，过期后带ETag条件请求，未变化时服务器只返回304
+     */
+    private fun fetchSoPackageListSync(context: Context, url: String): List<SoPackageInfo> {
+        val cached = CatalogCache.get(context, url)
+        if (cached != null && cached.isFresh()) {
+            Log.i(TAG, "使用缓存的SO包列表，共${cached.packages.size}个包")
+            return cached.packages
+        }
         return try {
             Log.i(TAG, "正在请求SO包列表: $url")
             
-            val connection = java.net.URL(url).openConnection() as java.net.HttpURLConnection
-            connection.requestMethod = "GET"
-            connection.connectTimeout = 15000
-            connection.readTimeout = 30000
-            connection.setRequestProperty("Accept", "application/json")
-            connection.setRequestProperty("User-Agent", "FlutterDynamic/1.0")
-            connection.setRequestProperty("Connection", "close")
-            
-            Log.i(TAG, "开始连接服务器...")
-            connection.connect()
-            
-            val responseCode = connection.responseCode
-            Log.i(TAG, "HTTP响应码: $responseCode")
+            // 连接由共享客户端的连接池保持，响应体由客户端透明解压gzip
+            val request = Request.Builder()
+                .url(url)
+                .header("Accept", "application/json")
+            cached?.etag?.let { request.header("If-None-Match", it) }
             
-            if (responseCode == 200) {
-                val inputStream = connection.inputStream
-                val response = inputStream.readBytes().toString(Charsets.UTF_8)
-                inputStream.close()
-                
-                Log.i(TAG, "服务器响应长度: ${response.length} 字符")
-                Log.i(TAG, "服务器响应内容: ${response.take(200)}...")
-                
-                val gson = com.google.gson.Gson()
-                val listType = object : com.google.gson.reflect.TypeToken<List<SoPackageInfo>>() {}.type
-                val packages = gson.fromJson<List<SoPackageInfo>>(response, listType) ?: emptyList()
-                Log.i(TAG, "成功解析到${packages.size}个SO包")
-                
-                connection.disconnect()
-                packages
-            } else {
-                Log.e(TAG, "HTTP请求失败，响应码: $responseCode")
-                connection.disconnect()
-                emptyList()
+            SharedHttpClient.client.newCall(request.build()).execute().use { response ->
+                val responseCode = response.code
+                val maxAgeMs = CatalogCache.parseMaxAge(response.header("Cache-Control"))
+                if (responseCode == java.net.HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                    Log.i(TAG, "SO包列表未变化（304），使用缓存")
+                    CatalogCache.refresh(context, cached, maxAgeMs)
+                    cached.packages
+                } else if (responseCode == 200) {
+                    // 边读边解析，不生成中间字符串
+                    val packages = response.body!!.byteStream().use { PackageCatalog.readPackageList(it) }
+                    Log.i(TAG, "成功解析到${packages.size}个SO包")
+                    CatalogCache.put(context, CatalogCache.Entry(
+                        url, response.header("ETag"), System.currentTimeMillis(), maxAgeMs, packages
+                    ))
+                    packages
+                } else {
+                    Log.e(TAG, "HTTP请求失败，响应码: $responseCode")
+                    emptyList()
+                }
             }
         } catch (e: java.net.ConnectException) {
             Log.e(TAG, "连接服务器失败: ${e.message}")
@@ -613,204 +1188,72 @@ object FlutterManager {
             emptyList()
         }
     }
-
-    private suspend fun fetchSoPackageList(url: String): List<SoPackageInfo> {
-        return withContext(Dispatchers.IO) {
-            try {
-                Log.i(TAG, "正在请求SO包列表: $url")
-                
-                // 使用更简单的HTTP实现
-                val connection = java.net.URL(url).openConnection() as java.net.HttpURLConnection
-                connection.requestMethod = "GET"
-                connection.connectTimeout = 15000
-                connection.readTimeout = 30000
-                connection.setRequestProperty("Accept", "application/json")
-                connection.setRequestProperty("User-Agent", "FlutterDynamic/1.0")
-                connection.setRequestProperty("Connection", "close")
-                
-                Log.i(TAG, "开始连接服务器...")
-                connection.connect()
-                
-                val responseCode = connection.responseCode
-                Log.i(TAG, "HTTP响应码: $responseCode")
-                
-                if (responseCode == 200) {
-                    val inputStream = connection.inputStream
-                    val response = inputStream.readBytes().toString(Charsets.UTF_8)
-                    inputStream.close()
-                    
-                    Log.i(TAG, "服务器响应长度: ${response.length} 字符")
-                    Log.i(TAG, "服务器响应内容: ${response.take(200)}...")
-                    
-                    val gson = com.google.gson.Gson()
-                    val listType = object : com.google.gson.reflect.TypeToken<List<SoPackageInfo>>() {}.type
-                    val packages = gson.fromJson<List<SoPackageInfo>>(response, listType) ?: emptyList()
-                    Log.i(TAG, "成功解析到${packages.size}个SO包")
-                    
-                    connection.disconnect()
-                    return@withContext packages
-                } else {
-                    Log.e(TAG, "HTTP请求失败，响应码: $responseCode")
-                    // 尝试读取错误响应
-                    try {
-                        val errorStream = connection.errorStream
-                        if (errorStream != null) {
-                            val errorResponse = errorStream.readBytes().toString(Charsets.UTF_8)
-                            Log.e(TAG, "错误响应: $errorResponse")
-                            errorStream.close()
-                        }
-                    } catch (e: Exception) {
-                        Log.e(TAG, "读取错误响应失败: ${e.message}")
-                    }
-                    connection.disconnect()
-                    return@withContext emptyList()
-                }
-            } catch (e: java.net.ConnectException) {
-                Log.e(TAG, "连接服务器失败: ${e.message}")
-                emptyList<SoPackageInfo>()
-            } catch (e: java.net.SocketTimeoutException) {
-                Log.e(TAG, "连接超时: ${e.message}")
-                emptyList<SoPackageInfo>()
-            } catch (e: Exception) {
-                Log.e(TAG, "获取SO包列表失败: ${e.javaClass.simpleName} - ${e.message}", e)
-                emptyList<SoPackageInfo>()
-            }
-        }
-    }
     
     private fun findCompatiblePackage(
-        packages: List<SoPackageInfo>,
-        packagePrefix: String,
-        appVersion: String,
+        catalog: PackageCatalog,
+        library: String,
         deviceAbi: String
     ): SoPackageInfo? {
-        Log.i(TAG, "查找兼容的SO包: 前缀=$packagePrefix, 设备架构=$deviceAbi")
-        
-        // 首先过滤出匹配前缀和架构的包
-        val compatiblePackages = packages.filter { soPackage ->
-            val matchesPrefix = soPackage.fileName.startsWith(packagePrefix)
-            val matchesAbi = soPackage.abi == deviceAbi || soPackage.fileName.contains(deviceAbi)
-            
-            Log.d(TAG, "检查包: ${soPackage.fileName}, 前缀匹配: $matchesPrefix, 架构匹配: $matchesAbi (包架构: ${soPackage.abi})")
-            
-            matchesPrefix && matchesAbi
-        }
-        
-        if (compatiblePackages.isEmpty()) {
-            Log.w(TAG, "未找到匹配的SO包，尝试查找所有架构的包")
-            // 如果没有找到匹配架构的包，尝试查找所有匹配前缀的包
-            val allMatchingPackages = packages.filter { it.fileName.startsWith(packagePrefix) }
-            Log.i(TAG, "找到 ${allMatchingPackages.size} 个匹配前缀的包")
-            allMatchingPackages.forEach { pkg ->
-                Log.i(TAG, "可用包: ${pkg.fileName}, 架构: ${pkg.abi}")
-            }
-            return null
-        }
-        
-        // 从兼容的包中选择版本最高的
-        // 从兼容的包中选择版本最高的
-        val selectedPackage = compatiblePackages.maxByOrNull { parseVersionCode(it.version) }
-        
+        val selectedPackage = catalog.latest(library, deviceAbi)
         if (selectedPackage != null) {
             Log.i(TAG, "选择的SO包: ${selectedPackage.fileName}, 版本: ${selectedPackage.version}, 架构: ${selectedPackage.abi}")
+        } else {
+            Log.w(TAG, "未找到匹配的SO包: $library, 设备架构: $deviceAbi, 该库共有${catalog.count(library)}个包")
         }
-        
         return selectedPackage
     }
     
-    // 重载方法，保持向后兼容性
-    private fun findCompatiblePackage(
-        packages: List<SoPackageInfo>,
-        packagePrefix: String,
-        appVersion: String
-    ): SoPackageInfo? {
-        val deviceAbi = getDeviceAbi()
-        return findCompatiblePackage(packages, packagePrefix, appVersion, deviceAbi)
+    private fun openDownload(downloadUrl: String): Response {
+        val request = Request.Builder()
+            .url(downloadUrl)
+            .header("Accept-Encoding", "identity")
+            .build()
+        return SharedHttpClient.withTimeouts(bandwidthEstimator.connectTimeoutMs(), bandwidthEstimator.readTimeoutMs())
+            .newCall(request)
+            .execute()
     }
     
-    private fun downloadSoPackageFromServerSync(
-        context: Context,
-        downloadUrl: String,
-        fileName: String
-    ): File? {
-        return try {
-            Log.i(TAG, "开始下载SO包: $downloadUrl")
-            val tempFile = File(context.cacheDir, "temp_$fileName")
-            
-            val connection = java.net.URL(downloadUrl).openConnection() as java.net.HttpURLConnection
-            connection.requestMethod = "GET"
-            connection.connectTimeout = 15000
-            connection.readTimeout = 60000
-            connection.setRequestProperty("User-Agent", "FlutterDynamic/1.0")
-            
-            val responseCode = connection.responseCode
-            Log.i(TAG, "下载响应码: $responseCode")
-            
-            if (responseCode == 200) {
-                connection.inputStream.use { input ->
-                    java.io.FileOutputStream(tempFile).use { output ->
-                        val buffer = ByteArray(8192)
-                        var bytesRead: Int
-                        var totalBytes = 0L
-                        while (input.read(buffer).also { bytesRead = it } != -1) {
-                            output.write(buffer, 0, bytesRead)
-                            totalBytes += bytesRead
-                        }
-                        Log.i(TAG, "下载进度: ${totalBytes} bytes")
-                    }
-                }
-                
-                Log.i(TAG, "从服务器下载完成: $fileName, 大小: ${tempFile.length()} bytes")
-                tempFile
-            } else {
-                Log.e(TAG, "下载失败，HTTP响应码: $responseCode")
-                null
-            }
-        } catch (e: Exception) {
-            Log.e(TAG, "下载SO包失败: $fileName - ${e.message}", e)
-            null
-        }
+    /**
+     * 大包多连接分段下载，不支持时退回单连接断点续传；超时按当前网络估计
+     */
+    private fun packageDownloader(): SegmentedDownloader {
+        val connectTimeout = bandwidthEstimator.connectTimeoutMs()
+        val readTimeout = bandwidthEstimator.readTimeoutMs()
+        return SegmentedDownloader(ResumableDownloader(connectTimeout, readTimeout), connectTimeout, readTimeout)
+    }
+    
+    /**
+     * 上次下载中断时留下的单连接或分段续传进度
+     */
+    private fun hasResumeProgress(tempFile: File): Boolean {
+        return ResumableDownloader.journalFileOf(tempFile).exists() || SegmentedDownloader.journalFileOf(tempFile).exists()
     }
 
     private suspend fun downloadSoPackageFromServer(
         context: Context,
         downloadUrl: String,
-        fileName: String
+        fileName: String,
+        expectedMd5: String = "",
+        progress: ProgressTracker? = null
     ): File? {
-        return withContext(Dispatchers.IO) {
+        return withContext(loaderDispatcher) {
             try {
                 Log.i(TAG, "开始下载SO包: $downloadUrl")
                 val tempFile = File(context.cacheDir, "temp_$fileName")
-                
-                val connection = java.net.URL(downloadUrl).openConnection() as java.net.HttpURLConnection
-                connection.requestMethod = "GET"
-                connection.connectTimeout = 15000
-                connection.readTimeout = 60000
-                connection.setRequestProperty("User-Agent", "FlutterDynamic/1.0")
-                
-                val responseCode = connection.responseCode
-                Log.i(TAG, "下载响应码: $responseCode")
-                
-                if (responseCode == 200) {
-                    connection.inputStream.use { input ->
-                        java.io.FileOutputStream(tempFile).use { output ->
-                            val buffer = ByteArray(8192)
-                            var bytesRead: Int
-                            var totalBytes = 0L
-                            while (input.read(buffer).also { bytesRead = it } != -1) {
-                                output.write(buffer, 0, bytesRead)
-                                totalBytes += bytesRead
-                            }
-                            Log.i(TAG, "下载进度: ${totalBytes} bytes")
-                        }
-                    }
-                    
-                    Log.i(TAG, "从服务器下载完成: $fileName, 大小: ${tempFile.length()} bytes")
-                    tempFile
-                } else {
-                    Log.e(TAG, "下载失败，HTTP响应码: $responseCode")
-                    null
+                val job = coroutineContext.job
+                // 续传时已下载的部分不计入带宽样本
+                val resumedBytes = ResumableDownloader.partFileOf(tempFile).length() + SegmentedDownloader.resumedBytesOf(tempFile)
+                val startTime = System.currentTimeMillis()
+                // 单连接下载中断或被取消时保留续传进度，下次从断点继续
+                LoadTrace.section(Phase.DOWNLOAD, fileName) {
+                    packageDownloader().download(downloadUrl, tempFile, expectedMd5, { job.isActive }, progress?.fileListener())
                 }
+                val duration = System.currentTimeMillis() - startTime
+                bandwidthEstimator.addSample(tempFile.length() - resumedBytes, duration)
+                Log.i(TAG, "从服务器下载完成: $fileName, 大小: ${tempFile.length()} bytes, 耗时: ${duration}ms")
+                tempFile
+            } catch (e: CancellationException) {
+                throw e
             } catch (e: Exception) {
                 Log.e(TAG, "下载SO包失败: $fileName - ${e.message}", e)
                 null
@@ -818,14 +1261,6 @@ object FlutterManager {
         }
     }
     
-    private fun parseVersionCode(version: String): Int {
-        return try {
-            version.replace(".", "").toInt()
-        } catch (e: Exception) {
-            0
-        }
-    }
-
     private fun getAppVersion(context: Context): String {
         return try {
             val packageInfo = context.packageManager.getPackageInfo(context.packageName, 0)
@@ -836,9 +1271,56 @@ object FlutterManager {
     }
 
     fun getEngineGroup(): FlutterEngineGroup? = engineGroup
+
+    /**
+     * 汇总并发下载的进度
+     */
+    private class ProgressTracker(private val totalBytes: Long, private val onUpdate: (Long, Long) -> Unit) {
+        private val downloadedBytes = AtomicLong()
+
+        fun add(bytes: Long) {
+            onUpdate(downloadedBytes.addAndGet(bytes), totalBytes)
+        }
+
+        /**
+         * 单个文件的进度回调（累计值）转换为增量
+         * 只取最大值：回调可能来自多个线程，下载器切换（如分段下载退回单连接）时累计值也会从0重新开始
+         */
+        fun fileListener(): (Long, Long) -> Unit {
+            var last = 0L
+            val lock = Any()
+            return { downloaded, _ ->
+                val delta = synchronized(lock) {
+                    (downloaded - last).coerceAtLeast(0).also { last = maxOf(last, downloaded) }
+                }
+                if (delta > 0) add(delta)
+            }
+        }
+
+        /**
+         * 统计读取字节数的输入流
+         */
+        class CountingInputStream(input: InputStream, private val tracker: ProgressTracker) : FilterInputStream(input) {
+            override fun read(): Int {
+                val b = super.read()
+                if (b != -1) tracker.add(1)
+                return b
+            }
+
+            override fun read(b: ByteArray, off: Int, len: Int): Int {
+                val count = super.read(b, off, len)
+                if (count > 0) tracker.add(count.toLong())
+                return count
+            }
+        }
+    }
 }
 
-class CustomFlutterJNI(private val appSOSavePath: String) : FlutterJNI(){
+/**
+ * 按 [CustomFactory] 当前的配置修改启动参数和资源读取：app SO路径为空时使用默认的libapp.so，
+ * 没有资源包时从APK读取flutter_assets
+ */
+class CustomFlutterJNI(private val config: CustomFactory) : FlutterJNI(){
     override fun init(
         context: Context,
         args: Array<out String>,
@@ -847,16 +1329,54 @@ class CustomFlutterJNI(private val appSOSavePath: String) : FlutterJNI(){
         engineCachesPath: String,
         initTimeMillis: Long
     ) {
+        val appSOSavePath = config.appSOSavePath
+        val assetBundle = config.assetBundle
         val hookArgs = args.toMutableList().run {
-            add("--aot-shared-library-name=$appSOSavePath")
+            if (appSOSavePath.isNotEmpty()) {
+                add("--aot-shared-library-name=$appSOSavePath")
+            }
+            // 资源包中带有icudtl.dat时，改为从文件加载ICU数据
+            assetBundle?.icuDataPath?.let { icuDataPath ->
+                removeAll { it.startsWith("--icu-native-lib-path=") }
+                add("--icu-data-file-path=$icuDataPath")
+            }
             toTypedArray()
         }
         super.init(context, hookArgs, bundlePath, appStoragePath, engineCachesPath, initTimeMillis)
     }
 
-    class CustomFactory(private val appSOSavePath: String) : Factory(){
+    override fun runBundleAndSnapshotFromLibrary(
+        bundlePath: String,
+        entrypointFunctionName: String?,
+        pathToEntrypointFunction: String?,
+        assetManager: AssetManager,
+        entrypointArgs: MutableList<String>?
+    ) {
+        // flutter_assets已从APK中移除，改为从下载的资源包读取
+        val bundleAssetManager = config.assetBundle?.let { AssetPackageManager.createAssetManager(it) } ?: assetManager
+        super.runBundleAndSnapshotFromLibrary(
+            bundlePath, entrypointFunctionName, pathToEntrypointFunction, bundleAssetManager, entrypointArgs
+        )
+    }
+
+    /**
+     * FlutterInjector创建时就会生成FlutterLoader使用的JNI，配置在每次初始化前通过 [update] 更新
+     */
+    class CustomFactory : Factory(){
+        @Volatile
+        var appSOSavePath: String = ""
+            private set
+        @Volatile
+        var assetBundle: AssetPackageManager.AssetBundle? = null
+            private set
+
+        fun update(appSOSavePath: String, assetBundle: AssetPackageManager.AssetBundle?) {
+            this.appSOSavePath = appSOSavePath
+            this.assetBundle = assetBundle
+        }
+
         override fun provideFlutterJNI(): FlutterJNI {
-            return CustomFlutterJNI(appSOSavePath)
+            return CustomFlutterJNI(this)
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,277 @@
+package com.example.flutterdynamic
+
+import android.os.Build
+import android.os.Trace
+import android.util.Log
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.coroutineContext
+
+/**
+ * 动态加载各阶段的耗时记录
+ *
+ * 每次加载对应一个 [Launch]，作为协程上下文元素向下传递；后台更新等不属于本次加载的协程不携带它，
+ * 其中的耗时不会混入启动数据。每个阶段同时输出 android.os.Trace 异步区间（`FlutterLoad.<阶段>`，Android 10及以上），
+ * 可以在Perfetto中与系统事件对照。同一阶段并发执行时（如同时下载多个包）按墙钟时间合并。
+ */
+object LoadTrace {
+
+    private const val TAG = "LoadTrace"
+    // 字节进度回调的最小间隔
+    private const val NOTIFY_INTERVAL_MS = 100L
+
+    /**
+     * 加载阶段，按正常加载顺序排列；weight为该阶段在进度条中的占比
+     */
+    enum class Phase(val traceName: String, val title: String, val weight: Int) {
+        CATALOG("FlutterLoad.catalog", "获取包列表", 5),
+        DOWNLOAD("FlutterLoad.download", "下载", 60),
+        EXTRACT("FlutterLoad.extract", "解压", 10),
+        VERIFY("FlutterLoad.verify", "校验", 5),
+        NATIVE_PATH("FlutterLoad.nativePath", "安装native库路径", 2),
+        JNI_INIT("FlutterLoad.jniInit", "Flutter初始化", 13),
+        ENGINE("FlutterLoad.engine", "创建引擎", 5)
+    }
+
+    /**
+     * 一个阶段区间，时间相对于加载开始（毫秒），未结束时endMs为-1
+     */
+    data class Span(val phase: Phase, val label: String, val startMs: Long, val endMs: Long)
+
+    /**
+     * 一次加载的耗时明细
+     */
+    data class LoadBreakdown(
+        val launchId: Int,
+        val elapsedMs: Long,
+        /**
+         * 各阶段的墙钟耗时，没有执行的阶段不包含在内
+         */
+        val phaseMs: Map<Phase, Long>,
+        val spans: List<Span>,
+        /**
+         * 已完成的字节数（包含仓库中已有、跳过下载的包）
+         */
+        val completedBytes: Long,
+        /**
+         * 需要准备的总字节数，未知时为0
+         */
+        val totalBytes: Long,
+        /**
+         * 整体进度（0~1），单调递增
+         */
+        val progress: Float,
+        val finished: Boolean,
+        val success: Boolean
+    ) {
+        fun summary(): String {
+            val phases = Phase.values().filter { it in phaseMs }
+                .joinToString(", ") { "${it.title}: ${phaseMs[it]}ms" }
+            return "加载#$launchId ${if (success) "成功" else if (finished) "失败" else "进行中"}, 总耗时: ${elapsedMs}ms, " +
+                "$phases, 字节: $completedBytes/$totalBytes"
+        }
+    }
+
+    /**
+     * 加载进度监听，回调在执行加载的后台线程上
+     */
+    interface Listener {
+        fun onProgress(breakdown: LoadBreakdown) {}
+        fun onFinished(breakdown: LoadBreakdown) {}
+    }
+
+    /**
+     * 一次加载
+     */
+    class Launch internal constructor(val id: Int) : AbstractCoroutineContextElement(Launch) {
+
+        companion object Key : CoroutineContext.Key<Launch>
+
+        private class MutableSpan(val phase: Phase, val label: String, val startNanos: Long) {
+            @Volatile var endNanos = -1L
+        }
+
+        private val startNanos = System.nanoTime()
+        private val spans = CopyOnWriteArrayList<MutableSpan>()
+        // 按文件统计的字节进度（已完成，总数）
+        private val bytes = ConcurrentHashMap<String, Pair<Long, Long>>()
+        private var maxProgress = 0f
+        private var lastNotifyNanos = 0L
+        @Volatile private var finished = false
+        private var success = false
+
+        internal fun open(phase: Phase, label: String): Any? {
+            if (finished) return null
+            return MutableSpan(phase, label, System.nanoTime()).also {
+                spans.add(it)
+                notifyListeners(force = true)
+            }
+        }
+
+        internal fun close(token: Any?) {
+            val span = token as? MutableSpan ?: return
+            span.endNanos = System.nanoTime()
+            notifyListeners(force = true)
+        }
+
+        /**
+         * 更新某个文件的字节进度（累计值）
+         */
+        fun reportBytes(key: String, completed: Long, total: Long) {
+            if (finished) return
+            bytes[key] = Pair(completed, total)
+            notifyListeners(force = false)
+        }
+
+        internal fun finish(success: Boolean): LoadBreakdown {
+            synchronized(this) {
+                this.success = success
+                finished = true
+            }
+            return snapshot()
+        }
+
+        @Synchronized
+        fun snapshot(): LoadBreakdown {
+            val now = System.nanoTime()
+            val current = spans.toList()
+            val completedBytes = bytes.values.sumOf { it.first }
+            val totalBytes = bytes.values.sumOf { it.second.coerceAtLeast(0) }
+            maxProgress = maxOf(maxProgress, if (finished) 1f else progress(current, completedBytes, totalBytes))
+            return LoadBreakdown(
+                id,
+                toMs(now - startNanos),
+                Phase.values().filter { phase -> current.any { it.phase == phase } }
+                    .associateWith { phase -> toMs(wallNanos(current.filter { it.phase == phase }, now)) },
+                current.map {
+                    Span(it.phase, it.label, toMs(it.startNanos - startNanos), if (it.endNanos < 0) -1 else toMs(it.endNanos - startNanos))
+                },
+                completedBytes,
+                totalBytes,
+                maxProgress,
+                finished,
+                success
+            )
+        }
+
+        /**
+         * 已开始的最靠后阶段之前的阶段视为完成（包括被跳过的阶段），进行中的下载阶段按字节计算
+         */
+        private fun progress(current: List<MutableSpan>, completedBytes: Long, totalBytes: Long): Float {
+            val lastStarted = current.maxOfOrNull { it.phase.ordinal } ?: return 0f
+            var done = 0f
+            for (phase in Phase.values()) {
+                val phaseSpans = current.filter { it.phase == phase }
+                val running = phaseSpans.any { it.endNanos < 0 }
+                done += phase.weight * when {
+                    running && phase == Phase.DOWNLOAD && totalBytes > 0 ->
+                        (completedBytes.toFloat() / totalBytes).coerceIn(0f, 1f)
+                    running -> 0f
+                    phaseSpans.isNotEmpty() || phase.ordinal < lastStarted -> 1f
+                    else -> 0f
+                }
+            }
+            return done / Phase.values().sumOf { it.weight }
+        }
+
+        /**
+         * 区间并集的总长度
+         */
+        private fun wallNanos(phaseSpans: List<MutableSpan>, now: Long): Long {
+            var total = 0L
+            var coveredUntil = Long.MIN_VALUE
+            for (span in phaseSpans.sortedBy { it.startNanos }) {
+                val end = if (span.endNanos < 0) now else span.endNanos
+                val start = maxOf(span.startNanos, coveredUntil)
+                if (end > start) {
+                    total += end - start
+                    coveredUntil = end
+                }
+            }
+            return total
+        }
+
+        private fun notifyListeners(force: Boolean) {
+            if (listeners.isEmpty()) return
+            val now = System.nanoTime()
+            synchronized(this) {
+                if (!force && now - lastNotifyNanos < NOTIFY_INTERVAL_MS * 1_000_000) return
+                lastNotifyNanos = now
+            }
+            val breakdown = snapshot()
+            listeners.forEach { it.onProgress(breakdown) }
+        }
+
+        private fun toMs(nanos: Long) = nanos / 1_000_000
+    }
+
+    private val launchIds = AtomicInteger()
+    private val traceCookies = AtomicInteger()
+    private val listeners = CopyOnWriteArrayList<Listener>()
+    @Volatile private var current: Launch? = null
+    @Volatile private var lastBreakdown: LoadBreakdown? = null
+
+    /**
+     * 开始一次加载，返回的元素需加入执行加载的协程上下文
+     */
+    fun begin(): Launch = Launch(launchIds.incrementAndGet()).also { current = it }
+
+    /**
+     * 结束当前协程所属的加载，输出耗时汇总并通知监听
+     */
+    suspend fun finish(success: Boolean) {
+        val launch = coroutineContext[Launch] ?: return
+        val breakdown = launch.finish(success)
+        lastBreakdown = breakdown
+        Log.i(TAG, breakdown.summary())
+        listeners.forEach { it.onFinished(breakdown) }
+    }
+
+    /**
+     * 记录一个阶段；当前协程不属于某次加载时只输出Trace区间
+     * @param label 区分同一阶段的并发任务，如文件名
+     */
+    suspend fun <T> section(phase: Phase, label: String = "", block: suspend () -> T): T {
+        val launch = coroutineContext[Launch]
+        val cookie = traceCookies.incrementAndGet()
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(phase.traceName, cookie)
+        }
+        val token = launch?.open(phase, label)
+        try {
+            return block()
+        } finally {
+            launch?.close(token)
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.endAsyncSection(phase.traceName, cookie)
+            }
+        }
+    }
+
+    /**
+     * 当前协程所属的加载，用于在回调中上报字节进度
+     */
+    suspend fun currentLaunch(): Launch? = coroutineContext[Launch]
+
+    /**
+     * 最近一次结束的加载
+     */
+    fun lastBreakdown(): LoadBreakdown? = lastBreakdown
+
+    /**
+     * 添加监听，立即回调当前加载的进度（已结束时回调结果）
+     */
+    fun addListener(listener: Listener) {
+        listeners.add(listener)
+        val launch = current ?: return
+        val breakdown = launch.snapshot()
+        if (breakdown.finished) listener.onFinished(breakdown) else listener.onProgress(breakdown)
+    }
+
+    fun removeListener(listener: Listener) {
+        listeners.remove(listener)
+    }
+}
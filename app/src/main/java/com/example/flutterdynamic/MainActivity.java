@@ -36,6 +36,13 @@ public class MainActivity extends AppCompatActivity {
         // 添加动态SO测试按钮
         addDynamicSoTestButton();
     }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // 停留在首页时利用空闲时间预热Flutter引擎
+        FlutterEnginePool.INSTANCE.prewarmWhenIdle(this);
+    }
     
     private void addDynamicSoTestButton() {
         // 获取主布局 - 使用ConstraintLayout
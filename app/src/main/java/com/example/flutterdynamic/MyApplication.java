@@ -2,9 +2,21 @@ package com.example.flutterdynamic;
 
 import android.app.Application;
 
+import com.example.flutterdynamic.util.ProcessUtil;
+
 public class MyApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        // 尽早开始加载SO，进入Flutter页面时只需等待同一个任务
+        if (ProcessUtil.INSTANCE.isMainProcess(this)) {
+            FlutterManager.INSTANCE.init(this);
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        FlutterEnginePool.INSTANCE.onTrimMemory(level);
     }
 }
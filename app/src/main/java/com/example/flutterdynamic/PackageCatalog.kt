@@ -0,0 +1,150 @@
+package com.example.flutterdynamic
+
+import com.example.flutterdynamic.mode.SoPackageInfo
+import com.example.flutterdynamic.util.SemVer
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.OutputStream
+import java.io.OutputStreamWriter
+import java.util.TreeMap
+
+/**
+ * 服务器包列表索引
+ *
+ * 按（库名，ABI）分组，每组用按语义化版本排序的 [TreeMap] 保存，
+ * 构建一次后查找最新版本或不超过某版本的最新版本都是O(log n)，不随历史包数量线性增长。
+ *
+ * @param libraries 已知的库名前缀（如libflutter、libapp），包按文件名匹配最长的前缀归类，不匹配的包忽略
+ */
+class PackageCatalog(packages: List<SoPackageInfo>, libraries: Collection<String>) {
+
+    private data class Key(val library: String, val abi: String)
+
+    private val index = HashMap<Key, TreeMap<SemVer, SoPackageInfo>>()
+
+    init {
+        val prefixes = libraries.sortedByDescending { it.length }
+        for (soPackage in packages) {
+            val library = prefixes.firstOrNull { soPackage.fileName.startsWith(it) } ?: continue
+            val version = SemVer.parse(soPackage.version) ?: SemVer.ZERO
+            // 同一版本出现多次时保留列表中的第一个
+            index.getOrPut(Key(library, abiOf(soPackage))) { TreeMap() }.putIfAbsent(version, soPackage)
+        }
+    }
+
+    /**
+     * 设备可用的最高版本：在设备ABI和通用包中选择
+     * @param maxVersion 不为null时只选择不超过该版本的包
+     */
+    fun latest(library: String, deviceAbi: String, maxVersion: SemVer? = null): SoPackageInfo? {
+        val candidates = listOfNotNull(
+            floor(Key(library, deviceAbi), maxVersion),
+            floor(Key(library, UNIVERSAL_ABI), maxVersion)
+        )
+        return candidates.maxByOrNull { it.key }?.value
+    }
+
+    /**
+     * 查找指定版本的包
+     */
+    fun find(library: String, abi: String, version: String): SoPackageInfo? {
+        val semVer = SemVer.parse(version) ?: return null
+        return index[Key(library, abi)]?.get(semVer)
+    }
+
+    /**
+     * 某个库在各ABI下的包数量，用于日志
+     */
+    fun count(library: String): Int {
+        return index.entries.filter { it.key.library == library }.sumOf { it.value.size }
+    }
+
+    private fun floor(key: Key, maxVersion: SemVer?): Map.Entry<SemVer, SoPackageInfo>? {
+        val versions = index[key] ?: return null
+        return if (maxVersion == null) versions.lastEntry() else versions.floorEntry(maxVersion)
+    }
+
+    companion object {
+        const val UNIVERSAL_ABI = "universal"
+        private val KNOWN_ABIS = listOf("arm64-v8a", "armeabi-v7a", "x86_64", "x86", UNIVERSAL_ABI)
+
+        /**
+         * 包的ABI：文件名中带有已知ABI时以文件名为准（服务器声明的abi可能不可靠），
+         * 否则使用声明的abi，仍无法确定时视为通用包
+         */
+        internal fun abiOf(soPackage: SoPackageInfo): String {
+            val fileNameAbi = KNOWN_ABIS.firstOrNull { soPackage.fileName.contains(it) }
+            if (fileNameAbi != null) {
+                return fileNameAbi
+            }
+            return soPackage.abi.takeUnless { it.isNullOrEmpty() } ?: UNIVERSAL_ABI
+        }
+
+        /**
+         * 从响应流中逐个读取包信息，不把整个响应读成字符串，也不经过反射
+         * 未知字段直接跳过
+         */
+        fun readPackageList(input: InputStream): List<SoPackageInfo> {
+            val packages = mutableListOf<SoPackageInfo>()
+            JsonReader(InputStreamReader(input, Charsets.UTF_8)).use { reader ->
+                reader.beginArray()
+                while (reader.hasNext()) {
+                    packages.add(readPackage(reader))
+                }
+                reader.endArray()
+            }
+            return packages
+        }
+
+        /**
+         * 按 [readPackageList] 可读取的格式写出包列表
+         */
+        fun writePackageList(output: OutputStream, packages: List<SoPackageInfo>) {
+            JsonWriter(OutputStreamWriter(output, Charsets.UTF_8)).use { writer ->
+                writer.beginArray()
+                for (soPackage in packages) {
+                    writer.beginObject()
+                    writer.name("version").value(soPackage.version)
+                    writer.name("md5").value(soPackage.md5)
+                    writer.name("size").value(soPackage.size)
+                    writer.name("url").value(soPackage.url)
+                    writer.name("fileName").value(soPackage.fileName)
+                    writer.name("abi").value(soPackage.abi)
+                    writer.endObject()
+                }
+                writer.endArray()
+            }
+        }
+
+        private fun readPackage(reader: JsonReader): SoPackageInfo {
+            var version = ""
+            var md5 = ""
+            var size = 0L
+            var url = ""
+            var fileName = ""
+            var abi = ""
+            reader.beginObject()
+            while (reader.hasNext()) {
+                val name = reader.nextName()
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull()
+                    continue
+                }
+                when (name) {
+                    "version" -> version = reader.nextString()
+                    "md5" -> md5 = reader.nextString()
+                    "size" -> size = reader.nextLong()
+                    "url" -> url = reader.nextString()
+                    "fileName" -> fileName = reader.nextString()
+                    "abi" -> abi = reader.nextString()
+                    else -> reader.skipValue()
+                }
+            }
+            reader.endObject()
+            return SoPackageInfo(version, md5, size, url, fileName, abi)
+        }
+    }
+}
@@ -3,12 +3,19 @@ package com.example.flutterdynamic
 import android.content.Context
 import android.util.Log
 import com.example.flutterdynamic.mode.SoPackageInfo
+import com.example.flutterdynamic.util.BufferPool
 import com.example.flutterdynamic.util.MD5Util
+import com.example.flutterdynamic.util.SemVer
 import com.google.gson.Gson
 import java.io.File
 import java.io.FileInputStream
 import java.io.FileOutputStream
+import java.io.InputStream
+import java.security.DigestInputStream
+import java.security.MessageDigest
 import java.util.zip.ZipInputStream
+import kotlinx.coroutines.ensureActive
+import kotlin.coroutines.coroutineContext
 
 /**
  * SO包管理器
@@ -88,6 +95,103 @@ object SoPackageManager {
         }
     }
     
+    /**
+     * 边下载边解压并校验SO包，不在设备上落地临时ZIP文件
+     * SO数据在解压的同时计算MD5并只写入一次，写完最后一个字节即完成校验；
+     * 校验通过后才将临时文件重命名为正式文件
+     * @param input 服务器响应流
+     * @param expectedZipMd5 ZIP包MD5（包列表中的md5），为空时不校验
+     */
+    suspend fun streamExtractAndVerifySoPackage(
+        input: InputStream,
+        extractDir: File,
+        expectedZipMd5: String = ""
+    ): SoPackageInfo? {
+        if (!extractDir.exists()) {
+            extractDir.mkdirs()
+        }
+        val zipDigest = MessageDigest.getInstance("MD5")
+        // 已写入临时文件的条目：文件名 -> (临时文件, MD5, 大小)
+        val staged = mutableMapOf<String, Triple<File, String, Long>>()
+        var packageInfo: SoPackageInfo? = null
+        
+        try {
+            BufferPool.use { buffer ->
+                val digestInput = DigestInputStream(input, zipDigest)
+                val zipIn = ZipInputStream(digestInput)
+                var entry = zipIn.nextEntry
+                while (entry != null) {
+                    val name = entry.name
+                    if (entry.isDirectory || name.contains('/') || name.contains("..")) {
+                        // SO包为扁平结构，忽略目录及不安全的路径
+                        Log.w(TAG, "跳过条目: $name")
+                    } else if (name == PACKAGE_INFO_FILE) {
+                        val json = zipIn.readBytes().decodeToString()
+                        packageInfo = Gson().fromJson(json, SoPackageInfo::class.java)
+                        File(extractDir, PACKAGE_INFO_FILE).writeText(json)
+                    } else {
+                        val tempFile = File(extractDir, "$name.tmp")
+                        val digest = MessageDigest.getInstance("MD5")
+                        var size = 0L
+                        FileOutputStream(tempFile).use { output ->
+                            var bytesRead: Int
+                            while (zipIn.read(buffer).also { bytesRead = it } != -1) {
+                                coroutineContext.ensureActive()
+                                digest.update(buffer, 0, bytesRead)
+                                output.write(buffer, 0, bytesRead)
+                                size += bytesRead
+                            }
+                        }
+                        staged[name] = Triple(tempFile, MD5Util.toHex(digest), size)
+                    }
+                    zipIn.closeEntry()
+                    entry = zipIn.nextEntry
+                }
+                // 读完中央目录，得到完整ZIP的MD5
+                while (digestInput.read(buffer) != -1) {
+                    coroutineContext.ensureActive()
+                }
+            }
+            
+            val info = packageInfo
+            if (info == null) {
+                Log.e(TAG, "包信息文件不存在: $PACKAGE_INFO_FILE")
+                return null
+            }
+            if (expectedZipMd5.isNotEmpty()) {
+                val actualZipMd5 = MD5Util.toHex(zipDigest)
+                if (actualZipMd5 != expectedZipMd5) {
+                    Log.e(TAG, "SO包MD5校验失败: 期望=$expectedZipMd5, 实际=$actualZipMd5")
+                    return null
+                }
+            }
+            val (tempFile, actualMd5, actualSize) = staged[info.fileName] ?: run {
+                Log.e(TAG, "SO文件不存在: ${info.fileName}")
+                return null
+            }
+            if (actualMd5 != info.md5) {
+                Log.e(TAG, "SO文件MD5校验失败: 期望=${info.md5}, 实际=$actualMd5")
+                return null
+            }
+            if (actualSize != info.size) {
+                Log.e(TAG, "SO文件大小校验失败: 期望=${info.size}, 实际=$actualSize")
+                return null
+            }
+            
+            val soFile = File(extractDir, info.fileName)
+            soFile.delete()
+            if (!tempFile.renameTo(soFile)) {
+                Log.e(TAG, "SO文件重命名失败: ${info.fileName}")
+                return null
+            }
+            Log.i(TAG, "SO包流式解压验证成功: ${info.fileName}")
+            return info
+        } finally {
+            // 未通过校验或被取消时清理临时文件
+            staged.values.forEach { it.first.delete() }
+        }
+    }
+    
     /**
      * 解压ZIP文件
      */
@@ -152,7 +256,7 @@ object SoPackageManager {
     }
     
     /**
-     * 检查版本兼容性
+     * 检查版本兼容性：App版本在[minAppVersion, maxAppVersion]之间（按语义化版本比较），上下限为空时不限制
      */
     fun isVersionCompatible(
         soVersion: String,
@@ -160,27 +264,14 @@ object SoPackageManager {
         minAppVersion: String,
         maxAppVersion: String
     ): Boolean {
-        return try {
-            val appVersionCode = parseVersionCode(appVersion)
-            val minVersionCode = parseVersionCode(minAppVersion)
-            val maxVersionCode = parseVersionCode(maxAppVersion)
-            
-            appVersionCode in minVersionCode..maxVersionCode
-        } catch (e: Exception) {
-            Log.e(TAG, "版本兼容性检查失败", e)
-            false
-        }
-    }
-    
-    /**
-     * 解析版本号为数字代码
-     */
-    private fun parseVersionCode(version: String): Int {
-        return try {
-            version.replace(".", "").toInt()
-        } catch (e: Exception) {
-            0
+        val appSemVer = SemVer.parse(appVersion)
+        if (appSemVer == null) {
+            Log.e(TAG, "无法解析App版本号: $appVersion")
+            return false
         }
+        val minSemVer = SemVer.parse(minAppVersion)
+        val maxSemVer = SemVer.parse(maxAppVersion)
+        return (minSemVer == null || appSemVer >= minSemVer) && (maxSemVer == null || appSemVer <= maxSemVer)
     }
     
     /**
@@ -0,0 +1,475 @@
+package com.example.flutterdynamic
+
+import android.content.Context
+import android.system.Os
+import android.util.Log
+import com.example.flutterdynamic.mode.SoPackageInfo
+import com.example.flutterdynamic.util.MD5Util
+import com.google.gson.Gson
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.CRC32
+
+/**
+ * 设备端SO仓库
+ * 按内容哈希（SO文件MD5）保存已校验的SO，位于filesDir下不会被系统清理缓存时删除
+ *
+ * 目录结构：`so_store/<库名>/<ABI>/<SO MD5>/<SO文件>`，索引保存在 `so_store/index.json`。
+ * 安装时先写入staging目录，校验通过后整体重命名到正式目录，并记录文件的校验信息，之后启动时只做O(1)的快速检查；
+ * 当前进程正在使用的SO、最近一次激活和暂存待激活的SO组合不会被淘汰，其余版本按最近使用时间和总大小淘汰。
+ */
+object SoStore {
+
+    private const val TAG = "SoStore"
+    private const val STORE_DIR = "so_store"
+    private const val STAGING_DIR = "staging"
+    private const val INDEX_FILE = "index.json"
+
+    // 旧版本总大小上限与最长保留时间（资源包使用相同的策略）
+    internal const val DEFAULT_MAX_BYTES = 128L * 1024 * 1024
+    internal const val DEFAULT_MAX_AGE_MS = 30L * 24 * 60 * 60 * 1000
+    internal const val STAGING_EXPIRE_MS = 24L * 60 * 60 * 1000
+
+    /**
+     * 仓库中的一个SO版本
+     * @param md5 SO文件MD5（内容地址）
+     * @param packageMd5 下载包MD5，用于直接按包列表中的md5查找
+     */
+    data class Entry(
+        val library: String,
+        val abi: String,
+        val version: String,
+        val md5: String,
+        val packageMd5: String,
+        val fileName: String,
+        val size: Long,
+        val installTime: Long,
+        var lastUsed: Long,
+        var verification: Verification? = null
+    )
+
+    /**
+     * 安装时记录的校验信息，之后启动时只需stat和少量采样读取即可确认文件未变化，不再计算整个文件的MD5
+     * （MD5即 [Entry.md5]，安装时已校验）
+     * @param inode 文件inode，获取失败时为0（不比较）
+     * @param sampleCrc 文件头、中、尾各一块数据的CRC32
+     * @param verifiedAt 最近一次完整校验MD5的时间
+     */
+    data class Verification(
+        val size: Long,
+        val mtime: Long,
+        val inode: Long,
+        val sampleCrc: Long,
+        val verifiedAt: Long
+    )
+
+    /**
+     * 一组可以一起加载的SO（及资源包）
+     * @param manifestHash 生成该组合的清单哈希
+     * @param soMd5s 组合中SO的MD5
+     * @param assetsMd5 资源包MD5，没有时为null
+     * @param appVersion 激活时的App版本，App升级后该组合不再使用
+     */
+    data class SoSet(
+        val manifestHash: String,
+        val soMd5s: List<String>,
+        val assetsMd5: String?,
+        val appVersion: String
+    )
+
+    /**
+     * 已解析的SO组合，SO都已确认存在
+     */
+    data class ResolvedSet(val set: SoSet, val entries: List<Entry>)
+
+    /**
+     * 仓库索引
+     * @param active 最近一次激活的组合
+     * @param pending 后台已下载校验、下次冷启动时激活的组合
+     */
+    private class Index {
+        var entries: MutableList<Entry> = mutableListOf()
+        var active: SoSet? = null
+        var pending: SoSet? = null
+    }
+
+    private var index: Index? = null
+
+    // 采样读取的块大小与块数
+    private const val SAMPLE_BLOCK_SIZE = 4096
+    private const val SAMPLE_BLOCKS = 3
+    // 启动后后台完整校验MD5的抽样比例，超过间隔未完整校验的一定会校验
+    private const val FULL_REHASH_SAMPLE_RATE = 0.1
+    private const val FULL_REHASH_INTERVAL_MS = 7L * 24 * 60 * 60 * 1000
+
+    // 当前进程已加载的SO引用计数，SO加载后无法卸载，不能被淘汰
+    private val refCounts = ConcurrentHashMap<String, Int>()
+
+    private fun root(context: Context) = File(context.filesDir, STORE_DIR)
+
+    /**
+     * SO所在目录，可直接作为native库搜索路径
+     */
+    fun soDir(context: Context, entry: Entry): File {
+        return File(File(File(root(context), entry.library), entry.abi), entry.md5)
+    }
+
+    fun soFile(context: Context, entry: Entry): File {
+        return File(soDir(context, entry), entry.fileName)
+    }
+
+    /**
+     * 按SO MD5或下载包MD5查找已安装的版本，文件缺失或大小不符时从索引移除
+     */
+    @Synchronized
+    fun find(context: Context, library: String, abi: String, md5: String): Entry? {
+        if (md5.isEmpty()) return null
+        val index = loadIndex(context)
+        val entry = index.entries.firstOrNull {
+            it.library == library && it.abi == abi && (it.md5 == md5 || it.packageMd5 == md5)
+        } ?: return null
+        if (!isIntact(context, entry)) {
+            Log.w(TAG, "SO文件缺失或已损坏，移除索引: ${entry.library}/${entry.abi}/${entry.md5}")
+            index.entries.remove(entry)
+            soDir(context, entry).deleteRecursively()
+            saveIndex(context)
+            return null
+        }
+        entry.lastUsed = System.currentTimeMillis()
+        saveIndex(context)
+        return entry
+    }
+
+    /**
+     * 查找某个库最近使用的版本
+     */
+    @Synchronized
+    fun findLatest(context: Context, library: String): Entry? {
+        return loadIndex(context).entries
+            .filter { it.library == library && isIntact(context, it) }
+            .maxByOrNull { it.lastUsed }
+    }
+
+    /**
+     * 创建staging目录，解压和校验在其中完成后再调用 [commit]
+     */
+    fun newStagingDir(context: Context): File {
+        val dir = File(File(root(context), STAGING_DIR), UUID.randomUUID().toString())
+        dir.mkdirs()
+        return dir
+    }
+
+    /**
+     * 把已校验的staging目录原子地安装到仓库；相同内容已存在时直接复用
+     * @param info staging目录中SO的包信息（已校验MD5和大小）
+     */
+    @Synchronized
+    fun commit(
+        context: Context,
+        stagingDir: File,
+        library: String,
+        abi: String,
+        packageMd5: String,
+        info: SoPackageInfo
+    ): Entry? {
+        val index = loadIndex(context)
+        val now = System.currentTimeMillis()
+        val entry = Entry(library, abi, info.version, info.md5, packageMd5, info.fileName, info.size, now, now)
+        val targetDir = soDir(context, entry)
+        val existing = index.entries.firstOrNull { it.library == library && it.abi == abi && it.md5 == info.md5 }
+        if (existing != null && isIntact(context, existing)) {
+            stagingDir.deleteRecursively()
+            existing.lastUsed = now
+            saveIndex(context)
+            return existing
+        }
+        index.entries.removeAll { it.library == library && it.abi == abi && it.md5 == info.md5 }
+        targetDir.deleteRecursively()
+        targetDir.parentFile?.mkdirs()
+        if (!stagingDir.renameTo(targetDir)) {
+            Log.e(TAG, "SO安装失败: ${targetDir.absolutePath}")
+            stagingDir.deleteRecursively()
+            return null
+        }
+        entry.verification = fingerprint(soFile(context, entry), now)
+        index.entries.add(entry)
+        saveIndex(context)
+        Log.i(TAG, "SO已安装到仓库: $library/$abi/${info.md5}, 版本: ${info.version}")
+        return entry
+    }
+
+    /**
+     * 把已校验的单个SO文件导入仓库（Downloader下载的SO）
+     */
+    fun importFile(context: Context, soFile: File, library: String, abi: String, version: String, md5: String): Entry? {
+        val stagingDir = newStagingDir(context)
+        val staged = File(stagingDir, soFile.name)
+        if (!soFile.renameTo(staged)) {
+            soFile.copyTo(staged, overwrite = true)
+            soFile.delete()
+        }
+        val info = SoPackageInfo(version, md5, staged.length(), "", staged.name, abi)
+        return commit(context, stagingDir, library, abi, "", info)
+    }
+
+    /**
+     * 标记SO正在被当前进程使用
+     */
+    fun acquire(vararg entries: Entry) {
+        entries.forEach { entry -> refCounts.merge(entry.md5, 1, Int::plus) }
+    }
+
+    fun release(vararg entries: Entry) {
+        entries.forEach { entry ->
+            refCounts.computeIfPresent(entry.md5) { _, count -> if (count > 1) count - 1 else null }
+        }
+    }
+
+    /**
+     * 记录最近一次激活的SO组合
+     */
+    @Synchronized
+    fun setActive(context: Context, set: SoSet) {
+        val index = loadIndex(context)
+        index.active = set
+        if (index.pending?.manifestHash == set.manifestHash) {
+            index.pending = null
+        }
+        saveIndex(context)
+    }
+
+    /**
+     * 暂存后台准备好的新组合，下次冷启动时激活
+     */
+    @Synchronized
+    fun stage(context: Context, set: SoSet) {
+        val index = loadIndex(context)
+        index.pending = if (index.active?.manifestHash == set.manifestHash) null else set
+        saveIndex(context)
+    }
+
+    /**
+     * 最近一次激活或暂存的组合的清单哈希，用于判断服务器是否有更新
+     */
+    @Synchronized
+    fun latestManifest(context: Context): String? {
+        val index = loadIndex(context)
+        return (index.pending ?: index.active)?.manifestHash
+    }
+
+    /**
+     * 冷启动时获取可直接加载的组合：有暂存的新组合时先激活它，否则返回最近一次激活的组合
+     * 组合需与当前App版本一致且SO都还在
+     */
+    @Synchronized
+    fun loadStartupSet(context: Context, appVersion: String): ResolvedSet? {
+        val index = loadIndex(context)
+        index.pending?.let { pending ->
+            val resolved = resolve(context, pending, appVersion)
+            index.pending = null
+            if (resolved != null) {
+                Log.i(TAG, "激活后台准备好的SO组合: ${pending.manifestHash}")
+                index.active = pending
+                saveIndex(context)
+                return resolved
+            }
+            saveIndex(context)
+        }
+        return index.active?.let { resolve(context, it, appVersion) }
+    }
+
+    private fun resolve(context: Context, set: SoSet, appVersion: String): ResolvedSet? {
+        if (set.appVersion != appVersion || set.soMd5s.isEmpty()) {
+            return null
+        }
+        val entries = set.soMd5s.map { md5 ->
+            loadIndex(context).entries.firstOrNull { it.md5 == md5 } ?: return null
+        }
+        if (entries.any { !isIntact(context, it) }) {
+            return null
+        }
+        val now = System.currentTimeMillis()
+        entries.forEach { it.lastUsed = now }
+        return ResolvedSet(set, entries)
+    }
+
+    /**
+     * 按安装时的校验记录快速检查文件是否未变化：比较大小、修改时间、inode和采样CRC，不读取整个文件
+     * 旧索引中没有校验记录的版本（安装时已校验过MD5）按大小检查后补写记录
+     */
+    private fun isIntact(context: Context, entry: Entry): Boolean {
+        val file = soFile(context, entry)
+        if (file.length() != entry.size) {
+            return false
+        }
+        val recorded = entry.verification
+        if (recorded == null) {
+            entry.verification = fingerprint(file, entry.installTime)
+            return entry.verification != null
+        }
+        return matches(file, recorded)
+    }
+
+    /**
+     * 文件与校验记录一致：大小、修改时间、inode和采样CRC都未变化
+     */
+    internal fun matches(file: File, recorded: Verification): Boolean {
+        if (file.length() != recorded.size) {
+            return false
+        }
+        val current = fingerprint(file, recorded.verifiedAt) ?: return false
+        // inode获取失败时不比较
+        val inodeMatches = current.inode == 0L || recorded.inode == 0L || current.inode == recorded.inode
+        return inodeMatches && current.mtime == recorded.mtime && current.sampleCrc == recorded.sampleCrc
+    }
+
+    internal fun fingerprint(file: File, verifiedAt: Long): Verification? {
+        return try {
+            val inode = try {
+                Os.stat(file.absolutePath).st_ino
+            } catch (e: Exception) {
+                0L
+            }
+            val crc = CRC32()
+            RandomAccessFile(file, "r").use { raf ->
+                val length = raf.length()
+                val block = ByteArray(SAMPLE_BLOCK_SIZE)
+                for (i in 0 until SAMPLE_BLOCKS) {
+                    // 依次为文件头、中间、末尾
+                    val position = ((length - SAMPLE_BLOCK_SIZE).coerceAtLeast(0) * i) / (SAMPLE_BLOCKS - 1)
+                    raf.seek(position)
+                    val count = raf.read(block, 0, minOf(SAMPLE_BLOCK_SIZE.toLong(), length - position).toInt())
+                    if (count > 0) crc.update(block, 0, count)
+                }
+            }
+            Verification(file.length(), file.lastModified(), inode, crc.value, verifiedAt)
+        } catch (e: IOException) {
+            Log.e(TAG, "读取SO校验信息失败: ${file.absolutePath}", e)
+            null
+        }
+    }
+
+    /**
+     * 后台抽样完整校验已加载的SO：按 [FULL_REHASH_SAMPLE_RATE] 抽样，
+     * 超过 [FULL_REHASH_INTERVAL_MS] 未完整校验的一定校验。
+     * MD5不一致时移除该版本，下次冷启动重新下载（当前进程已加载，无法替换）
+     */
+    fun rehashSampled(context: Context, entries: List<Entry>) {
+        val now = System.currentTimeMillis()
+        for (entry in entries) {
+            if (!shouldRehash(entry.verification, now)) {
+                continue
+            }
+            // 计算MD5时不持有仓库锁
+            val actualMd5 = MD5Util.getFileMD5(soFile(context, entry))
+            synchronized(this) {
+                if (actualMd5 == entry.md5) {
+                    entry.verification = entry.verification?.copy(verifiedAt = now)
+                } else {
+                    Log.e(TAG, "SO文件MD5校验失败，移除: ${entry.library}/${entry.abi}/${entry.md5}, 实际=$actualMd5")
+                    val index = loadIndex(context)
+                    index.entries.remove(entry)
+                    if (index.active?.soMd5s?.contains(entry.md5) == true) index.active = null
+                    if (index.pending?.soMd5s?.contains(entry.md5) == true) index.pending = null
+                    refCounts.remove(entry.md5)
+                    soDir(context, entry).deleteRecursively()
+                }
+                saveIndex(context)
+            }
+        }
+    }
+
+    /**
+     * 本次是否需要完整校验：按抽样比例，或距上次完整校验超过间隔
+     */
+    internal fun shouldRehash(verification: Verification?, now: Long): Boolean {
+        val verifiedAt = verification?.verifiedAt ?: 0
+        return now - verifiedAt >= FULL_REHASH_INTERVAL_MS || Math.random() < FULL_REHASH_SAMPLE_RATE
+    }
+
+    /**
+     * 最近一次激活和暂存待激活的组合引用的资源包，资源包淘汰时保留
+     */
+    @Synchronized
+    fun referencedAssets(context: Context): Set<String> {
+        val index = loadIndex(context)
+        return listOfNotNull(index.active?.assetsMd5, index.pending?.assetsMd5).toSet()
+    }
+
+    /**
+     * 淘汰旧版本：先删除超过保留时间的版本，再按最近使用时间删除直到总大小不超过上限
+     * 当前进程使用中、最近一次激活和暂存待激活的版本不会被删除
+     */
+    @Synchronized
+    fun evict(context: Context, maxBytes: Long = DEFAULT_MAX_BYTES, maxAgeMs: Long = DEFAULT_MAX_AGE_MS) {
+        val index = loadIndex(context)
+        val now = System.currentTimeMillis()
+        val protected = listOfNotNull(index.active, index.pending).flatMap { it.soMd5s }.toSet() + refCounts.keys
+        val candidates = index.entries.filter { it.md5 !in protected }.sortedBy { it.lastUsed }
+        var totalBytes = index.entries.sumOf { it.size }
+        val removed = mutableListOf<Entry>()
+        for (entry in candidates) {
+            if (now - entry.lastUsed <= maxAgeMs && totalBytes <= maxBytes) {
+                continue
+            }
+            soDir(context, entry).deleteRecursively()
+            totalBytes -= entry.size
+            removed.add(entry)
+            Log.i(TAG, "淘汰SO版本: ${entry.library}/${entry.abi}/${entry.md5}, 版本: ${entry.version}")
+        }
+        // 清理中断安装留下的staging目录（跳过可能正在安装的）
+        File(root(context), STAGING_DIR).listFiles()?.forEach { dir ->
+            if (now - dir.lastModified() > STAGING_EXPIRE_MS) {
+                dir.deleteRecursively()
+            }
+        }
+        if (removed.isNotEmpty()) {
+            index.entries.removeAll(removed)
+            saveIndex(context)
+        }
+    }
+
+    /**
+     * 清空仓库
+     */
+    @Synchronized
+    fun clear(context: Context) {
+        root(context).deleteRecursively()
+        index = null
+        Log.i(TAG, "清理SO仓库")
+    }
+
+    private fun loadIndex(context: Context): Index {
+        index?.let { return it }
+        val file = File(root(context), INDEX_FILE)
+        val loaded = try {
+            if (file.exists()) Gson().fromJson(file.readText(), Index::class.java) else null
+        } catch (e: Exception) {
+            Log.e(TAG, "读取SO仓库索引失败", e)
+            null
+        } ?: Index()
+        index = loaded
+        return loaded
+    }
+
+    private fun saveIndex(context: Context) {
+        val current = index ?: return
+        val dir = root(context)
+        dir.mkdirs()
+        val tempFile = File(dir, "$INDEX_FILE.tmp")
+        tempFile.writeText(Gson().toJson(current))
+        if (!tempFile.renameTo(File(dir, INDEX_FILE))) {
+            Log.e(TAG, "写入SO仓库索引失败")
+        }
+    }
+
+    /**
+     * 读取仓库中SO的包信息（仅服务器下载的包带有）
+     */
+    fun getPackageInfo(context: Context, entry: Entry): SoPackageInfo? {
+        return SoPackageManager.getSoPackageInfo(soDir(context, entry))
+    }
+}
@@ -6,167 +6,174 @@ import java.io.File
 import java.io.IOException
 import java.lang.reflect.Field
 import java.lang.reflect.Method
+import java.util.concurrent.ConcurrentHashMap
 
 object TinkerLoadLibrary {
 
     private val TAG = "TinkerLoadLibrary"
 
     fun installNativeLibraryPath(classLoader: ClassLoader, folder: File?) {
-        if (folder == null || !folder.exists()) {
-            Log.e(TAG, "installNativeLibraryPath, folder $folder is illegal")
+        installNativeLibraryPaths(classLoader, listOf(folder))
+    }
+
+    /**
+     * 一次安装多个SO目录，只重建一次nativeLibraryPathElements，列表中靠前的目录优先查找
+     */
+    fun installNativeLibraryPaths(classLoader: ClassLoader, folders: List<File?>) {
+        val validFolders = folders.filterNotNull().filter { folder ->
+            folder.exists().also { exists ->
+                if (!exists) Log.e(TAG, "installNativeLibraryPath, folder $folder is illegal")
+            }
+        }.distinct()
+        if (validFolders.isEmpty()) {
             return
         }
         if (Build.VERSION.SDK_INT == 25 && Build.VERSION.PREVIEW_SDK_INT != 0
             || Build.VERSION.SDK_INT > 25
         ) {
             try {
-                V25.install(classLoader, folder)
+                V25.install(classLoader, validFolders)
             } catch (throwable: Throwable) {
                 Log.e(
                     TAG,
                     "installNativeLibraryPath, v25 fail, sdk: ${Build.VERSION.SDK_INT}, error: ${throwable.message}, try to fallback to V23"
                 )
-                V23.install(classLoader, folder)
+                V23.install(classLoader, validFolders)
             }
         } else if (Build.VERSION.SDK_INT >= 23) {
             try {
-                V23.install(classLoader, folder)
+                V23.install(classLoader, validFolders)
             } catch (throwable: Throwable) {
                 Log.e(
                     TAG,
                     "installNativeLibraryPath, v23 fail, sdk: ${Build.VERSION.SDK_INT}, error: ${throwable.message}, try to fallback to V14"
                 )
-                V14.install(classLoader, folder)
+                V14.install(classLoader, validFolders)
             }
         }
     }
 
-    private object V25 {
-        fun install(classLoader: ClassLoader, folder: File) {
-            val pathListField: Field = ShareReflectUtil.findField(classLoader, "pathList")
-            val dexPathList = pathListField[classLoader]
-            val nativeLibraryDirectories: Field =
-                ShareReflectUtil.findField(dexPathList, "nativeLibraryDirectories")
-            var origLibDirs = nativeLibraryDirectories[dexPathList] as MutableList<File>
-            if (origLibDirs == null) {
-                origLibDirs = ArrayList(2)
-            }
-            val libDirIt = origLibDirs.iterator()
-            while (libDirIt.hasNext()) {
-                val libDir = libDirIt.next()
-                if (folder == libDir) {
-                    libDirIt.remove()
-                    break
-                }
-            }
-            origLibDirs.add(0, folder)
-            val systemNativeLibraryDirectories: Field =
-                ShareReflectUtil.findField(dexPathList, "systemNativeLibraryDirectories")
-            var origSystemLibDirs = systemNativeLibraryDirectories[dexPathList] as List<File>
-            if (origSystemLibDirs == null) {
-                origSystemLibDirs = ArrayList(2)
-            }
-            val newLibDirs: MutableList<File> =
-                ArrayList(origLibDirs.size + origSystemLibDirs.size + 1)
-            newLibDirs.addAll(origLibDirs)
-            newLibDirs.addAll(origSystemLibDirs)
-            val makeElements: Method = ShareReflectUtil.findMethod(
-                dexPathList, "makePathElements",
-                MutableList::class.java
-            )
-            val elements = makeElements.invoke(dexPathList, newLibDirs) as Array<Any>
-            val nativeLibraryPathElements: Field =
-                ShareReflectUtil.findField(dexPathList, "nativeLibraryPathElements")
-            nativeLibraryPathElements[dexPathList] = elements
+    /**
+     * DexPathList相关的反射句柄，按ClassLoader类型缓存，每个进程只查找一次
+     */
+    private class PathListHandles(
+        val pathList: Field,
+        val nativeLibraryDirectories: Field,
+        val systemNativeLibraryDirectories: Field? = null,
+        val nativeLibraryPathElements: Field? = null,
+        val makePathElements: Method? = null
+    )
+
+    /**
+     * 把目录放到原有目录之前，并去掉重复的目录（原地修改，nativeLibraryDirectories需同步更新）
+     */
+    private fun prependFolders(pathList: Any, field: Field, folders: List<File>): MutableList<File> {
+        @Suppress("UNCHECKED_CAST")
+        var origLibDirs = field[pathList] as MutableList<File>?
+        if (origLibDirs == null) {
+            origLibDirs = ArrayList(folders.size + 1)
+            field[pathList] = origLibDirs
         }
+        origLibDirs.removeAll(folders)
+        origLibDirs.addAll(0, folders)
+        return origLibDirs
     }
 
-    private object V23 {
-        fun install(classLoader: ClassLoader, folder: File) {
-            val pathListField: Field =
-                ShareReflectUtil.findField(
-                    classLoader,
-                    "pathList"
-                )
-            val dexPathList = pathListField[classLoader]
-            val nativeLibraryDirectories: Field =
-                ShareReflectUtil.findField(
-                    dexPathList,
-                    "nativeLibraryDirectories"
+    private fun mergeWithSystemDirs(pathList: Any, handles: PathListHandles, libDirs: List<File>): MutableList<File> {
+        @Suppress("UNCHECKED_CAST")
+        val origSystemLibDirs = handles.systemNativeLibraryDirectories!![pathList] as List<File>? ?: emptyList()
+        val newLibDirs: MutableList<File> = ArrayList(libDirs.size + origSystemLibDirs.size)
+        newLibDirs.addAll(libDirs)
+        newLibDirs.addAll(origSystemLibDirs)
+        return newLibDirs
+    }
+
+    internal object V25 {
+        private val handlesCache = ConcurrentHashMap<Class<*>, PathListHandles>()
+
+        private fun handles(classLoader: ClassLoader): PathListHandles {
+            return handlesCache.getOrPut(classLoader.javaClass) {
+                val pathListField: Field = ShareReflectUtil.findField(classLoader, "pathList")
+                val dexPathList = pathListField[classLoader]
+                PathListHandles(
+                    pathListField,
+                    ShareReflectUtil.findField(dexPathList, "nativeLibraryDirectories"),
+                    ShareReflectUtil.findField(dexPathList, "systemNativeLibraryDirectories"),
+                    ShareReflectUtil.findField(dexPathList, "nativeLibraryPathElements"),
+                    ShareReflectUtil.findMethod(dexPathList, "makePathElements", MutableList::class.java)
                 )
-            var origLibDirs = nativeLibraryDirectories[dexPathList] as MutableList<File>
-            if (origLibDirs == null) {
-                origLibDirs = java.util.ArrayList(2)
             }
-            val libDirIt = origLibDirs.iterator()
-            while (libDirIt.hasNext()) {
-                val libDir = libDirIt.next()
-                if (folder == libDir) {
-                    libDirIt.remove()
-                    break
-                }
-            }
-            origLibDirs.add(0, folder)
-            val systemNativeLibraryDirectories: Field =
-                ShareReflectUtil.findField(
-                    dexPathList,
-                    "systemNativeLibraryDirectories"
+        }
+
+        fun install(classLoader: ClassLoader, folders: List<File>) {
+            val handles = handles(classLoader)
+            val dexPathList = handles.pathList[classLoader]
+            val origLibDirs = prependFolders(dexPathList, handles.nativeLibraryDirectories, folders)
+            val newLibDirs = mergeWithSystemDirs(dexPathList, handles, origLibDirs)
+            val elements = handles.makePathElements!!.invoke(dexPathList, newLibDirs)
+            handles.nativeLibraryPathElements!![dexPathList] = elements
+        }
+    }
+
+    internal object V23 {
+        private val handlesCache = ConcurrentHashMap<Class<*>, PathListHandles>()
+
+        private fun handles(classLoader: ClassLoader): PathListHandles {
+            return handlesCache.getOrPut(classLoader.javaClass) {
+                val pathListField: Field = ShareReflectUtil.findField(classLoader, "pathList")
+                val dexPathList = pathListField[classLoader]
+                PathListHandles(
+                    pathListField,
+                    ShareReflectUtil.findField(dexPathList, "nativeLibraryDirectories"),
+                    ShareReflectUtil.findField(dexPathList, "systemNativeLibraryDirectories"),
+                    ShareReflectUtil.findField(dexPathList, "nativeLibraryPathElements"),
+                    ShareReflectUtil.findMethod(
+                        dexPathList,
+                        "makePathElements",
+                        MutableList::class.java,
+                        File::class.java,
+                        MutableList::class.java
+                    )
                 )
-            var origSystemLibDirs = systemNativeLibraryDirectories[dexPathList] as List<File>
-            if (origSystemLibDirs == null) {
-                origSystemLibDirs = java.util.ArrayList(2)
             }
-            val newLibDirs: MutableList<File> =
-                java.util.ArrayList(origLibDirs.size + origSystemLibDirs.size + 1)
-            newLibDirs.addAll(origLibDirs)
-            newLibDirs.addAll(origSystemLibDirs)
-            val makeElements: Method =
-                ShareReflectUtil.findMethod(
-                    dexPathList,
-                    "makePathElements",
-                    MutableList::class.java,
-                    File::class.java,
-                    MutableList::class.java
-                )
-            val suppressedExceptions = java.util.ArrayList<IOException>()
-            val elements = makeElements.invoke(
+        }
+
+        fun install(classLoader: ClassLoader, folders: List<File>) {
+            val handles = handles(classLoader)
+            val dexPathList = handles.pathList[classLoader]
+            val origLibDirs = prependFolders(dexPathList, handles.nativeLibraryDirectories, folders)
+            val newLibDirs = mergeWithSystemDirs(dexPathList, handles, origLibDirs)
+            val suppressedExceptions = ArrayList<IOException>()
+            val elements = handles.makePathElements!!.invoke(
                 dexPathList,
                 newLibDirs,
                 null,
                 suppressedExceptions
-            ) as Array<Any>
-            val nativeLibraryPathElements: Field =
-                ShareReflectUtil.findField(
-                    dexPathList,
-                    "nativeLibraryPathElements"
-                )
-            nativeLibraryPathElements[dexPathList] = elements
+            )
+            handles.nativeLibraryPathElements!![dexPathList] = elements
         }
     }
 
-    private object V14 {
-        fun install(classLoader: ClassLoader, folder: File) {
-            val pathListField: Field =
-                ShareReflectUtil.findField(
-                    classLoader,
-                    "pathList"
-                )
-            val dexPathList = pathListField[classLoader]
-            val nativeLibDirField: Field =
-                ShareReflectUtil.findField(
-                    dexPathList,
-                    "nativeLibraryDirectories"
-                )
-            val origNativeLibDirs = nativeLibDirField[dexPathList] as Array<File>
-            val newNativeLibDirList: MutableList<File> =
-                java.util.ArrayList(origNativeLibDirs.size + 1)
-            newNativeLibDirList.add(folder)
-            for (origNativeLibDir in origNativeLibDirs) {
-                if (folder != origNativeLibDir) {
-                    newNativeLibDirList.add(origNativeLibDir)
-                }
+    internal object V14 {
+        private val handlesCache = ConcurrentHashMap<Class<*>, PathListHandles>()
+
+        private fun handles(classLoader: ClassLoader): PathListHandles {
+            return handlesCache.getOrPut(classLoader.javaClass) {
+                val pathListField: Field = ShareReflectUtil.findField(classLoader, "pathList")
+                val dexPathList = pathListField[classLoader]
+                PathListHandles(pathListField, ShareReflectUtil.findField(dexPathList, "nativeLibraryDirectories"))
             }
-            nativeLibDirField[dexPathList] = newNativeLibDirList.toTypedArray()
+        }
+
+        fun install(classLoader: ClassLoader, folders: List<File>) {
+            val handles = handles(classLoader)
+            val dexPathList = handles.pathList[classLoader]
+            @Suppress("UNCHECKED_CAST")
+            val origNativeLibDirs = handles.nativeLibraryDirectories[dexPathList] as Array<File>
+            val newNativeLibDirList: MutableList<File> = ArrayList(origNativeLibDirs.size + folders.size)
+            newNativeLibDirList.addAll(folders)
+            origNativeLibDirs.filterTo(newNativeLibDirList) { it !in folders }
+            handles.nativeLibraryDirectories[dexPathList] = newNativeLibDirList.toTypedArray()
         }
     }
-}
\ No newline at end of file
+}
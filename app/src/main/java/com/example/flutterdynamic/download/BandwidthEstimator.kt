@@ -0,0 +1,189 @@
+package com.example.flutterdynamic.download
+
+import android.content.Context
+import android.net.ConnectivityManager
+import android.net.NetworkCapabilities
+import com.example.flutterdynamic.mode.PackageVariant
+import kotlin.math.sqrt
+
+/**
+ * 带宽和延迟估计
+ *
+ * 由实际传输样本驱动：带宽取最近样本按 sqrt(字节数) 加权的中位数，小样本和个别异常值影响有限；
+ * 延迟（从发起请求到收到响应头）取指数加权平均。还没有样本时使用系统报告的链路带宽作为先验值。
+ * 估计值用于计算下载超时，以及在配置提供的多个包变体中选择预计就绪最快的一个。
+ */
+class BandwidthEstimator {
+
+    private class Sample(val weight: Double, val bytesPerSecond: Double)
+
+    private val samples = ArrayDeque<Sample>()
+    private var totalWeight = 0.0
+    private var priorBytesPerSecond = DEFAULT_BYTES_PER_SECOND
+    private var latencyMs = -1.0
+    private var priorLatencyMs = DEFAULT_LATENCY_MS
+    private var transport = -1
+
+    /**
+     * 记录一次传输
+     * @param bytes 本次传输的字节数
+     * @param durationMs 传输耗时（不含建立连接）
+     * @param latencyMs 发起请求到收到响应头的耗时，未知时为-1
+     */
+    @Synchronized
+    fun addSample(bytes: Long, durationMs: Long, latencyMs: Long = -1) {
+        if (latencyMs >= 0) {
+            this.latencyMs = if (this.latencyMs < 0) latencyMs.toDouble()
+            else this.latencyMs + LATENCY_ALPHA * (latencyMs - this.latencyMs)
+        }
+        // 太小的传输主要受延迟影响，不计入带宽
+        if (bytes < MIN_SAMPLE_BYTES || durationMs <= 0) {
+            return
+        }
+        val sample = Sample(sqrt(bytes.toDouble()), bytes * 1000.0 / durationMs)
+        samples.addLast(sample)
+        totalWeight += sample.weight
+        // 只保留最近的样本
+        while (totalWeight - samples.first().weight >= MAX_TOTAL_WEIGHT) {
+            totalWeight -= samples.removeFirst().weight
+        }
+    }
+
+    /**
+     * 估计带宽（字节/秒）
+     */
+    @Synchronized
+    fun bandwidth(): Long {
+        if (samples.isEmpty()) {
+            return priorBytesPerSecond
+        }
+        val sorted = samples.sortedBy { it.bytesPerSecond }
+        var accumulated = 0.0
+        for (sample in sorted) {
+            accumulated += sample.weight
+            if (accumulated >= totalWeight / 2) {
+                return sample.bytesPerSecond.toLong().coerceAtLeast(1)
+            }
+        }
+        return sorted.last().bytesPerSecond.toLong().coerceAtLeast(1)
+    }
+
+    /**
+     * 估计延迟（毫秒）
+     */
+    @Synchronized
+    fun latency(): Long = if (latencyMs < 0) priorLatencyMs else latencyMs.toLong()
+
+    /**
+     * 按系统报告的链路带宽设置先验值；网络类型变化时丢弃旧样本
+     */
+    fun applyNetworkPrior(context: Context) {
+        val connectivityManager = context.getSystemService(Context.CONNECTIVITY_SERVICE) as? ConnectivityManager ?: return
+        val capabilities = connectivityManager.getNetworkCapabilities(connectivityManager.activeNetwork) ?: return
+        val currentTransport = when {
+            capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI) -> NetworkCapabilities.TRANSPORT_WIFI
+            capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET) -> NetworkCapabilities.TRANSPORT_ETHERNET
+            capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR) -> NetworkCapabilities.TRANSPORT_CELLULAR
+            else -> -1
+        }
+        // 链路带宽是理论值，实际吞吐按一半估计
+        val linkBytesPerSecond = capabilities.linkDownstreamBandwidthKbps * 1000L / 8 / 2
+        val latencyMs = if (currentTransport == NetworkCapabilities.TRANSPORT_CELLULAR) CELLULAR_LATENCY_MS else DEFAULT_LATENCY_MS
+        setPrior(currentTransport, linkBytesPerSecond, latencyMs)
+    }
+
+    @Synchronized
+    internal fun setPrior(transport: Int, bytesPerSecond: Long, latencyMs: Long) {
+        if (transport != this.transport) {
+            samples.clear()
+            totalWeight = 0.0
+            this.latencyMs = -1.0
+            this.transport = transport
+        }
+        if (bytesPerSecond > 0) {
+            priorBytesPerSecond = bytesPerSecond
+        }
+        priorLatencyMs = latencyMs
+    }
+
+    /**
+     * 预计传输耗时（毫秒）
+     */
+    fun expectedTransferMs(bytes: Long): Long = latency() + bytes * 1000 / bandwidth()
+
+    /**
+     * 连接超时：延迟的数倍，取整到秒以便复用同一个HTTP客户端
+     */
+    fun connectTimeoutMs(): Int = roundToSecond(latency() * 4 + 2000, MIN_CONNECT_TIMEOUT_MS, MAX_CONNECT_TIMEOUT_MS)
+
+    /**
+     * 读取超时（两次读取之间的最长等待）：至少能按估计带宽的1/4读完一个缓冲区
+     */
+    fun readTimeoutMs(): Int {
+        val stallMs = latency() * 4 + READ_CHUNK_BYTES * 1000 * 4 / bandwidth()
+        return roundToSecond(stallMs, MIN_READ_TIMEOUT_MS, MAX_READ_TIMEOUT_MS)
+    }
+
+    /**
+     * 整个文件的下载超时：预计耗时的3倍加上固定余量
+     */
+    fun transferTimeoutMs(bytes: Long): Long {
+        return (expectedTransferMs(bytes) * 3 + MIN_TRANSFER_TIMEOUT_MS).coerceAtMost(MAX_TRANSFER_TIMEOUT_MS)
+    }
+
+    /**
+     * 预计从开始下载到可以使用的耗时：下载、解压和MD5校验
+     */
+    fun expectedReadyMs(variant: PackageVariant): Long {
+        val unpackedSize = if (variant.unpackedSize > 0) variant.unpackedSize else variant.size
+        val decodeMs = when (variant.codecOrDefault()) {
+            PackageVariant.CODEC_DEFLATE -> unpackedSize * 1000 / INFLATE_BYTES_PER_SECOND
+            PackageVariant.CODEC_STORE -> unpackedSize * 1000 / COPY_BYTES_PER_SECOND
+            else -> 0
+        }
+        return expectedTransferMs(variant.size) + decodeMs + variant.size * 1000 / HASH_BYTES_PER_SECOND
+    }
+
+    /**
+     * 选择预计就绪最快的变体，不支持的编码忽略
+     */
+    fun selectVariant(variants: List<PackageVariant>): PackageVariant? {
+        return variants
+            .filter { it.codecOrDefault() in PackageVariant.SUPPORTED_CODECS && it.url.isNotEmpty() }
+            .minByOrNull { expectedReadyMs(it) }
+    }
+
+    private fun roundToSecond(value: Long, min: Int, max: Int): Int {
+        val rounded = (value + 999) / 1000 * 1000
+        return rounded.coerceIn(min.toLong(), max.toLong()).toInt()
+    }
+
+    companion object {
+        // 没有任何信息时按1MB/s、100ms估计
+        private const val DEFAULT_BYTES_PER_SECOND = 1024L * 1024
+        private const val DEFAULT_LATENCY_MS = 100L
+        private const val CELLULAR_LATENCY_MS = 300L
+        private const val LATENCY_ALPHA = 0.3
+        private const val MIN_SAMPLE_BYTES = 32L * 1024
+        // 约等于最近几个MB级样本
+        private const val MAX_TOTAL_WEIGHT = 8000.0
+        private const val READ_CHUNK_BYTES = 64L * 1024
+
+        private const val MIN_CONNECT_TIMEOUT_MS = 5_000
+        private const val MAX_CONNECT_TIMEOUT_MS = 20_000
+        private const val MIN_READ_TIMEOUT_MS = 10_000
+        private const val MAX_READ_TIMEOUT_MS = 60_000
+        private const val MIN_TRANSFER_TIMEOUT_MS = 15_000L
+        private const val MAX_TRANSFER_TIMEOUT_MS = 10 * 60_000L
+
+        // 设备端处理速度的保守估计
+        private const val INFLATE_BYTES_PER_SECOND = 40L * 1024 * 1024
+        private const val COPY_BYTES_PER_SECOND = 200L * 1024 * 1024
+        private const val HASH_BYTES_PER_SECOND = 300L * 1024 * 1024
+
+        @JvmStatic
+        val instance by lazy {
+            BandwidthEstimator()
+        }
+    }
+}
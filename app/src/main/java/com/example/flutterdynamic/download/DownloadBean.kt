@@ -29,6 +29,11 @@ data class DownloadConfig(var url: String, var path: String) {
      * 期望的文件大小，用于文件完整性校验
      */
     var expectedSize: Long = 0
+
+    /**
+     * 调度优先级
+     */
+    var priority: DownloadPriority = DownloadPriority.USER_BLOCKING
 }
 
 sealed class DownloadState {
@@ -39,4 +44,47 @@ sealed class DownloadState {
     object SUCCESS : DownloadState() //成功
     object CANCEL : DownloadState() //取消
     object FAIL : DownloadState() //失败
-}
\ No newline at end of file
+}
+/**
+ * 下载优先级，按声明顺序调度
+ */
+enum class DownloadPriority {
+    USER_BLOCKING, //用户正在等待（如打开Flutter页面）
+    PREFETCH, //预加载，稍后会用到
+    BACKGROUND //后台更新
+}
+
+/**
+ * 下载任务的状态快照
+ */
+data class DownloadTaskState(
+    val url: String,
+    val priority: DownloadPriority,
+    val state: DownloadState,
+    /**
+     * 已下载字节数
+     */
+    val downloadedBytes: Long,
+    /**
+     * 文件总大小，未知时为-1
+     */
+    val totalBytes: Long,
+    /**
+     * 本次传输的平均速率（字节/秒），尚未开始时为0
+     */
+    val bytesPerSecond: Long,
+    /**
+     * 合并到该传输上的请求数
+     */
+    val requests: Int
+)
+
+/**
+ * [DownloadManager.start] 返回的句柄
+ */
+fun interface DownloadHandle {
+    /**
+     * 取消本次请求；合并到同一传输上的其他请求不受影响，所有请求都取消后才中止传输
+     */
+    fun cancel()
+}
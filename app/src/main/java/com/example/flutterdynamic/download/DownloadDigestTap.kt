@@ -0,0 +1,114 @@
+package com.example.flutterdynamic.download
+
+import com.example.flutterdynamic.util.BufferPool
+import com.example.flutterdynamic.util.MD5Util
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.security.MessageDigest
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * 边下载边计算MD5
+ *
+ * 第三方Downloader自行写文件，无法替换写入流；这里在每次进度回调时，
+ * 于后台线程读取文件中新写入的部分（仍在页缓存中）更新摘要，下载完成时只需补读最后一小段。
+ * 下载过程中一旦超过期望大小立即判定失败，不必等到下载完成后再整体读一遍。
+ *
+ * 所有读取和摘要更新都在 [executor] 的单线程上顺序执行。
+ */
+internal class DownloadDigestTap(
+    private val file: File,
+    private val expectedMd5: String,
+    private val expectedSize: Long
+) {
+
+    private val digest = MessageDigest.getInstance("MD5")
+    private var hashedBytes = 0L
+    // Downloader重新从头写入等情况导致增量摘要不可信时，完成后改为整体计算
+    private var inconsistent = false
+
+    /**
+     * 检查服务器返回的长度或已下载长度是否超过期望大小
+     */
+    fun exceedsExpectedSize(length: Long): Boolean {
+        return expectedSize > 0 && length > expectedSize
+    }
+
+    /**
+     * 进度回调，在后台线程摘要新写入的数据
+     */
+    fun onProgress(downloaded: Long) {
+        executor.execute { update(downloaded) }
+    }
+
+    /**
+     * 下载完成后在后台线程补齐摘要并校验，回调中返回失败原因，成功时为null
+     */
+    fun finish(callback: (IOException?) -> Unit) {
+        executor.execute {
+            callback(verify())
+        }
+    }
+
+    private fun update(downloaded: Long) {
+        if (inconsistent) return
+        if (downloaded < hashedBytes) {
+            // 已下载长度回退，说明文件被重新写入
+            inconsistent = true
+            return
+        }
+        try {
+            // 只读取已落盘的部分
+            readInto(minOf(downloaded, file.length()))
+        } catch (e: IOException) {
+            inconsistent = true
+        }
+    }
+
+    private fun verify(): IOException? {
+        val length = file.length()
+        if (exceedsExpectedSize(length)) {
+            return IOException("文件大小超出: 期望=$expectedSize, 实际=$length")
+        }
+        if (expectedSize > 0 && length != expectedSize) {
+            return IOException("文件大小校验失败: 期望=$expectedSize, 实际=$length")
+        }
+        if (expectedMd5.isEmpty()) {
+            return null
+        }
+        val actualMd5 = try {
+            if (inconsistent || hashedBytes > length) {
+                MD5Util.getFileMD5(file)
+            } else {
+                readInto(length)
+                MD5Util.toHex(digest)
+            }
+        } catch (e: IOException) {
+            return e
+        }
+        return if (actualMd5 == expectedMd5) null else IOException("文件MD5校验失败: 期望=$expectedMd5, 实际=$actualMd5")
+    }
+
+    private fun readInto(end: Long) {
+        if (end <= hashedBytes) return
+        RandomAccessFile(file, "r").use { raf ->
+            raf.seek(hashedBytes)
+            BufferPool.use { buffer ->
+                while (hashedBytes < end) {
+                    val count = raf.read(buffer, 0, minOf(buffer.size.toLong(), end - hashedBytes).toInt())
+                    if (count == -1) break
+                    digest.update(buffer, 0, count)
+                    hashedBytes += count
+                }
+            }
+        }
+    }
+
+    companion object {
+        private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "download-digest").apply { isDaemon = true }
+        }
+    }
+}
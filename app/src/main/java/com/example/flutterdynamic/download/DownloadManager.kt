@@ -2,6 +2,7 @@ package com.example.flutterdynamic.download
 
 import android.content.Context
 import android.net.Uri
+import android.os.SystemClock
 import android.text.TextUtils
 import com.download.library.DownloadImpl
 import com.download.library.DownloadListenerAdapter
@@ -9,16 +10,74 @@ import com.download.library.DownloadTask
 import com.download.library.DownloadingListener.MainThread
 import com.download.library.Extra
 import java.io.File
-import java.lang.ref.WeakReference
+import java.io.IOException
+import java.util.PriorityQueue
+import java.util.concurrent.CancellationException
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
 
 
+/**
+ * 下载调度
+ *
+ * 请求按 [DownloadPriority] 排队，同时进行的传输不超过 [maxConcurrentDownloads]；
+ * URL和目标文件都相同的请求合并到同一个传输上，完成后一起回调，
+ * 同一URL下载到不同文件时排队依次进行（下载库按URL区分任务）。
+ */
 class DownloadManager private constructor() {
 
-    private val downloadStateMap = ConcurrentHashMap<String, DownloadState>()
-    private var mContext: WeakReference<Context>? = null
+    /**
+     * 一次实际传输及合并到它上面的请求
+     */
+    private class Task(
+        val key: String,
+        val context: Context,
+        val config: DownloadConfig,
+        var priority: DownloadPriority,
+        val sequence: Long
+    ) {
+        val listeners = CopyOnWriteArrayList<IDownloadListener>()
+        @Volatile var state: DownloadState = DownloadState.PEND
+        @Volatile var downloadedBytes = 0L
+        @Volatile var totalBytes = -1L
+        @Volatile var bytesPerSecond = 0L
+        // 第一次进度回调时的已下载字节和时间，续传时已有的数据不计入速率
+        var baseBytes = -1L
+        var baseTime = 0L
+        var lastProgressTime = 0L
+        // 提交给下载库到开始接收数据的耗时
+        var latencyMs = -1L
+        // 已完成、失败或取消，之后下载库的回调都忽略
+        @Volatile var finished = false
+
+        fun snapshot() = DownloadTaskState(
+            config.url, priority, state, downloadedBytes, totalBytes, bytesPerSecond, listeners.size
+        )
+    }
+
+    private val lock = Any()
+    // 未结束的任务
+    private val tasks = HashMap<String, Task>()
+    private val pending = PriorityQueue<Task>(compareBy<Task>({ it.priority.ordinal }, { it.sequence }))
+    // 正在传输的任务，按URL索引
+    private val running = HashMap<String, Task>()
+    private var sequence = 0L
+    // 每个URL最近一次的任务，用于查询状态
+    private val latestTasks = ConcurrentHashMap<String, Task>()
+    private val bandwidthEstimator = BandwidthEstimator.instance
+
+    /**
+     * 同时进行的传输数上限
+     */
+    var maxConcurrentDownloads = DEFAULT_MAX_CONCURRENT
+        set(value) {
+            field = value.coerceAtLeast(1)
+            schedule()
+        }
 
     companion object {
+        private const val DEFAULT_MAX_CONCURRENT = 3
+
         @JvmStatic
         val instance by lazy {
             DownloadManager()
@@ -27,8 +86,131 @@ class DownloadManager private constructor() {
 
     //开始
     @JvmOverloads
-    fun start(context: Context, config: DownloadConfig, listener: IDownloadListener? = null) {
-        mContext = WeakReference(context)
+    fun start(context: Context, config: DownloadConfig, listener: IDownloadListener? = null): DownloadHandle {
+        // 每个请求单独一个回调对象，取消时按对象移除
+        val request = listener ?: object : IDownloadListener {}
+        val key = config.url + "\n" + File(config.path, config.fileName.orEmpty()).path
+        var joined = false
+        val task = synchronized(lock) {
+            val existing = tasks[key]
+            if (existing != null) {
+                joined = true
+                existing.listeners.add(request)
+                if (config.priority < existing.priority) {
+                    // 提升优先级，尚在排队时重新入队
+                    val queued = pending.remove(existing)
+                    existing.priority = config.priority
+                    if (queued) pending.add(existing)
+                }
+                existing
+            } else {
+                Task(key, context.applicationContext ?: context, config, config.priority, sequence++).also {
+                    it.listeners.add(request)
+                    tasks[key] = it
+                    pending.add(it)
+                    latestTasks[config.url] = it
+                }
+            }
+        }
+        if (joined && task.state == DownloadState.DOWNLOADING) {
+            request.onStart(config.url, task.totalBytes)
+        }
+        schedule()
+        return DownloadHandle { detach(task, request) }
+    }
+
+    //取消该URL的所有请求
+    fun cancel(context: Context, url: String) {
+        val cancelled = synchronized(lock) {
+            tasks.values.filter { it.config.url == url }.onEach { finishLocked(it, DownloadState.CANCEL) }
+        }
+        DownloadImpl.getInstance(context).cancel(url)
+        cancelled.forEach { task ->
+            task.listeners.forEach { it.onFailed(url, CancellationException("下载已取消: $url")) }
+        }
+        schedule()
+    }
+
+    /**
+     * 查询某个URL最近一次传输的状态
+     */
+    fun getState(url: String): DownloadTaskState? = latestTasks[url]?.snapshot()
+
+    /**
+     * 所有URL最近一次传输的状态
+     */
+    fun getStates(): Map<String, DownloadTaskState> = latestTasks.mapValues { it.value.snapshot() }
+
+    /**
+     * 移除一个请求，没有剩余请求时中止传输
+     */
+    private fun detach(task: Task, request: IDownloadListener) {
+        val wasRunning = synchronized(lock) {
+            if (task.finished || !task.listeners.remove(request) || task.listeners.isNotEmpty()) {
+                return
+            }
+            finishLocked(task, DownloadState.CANCEL)
+        }
+        if (wasRunning) {
+            DownloadImpl.getInstance(task.context).cancel(task.config.url)
+        }
+        schedule()
+    }
+
+    /**
+     * 结束任务并释放传输名额，返回任务是否正在传输
+     */
+    private fun finishLocked(task: Task, state: DownloadState): Boolean {
+        task.finished = true
+        task.state = state
+        tasks.remove(task.key)
+        pending.remove(task)
+        if (running[task.config.url] !== task) {
+            return false
+        }
+        running.remove(task.config.url)
+        return true
+    }
+
+    /**
+     * 结束任务，已结束时返回false
+     */
+    private fun finish(task: Task, state: DownloadState): Boolean {
+        synchronized(lock) {
+            if (task.finished) {
+                return false
+            }
+            finishLocked(task, state)
+        }
+        schedule()
+        return true
+    }
+
+    /**
+     * 按优先级启动排队的任务，直到达到并发上限
+     */
+    private fun schedule() {
+        val ready = mutableListOf<Task>()
+        synchronized(lock) {
+            val blocked = mutableListOf<Task>()
+            while (running.size < maxConcurrentDownloads) {
+                val task = pending.poll() ?: break
+                if (running.containsKey(task.config.url)) {
+                    // 同一URL正在下载到其他文件，等它结束
+                    blocked.add(task)
+                    continue
+                }
+                running[task.config.url] = task
+                ready.add(task)
+            }
+            pending.addAll(blocked)
+        }
+        ready.forEach { transfer(it) }
+    }
+
+    private fun transfer(task: Task) {
+        val context = task.context
+        val config = task.config
         val resourceRequest = DownloadImpl.getInstance(context)
             .url(config.url)
             .setEnableIndicator(config.isShowNotification)
@@ -43,7 +225,22 @@ class DownloadManager private constructor() {
             resourceRequest.setIcon(config.notificationIcon ?: 0)
         }
 
+        // 超时按当前带宽和延迟估计，弱网下不会过早放弃，网络好时也不会长时间卡住
+        resourceRequest.setConnectTimeOut(bandwidthEstimator.connectTimeoutMs().toLong())
+            .setBlockMaxTime(bandwidthEstimator.readTimeoutMs().toLong())
+        if (config.expectedSize > 0) {
+            resourceRequest.setDownloadTimeOut(bandwidthEstimator.transferTimeoutMs(config.expectedSize))
+        }
+        val requestedAt = SystemClock.elapsedRealtime()
+
+        // 指定了文件名和校验信息时边下载边校验
+        val digestTap = if (!TextUtils.isEmpty(config.fileName) &&
+            (config.expectedMd5.isNotEmpty() || config.expectedSize > 0)) {
+            DownloadDigestTap(File(config.path, config.fileName!!), config.expectedMd5, config.expectedSize)
+        } else null
+
         resourceRequest.enqueue(object : DownloadListenerAdapter() {
+
             override fun onStart(
                 url: String?,
                 userAgent: String?,
@@ -53,33 +250,113 @@ class DownloadManager private constructor() {
                 extra: Extra?
             ) {
                 super.onStart(url, userAgent, contentDisposition, mimetype, contentLength, extra)
-                listener?.onStart(url, contentLength)
+                if (task.finished) {
+                    return
+                }
+                if (digestTap?.exceedsExpectedSize(contentLength) == true) {
+                    abort("文件大小超出: 期望=${config.expectedSize}, 服务器返回=$contentLength")
+                    return
+                }
+                task.totalBytes = contentLength
+                task.latencyMs = SystemClock.elapsedRealtime() - requestedAt
+                task.state = DownloadState.DOWNLOADING
+                task.listeners.forEach { it.onStart(url, contentLength) }
             }
 
             override fun onResult(throwable: Throwable?, path: Uri?, url: String?, extra: Extra?): Boolean {
-                if (throwable == null) {
-                    listener?.onSuccess(url, path)
+                if (task.finished) {
+                    return false
+                }
+                recordSample(task)
+                if (throwable != null) {
+                    if (finish(task, DownloadState.FAIL)) {
+                        task.listeners.forEach { it.onFailed(url, throwable) }
+                    }
+                } else if (digestTap == null) {
+                    if (finish(task, DownloadState.SUCCESS)) {
+                        task.listeners.forEach { it.onSuccess(url, path) }
+                    }
                 } else {
-                    listener?.onFailed(url, throwable)
+                    // 摘要已在下载过程中计算，这里只需补齐最后一段；校验完成前相同请求仍合并到该任务
+                    digestTap.finish { error ->
+                        if (error == null) {
+                            if (finish(task, DownloadState.SUCCESS)) {
+                                task.listeners.forEach { it.onSuccess(url, path) }
+                            }
+                        } else {
+                            File(config.path, config.fileName!!).delete()
+                            if (finish(task, DownloadState.FAIL)) {
+                                task.listeners.forEach { it.onFailed(url, error) }
+                            }
+                        }
+                    }
                 }
                 return false
             }
 
+            /**
+             * 数据超出期望大小时立即取消，不再继续下载
+             */
+            private fun abort(message: String) {
+                if (!finish(task, DownloadState.FAIL)) {
+                    return
+                }
+                DownloadImpl.getInstance(context).cancel(config.url)
+                File(config.path, config.fileName!!).delete()
+                task.listeners.forEach { it.onFailed(config.url, IOException(message)) }
+            }
+
             @MainThread
             override fun onProgress(url: String?, downloaded: Long, length: Long, usedTime: Long) {
                 super.onProgress(url, downloaded, length, usedTime)
-                listener?.onProgress(url, downloaded, length)
+                if (task.finished) {
+                    return
+                }
+                if (digestTap != null) {
+                    if (digestTap.exceedsExpectedSize(downloaded)) {
+                        abort("文件大小超出: 期望=${config.expectedSize}, 已下载=$downloaded")
+                        return
+                    }
+                    digestTap.onProgress(downloaded)
+                }
+                updateRate(task, downloaded, length)
+                task.listeners.forEach { it.onProgress(url, downloaded, length) }
             }
 
             override fun onDownloadStatusChanged(extra: Extra?, status: Int) {
                 super.onDownloadStatusChanged(extra, status)
-                if (extra != null) {
-                    downloadStateMap[extra.url] = statusCover(status)
+                if (!task.finished) {
+                    task.state = statusCover(status)
                 }
             }
         })
     }
 
+    private fun updateRate(task: Task, downloaded: Long, length: Long) {
+        val now = SystemClock.elapsedRealtime()
+        if (task.baseBytes < 0) {
+            task.baseBytes = downloaded
+            task.baseTime = now
+        }
+        task.lastProgressTime = now
+        val elapsed = now - task.baseTime
+        if (elapsed > 0) {
+            task.bytesPerSecond = (downloaded - task.baseBytes) * 1000 / elapsed
+        }
+        task.downloadedBytes = downloaded
+        if (length > 0) {
+            task.totalBytes = length
+        }
+    }
+
+    /**
+     * 传输结束时把实际吞吐和延迟交给带宽估计（失败的传输也反映了网络情况）
+     */
+    private fun recordSample(task: Task) {
+        val bytes = if (task.baseBytes < 0) 0 else task.downloadedBytes - task.baseBytes
+        bandwidthEstimator.addSample(bytes, task.lastProgressTime - task.baseTime, task.latencyMs)
+    }
+
     private fun statusCover(status: Int): DownloadState {
         return when (status) {
             DownloadTask.STATUS_PENDDING -> DownloadState.PEND
@@ -91,4 +368,4 @@ class DownloadManager private constructor() {
             else -> DownloadState.UNKNOW
         }
     }
-}
\ No newline at end of file
+}
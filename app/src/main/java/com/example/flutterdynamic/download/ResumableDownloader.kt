@@ -0,0 +1,303 @@
+package com.example.flutterdynamic.download
+
+import com.example.flutterdynamic.util.BufferPool
+import com.example.flutterdynamic.util.MD5Util
+import com.example.flutterdynamic.util.SharedHttpClient
+import com.google.gson.Gson
+import okhttp3.HttpUrl.Companion.toHttpUrlOrNull
+import okhttp3.Request
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.net.HttpURLConnection
+import java.security.MessageDigest
+import java.util.concurrent.CancellationException
+
+/**
+ * 断点续传下载器
+ *
+ * 下载过程中数据写入 `<目标文件>.part`，并定期把进度写入 `<目标文件>.part.journal`
+ * （URL、ETag/Last-Modified、已写入偏移、总长度、已写入部分的MD5检查点）。
+ * 进程被杀或网络中断后再次下载同一URL时，先按检查点核对本地已下载部分，
+ * 再通过 `Range` + `If-Range` 请求剩余数据；服务器资源变化时自动从头下载。
+ *
+ * 请求通过 [SharedHttpClient] 发起，重试和续传时复用已建立的连接。
+ * 不依赖Android API，可在本地单元测试中直接使用。
+ */
+class ResumableDownloader @JvmOverloads constructor(
+    connectTimeout: Int = SharedHttpClient.CONNECT_TIMEOUT_MS,
+    readTimeout: Int = SharedHttpClient.DOWNLOAD_READ_TIMEOUT_MS,
+    private val maxRetries: Int = 3,
+    private val retryDelayMs: Long = 500,
+    private val checkpointBytes: Long = 512 * 1024
+) {
+
+    private val client = SharedHttpClient.withTimeouts(connectTimeout, readTimeout)
+
+    /**
+     * 续传日志，保存在 `<目标文件>.part.journal`
+     */
+    data class Journal(
+        val url: String,
+        var etag: String? = null,
+        var lastModified: String? = null,
+        var offset: Long = 0,
+        var totalLength: Long = -1,
+        var md5: String = ""
+    )
+
+    /**
+     * 下载到目标文件，成功后返回目标文件
+     * @param expectedMd5 期望的MD5，为空时不校验
+     * @param isActive 返回false时中止下载（保留续传进度）
+     * @param onProgress 进度回调（已下载字节数，总字节数，未知时为-1）
+     * @throws IOException 重试次数用尽或校验失败
+     * @throws CancellationException 下载被中止
+     */
+    @JvmOverloads
+    fun download(
+        url: String,
+        target: File,
+        expectedMd5: String = "",
+        isActive: () -> Boolean = { true },
+        onProgress: ((Long, Long) -> Unit)? = null
+    ): File {
+        target.parentFile?.mkdirs()
+        val partFile = partFileOf(target)
+        val journalFile = journalFileOf(target)
+        val journal = restoreJournal(url, partFile, journalFile)
+        val digest = MessageDigest.getInstance("MD5")
+        rehashPart(partFile, journal, digest)
+
+        var attempt = 0
+        while (true) {
+            // 服务器返回无法续传的响应（transfer返回false）和IO异常一样计入重试次数
+            val failure = try {
+                if (transfer(journal, partFile, journalFile, digest, isActive, onProgress)) {
+                    break
+                }
+                null
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: IOException) {
+                e
+            }
+            if (attempt >= maxRetries) {
+                throw failure ?: IOException("重试${maxRetries}次后服务器仍未返回可续传的数据: $url")
+            }
+            attempt++
+            sleepBeforeRetry(retryDelayMs * attempt, url, isActive)
+        }
+
+        val actualMd5 = MD5Util.toHex(digest)
+        if (expectedMd5.isNotEmpty() && actualMd5 != expectedMd5) {
+            partFile.delete()
+            journalFile.delete()
+            throw IOException("文件MD5校验失败: 期望=$expectedMd5, 实际=$actualMd5")
+        }
+        target.delete()
+        if (!partFile.renameTo(target)) {
+            throw IOException("重命名下载文件失败: ${target.absolutePath}")
+        }
+        journalFile.delete()
+        return target
+    }
+
+    /**
+     * 重试前等待，等待期间也响应取消
+     */
+    private fun sleepBeforeRetry(delayMs: Long, url: String, isActive: () -> Boolean) {
+        val deadline = System.nanoTime() + delayMs * 1_000_000
+        while (true) {
+            if (!isActive()) {
+                throw CancellationException("下载已取消: $url")
+            }
+            val remainingMs = (deadline - System.nanoTime()) / 1_000_000
+            if (remainingMs <= 0) {
+                return
+            }
+            Thread.sleep(minOf(remainingMs, RETRY_POLL_INTERVAL_MS))
+        }
+    }
+
+    /**
+     * 执行一次请求，返回true表示下载完成
+     */
+    private fun transfer(
+        journal: Journal,
+        partFile: File,
+        journalFile: File,
+        digest: MessageDigest,
+        isActive: () -> Boolean,
+        onProgress: ((Long, Long) -> Unit)?
+    ): Boolean {
+        val url = journal.url.toHttpUrlOrNull() ?: throw IOException("无效的下载地址: ${journal.url}")
+        val request = Request.Builder()
+            .url(url)
+            // 断点续传时禁止透明gzip，保证偏移与服务器文件一致
+            .header("Accept-Encoding", "identity")
+        if (journal.offset > 0) {
+            request.header("Range", "bytes=${journal.offset}-")
+            val validator = journal.etag ?: journal.lastModified
+            if (validator != null) {
+                request.header("If-Range", validator)
+            }
+        }
+
+        client.newCall(request.build()).execute().use { response ->
+            when (val responseCode = response.code) {
+                HttpURLConnection.HTTP_PARTIAL -> {
+                    val range = parseContentRange(response.header("Content-Range"))
+                    if (range == null || range.first != journal.offset) {
+                        // 服务器返回的区间与本地进度不一致，从头下载
+                        reset(journal, partFile, journalFile, digest)
+                        return false
+                    }
+                    journal.totalLength = range.second
+                }
+                HttpURLConnection.HTTP_OK -> {
+                    // 首次下载，或If-Range校验失败（资源已变化）
+                    reset(journal, partFile, journalFile, digest)
+                    journal.etag = response.header("ETag")
+                    journal.lastModified = response.header("Last-Modified")
+                    journal.totalLength = response.header("Content-Length")?.toLongOrNull() ?: -1
+                }
+                HTTP_RANGE_NOT_SATISFIABLE -> {
+                    if (journal.totalLength >= 0 && journal.offset == journal.totalLength) {
+                        return true
+                    }
+                    reset(journal, partFile, journalFile, digest)
+                    return false
+                }
+                else -> throw IOException("下载失败，HTTP响应码: $responseCode")
+            }
+            saveJournal(journal, journalFile)
+
+            response.body!!.byteStream().use { input ->
+                FileOutputStream(partFile, true).use { output ->
+                    BufferPool.use { buffer ->
+                        var sinceCheckpoint = 0L
+                        var bytesRead: Int
+                        try {
+                            while (input.read(buffer).also { bytesRead = it } != -1) {
+                                if (!isActive()) {
+                                    throw CancellationException("下载已取消: ${journal.url}")
+                                }
+                                output.write(buffer, 0, bytesRead)
+                                digest.update(buffer, 0, bytesRead)
+                                journal.offset += bytesRead
+                                sinceCheckpoint += bytesRead
+                                if (sinceCheckpoint >= checkpointBytes) {
+                                    checkpoint(journal, journalFile, output, digest)
+                                    sinceCheckpoint = 0
+                                }
+                                onProgress?.invoke(journal.offset, journal.totalLength)
+                            }
+                        } finally {
+                            // 连接中断或取消时也保存已写入的进度
+                            checkpoint(journal, journalFile, output, digest)
+                        }
+                    }
+                }
+            }
+            if (journal.totalLength >= 0 && journal.offset != journal.totalLength) {
+                throw IOException("连接提前断开: ${journal.offset}/${journal.totalLength}")
+            }
+            return true
+        }
+    }
+
+    /**
+     * 读取续传日志，并把分片文件截断到日志记录的偏移
+     */
+    private fun restoreJournal(url: String, partFile: File, journalFile: File): Journal {
+        val saved = try {
+            if (journalFile.exists()) Gson().fromJson(journalFile.readText(), Journal::class.java) else null
+        } catch (e: Exception) {
+            null
+        }
+        if (saved == null || saved.url != url || !partFile.exists() || partFile.length() < saved.offset) {
+            partFile.delete()
+            journalFile.delete()
+            return Journal(url)
+        }
+        if (partFile.length() > saved.offset) {
+            RandomAccessFile(partFile, "rw").use { it.setLength(saved.offset) }
+        }
+        return saved
+    }
+
+    /**
+     * 重新计算已下载部分的MD5（JCA摘要状态无法序列化），与检查点不一致时从头下载
+     */
+    private fun rehashPart(partFile: File, journal: Journal, digest: MessageDigest) {
+        if (journal.offset == 0L) return
+        partFile.inputStream().use { input ->
+            BufferPool.use { buffer ->
+                var bytesRead: Int
+                while (input.read(buffer).also { bytesRead = it } != -1) {
+                    digest.update(buffer, 0, bytesRead)
+                }
+            }
+        }
+        val partMd5 = MD5Util.toHex(digest.clone() as MessageDigest)
+        if (partMd5 != journal.md5) {
+            digest.reset()
+            journal.offset = 0
+            journal.etag = null
+            journal.lastModified = null
+            partFile.delete()
+        }
+    }
+
+    private fun reset(journal: Journal, partFile: File, journalFile: File, digest: MessageDigest) {
+        digest.reset()
+        journal.offset = 0
+        journal.totalLength = -1
+        journal.md5 = ""
+        journal.etag = null
+        journal.lastModified = null
+        partFile.delete()
+        journalFile.delete()
+    }
+
+    /**
+     * 先把数据刷到磁盘再写日志，保证日志中的偏移不超过已落盘的数据
+     */
+    private fun checkpoint(journal: Journal, journalFile: File, output: FileOutputStream, digest: MessageDigest) {
+        output.flush()
+        output.fd.sync()
+        journal.md5 = MD5Util.toHex(digest.clone() as MessageDigest)
+        saveJournal(journal, journalFile)
+    }
+
+    private fun saveJournal(journal: Journal, journalFile: File) {
+        val tempFile = File(journalFile.parentFile, journalFile.name + ".tmp")
+        tempFile.writeText(Gson().toJson(journal))
+        if (!tempFile.renameTo(journalFile)) {
+            journalFile.delete()
+            tempFile.renameTo(journalFile)
+        }
+    }
+
+    companion object {
+        private const val HTTP_RANGE_NOT_SATISFIABLE = 416
+        private const val RETRY_POLL_INTERVAL_MS = 50L
+
+        fun partFileOf(target: File): File = File(target.parentFile, target.name + ".part")
+
+        fun journalFileOf(target: File): File = File(target.parentFile, target.name + ".part.journal")
+
+        /**
+         * 解析 `bytes start-end/total`，返回(start, total)，total未知时为-1
+         */
+        internal fun parseContentRange(value: String?): Pair<Long, Long>? {
+            if (value == null) return null
+            val match = Regex("""bytes\s+(\d+)-(\d+)/(\d+|\*)""").find(value) ?: return null
+            val start = match.groupValues[1].toLong()
+            val total = match.groupValues[3].toLongOrNull() ?: -1
+            return Pair(start, total)
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.example.flutterdynamic.download
+
+import com.example.flutterdynamic.util.BufferPool
+import com.example.flutterdynamic.util.MD5Util
+import com.example.flutterdynamic.util.SharedHttpClient
+import com.google.gson.Gson
+import okhttp3.HttpUrl.Companion.toHttpUrlOrNull
+import okhttp3.Request
+import okhttp3.Response
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.net.HttpURLConnection
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.security.MessageDigest
+import java.util.ArrayDeque
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ExecutorCompletionService
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 多连接分段下载器
+ *
+ * 大文件按固定大小切分为多个字节区间，每个区间使用独立连接下载，
+ * 通过 [FileChannel] 按位置写入预分配好的文件。
+ * 连接数从 [initialConnections] 开始，每完成一个分段测一次整体吞吐量，
+ * 吞吐量仍在明显上升时增加连接，直到 [maxConnections]。
+ *
+ * 数据写入 `<目标文件>.seg`，各分段的剩余区间和ETag定期写入 `<目标文件>.seg.journal`（先落盘数据再写日志）。
+ * 中断、取消或进程被杀后再次下载同一URL时，ETag和长度一致则只请求剩余区间，每个请求都带 `If-Range`；
+ * 资源中途变化时丢弃已下载的分段。
+ *
+ * 服务器不支持Range、文件较小或已有单连接续传进度时，交给 [ResumableDownloader] 单连接下载。
+ * 各分段连接来自 [SharedHttpClient] 的连接池，探测请求建立的连接会被第一个分段复用。
+ * 不依赖Android API，可在本地单元测试中直接使用。
+ */
+class SegmentedDownloader @JvmOverloads constructor(
+    private val fallback: ResumableDownloader = ResumableDownloader(),
+    connectTimeout: Int = SharedHttpClient.CONNECT_TIMEOUT_MS,
+    readTimeout: Int = SharedHttpClient.DOWNLOAD_READ_TIMEOUT_MS,
+    private val initialConnections: Int = 2,
+    private val maxConnections: Int = 6,
+    private val segmentSize: Long = 1024 * 1024,
+    private val minSegmentedSize: Long = 4L * 1024 * 1024,
+    private val maxSegmentRetries: Int = 3,
+    private val checkpointBytes: Long = 512 * 1024
+) {
+
+    private val client = SharedHttpClient.withTimeouts(connectTimeout, readTimeout)
+
+    /**
+     * 服务器探测结果
+     */
+    internal data class Probe(val length: Long, val acceptRanges: Boolean, val etag: String?)
+
+    /**
+     * 分段续传日志，保存在 `<目标文件>.seg.journal`；remaining为尚未下载的区间（含两端）
+     */
+    internal data class Journal(
+        val url: String,
+        val etag: String?,
+        val totalLength: Long,
+        var remaining: List<Range>? = null
+    )
+
+    internal data class Range(val start: Long, val end: Long)
+
+    private class Segment(@Volatile var start: Long, val end: Long, var retries: Int = 0)
+
+    /**
+     * 下载到目标文件，成功后返回目标文件
+     * @param expectedMd5 期望的MD5，为空时不校验
+     * @param isActive 返回false时中止下载
+     * @throws IOException 下载或校验失败
+     */
+    @JvmOverloads
+    fun download(
+        url: String,
+        target: File,
+        expectedMd5: String = "",
+        isActive: () -> Boolean = { true },
+        onProgress: ((Long, Long) -> Unit)? = null
+    ): File {
+        // 已有续传进度时继续单连接续传，避免浪费已下载的数据
+        if (ResumableDownloader.journalFileOf(target).exists()) {
+            return fallback.download(url, target, expectedMd5, isActive, onProgress)
+        }
+        val probe = try {
+            probe(url)
+        } catch (e: IOException) {
+            null
+        }
+        if (probe == null || !probe.acceptRanges || probe.length < minSegmentedSize) {
+            return fallback.download(url, target, expectedMd5, isActive, onProgress)
+        }
+        val partFile = partFileOf(target)
+        val journalFile = journalFileOf(target)
+        val journal = restoreJournal(url, probe, partFile, journalFile)
+        try {
+            downloadSegments(url, partFile, journal, journalFile, isActive, onProgress)
+        } catch (e: ResourceChangedException) {
+            // 资源中途变化或服务器不再支持Range，已下载的分段失效，退回单连接下载
+            discard(partFile, journalFile)
+            return fallback.download(url, target, expectedMd5, isActive, onProgress)
+        }
+        // 其他失败和取消直接抛出，保留分段进度供下次续传
+        val actualMd5 = fileMd5(partFile)
+        if (expectedMd5.isNotEmpty() && actualMd5 != expectedMd5) {
+            discard(partFile, journalFile)
+            throw IOException("文件MD5校验失败: 期望=$expectedMd5, 实际=$actualMd5")
+        }
+        target.delete()
+        if (!partFile.renameTo(target)) {
+            throw IOException("重命名下载文件失败: ${target.absolutePath}")
+        }
+        journalFile.delete()
+        return target
+    }
+
+    /**
+     * 请求第一个字节，确认文件长度和Range支持
+     */
+    internal fun probe(url: String): Probe {
+        return execute(url, "bytes=0-0", null).use { response ->
+            when (val responseCode = response.code) {
+                HttpURLConnection.HTTP_PARTIAL -> {
+                    val range = ResumableDownloader.parseContentRange(response.header("Content-Range"))
+                    Probe(range?.second ?: -1, range != null && range.second > 0, response.header("ETag"))
+                }
+                HttpURLConnection.HTTP_OK ->
+                    Probe(response.header("Content-Length")?.toLongOrNull() ?: -1, false, response.header("ETag"))
+                else -> throw IOException("探测失败，HTTP响应码: $responseCode")
+            }
+        }
+    }
+
+    /**
+     * 读取分段日志；与本次探测的ETag、长度不一致或分段文件不完整时从头下载
+     */
+    private fun restoreJournal(url: String, probe: Probe, partFile: File, journalFile: File): Journal {
+        val saved = readJournal(journalFile)
+        if (saved?.remaining != null && saved.url == url && probe.etag != null && saved.etag == probe.etag &&
+            saved.totalLength == probe.length && partFile.length() == probe.length) {
+            return saved
+        }
+        discard(partFile, journalFile)
+        val ranges = ArrayList<Range>()
+        var position = 0L
+        while (position < probe.length) {
+            val end = minOf(position + segmentSize, probe.length) - 1
+            ranges.add(Range(position, end))
+            position = end + 1
+        }
+        return Journal(url, probe.etag, probe.length, ranges)
+    }
+
+    private fun downloadSegments(
+        url: String,
+        partFile: File,
+        journal: Journal,
+        journalFile: File,
+        isActive: () -> Boolean,
+        onProgress: ((Long, Long) -> Unit)?
+    ) {
+        partFile.parentFile?.mkdirs()
+        val segments = journal.remaining.orEmpty().map { Segment(it.start, it.end) }
+        val pending = ArrayDeque(segments)
+        val totalLength = journal.totalLength
+        // 续传时已完成的部分直接计入进度
+        val downloaded = AtomicLong(totalLength - segments.sumOf { it.end - it.start + 1 })
+        val executor = Executors.newFixedThreadPool(maxConnections, workerThreadFactory)
+        val completion = ExecutorCompletionService<Segment>(executor)
+        try {
+            RandomAccessFile(partFile, "rw").use { raf ->
+                // 预分配文件，各连接按位置写入
+                raf.setLength(totalLength)
+                val channel = raf.channel
+                var connections = initialConnections.coerceIn(1, maxConnections)
+                var inFlight = 0
+                val startTime = System.nanoTime()
+                val resumedBytes = downloaded.get()
+                var lastThroughput = 0.0
+                var lastCheckpoint = resumedBytes
+                checkpoint(channel, journal, journalFile, segments)
+                onProgress?.invoke(resumedBytes, totalLength)
+
+                try {
+                    while (pending.isNotEmpty() || inFlight > 0) {
+                        if (!isActive()) {
+                            throw CancellationException("下载已取消: $url")
+                        }
+                        while (inFlight < connections && pending.isNotEmpty()) {
+                            val segment = pending.poll()!!
+                            completion.submit {
+                                fetchSegment(url, journal.etag, segment, channel, downloaded, isActive)
+                                segment
+                            }
+                            inFlight++
+                        }
+
+                        val future = completion.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)
+                        // 进度只在这里上报，各分段线程只累加字节数
+                        val current = downloaded.get()
+                        onProgress?.invoke(current, totalLength)
+                        if (current - lastCheckpoint >= checkpointBytes) {
+                            checkpoint(channel, journal, journalFile, segments)
+                            lastCheckpoint = current
+                        }
+                        if (future == null) continue
+                        inFlight--
+                        try {
+                            future.get()
+                        } catch (e: java.util.concurrent.ExecutionException) {
+                            val cause = e.cause
+                            if (cause is CancellationException) {
+                                throw cause
+                            }
+                            if (cause is SegmentException && cause.segment.retries < maxSegmentRetries) {
+                                // 分段中断：从已写入的位置重新请求剩余部分
+                                cause.segment.retries++
+                                pending.add(cause.segment)
+                                continue
+                            }
+                            throw (cause as? IOException) ?: IOException(cause)
+                        }
+
+                        // 整体吞吐量仍在上升时增加连接
+                        val elapsed = (System.nanoTime() - startTime) / 1e9
+                        val throughput = (downloaded.get() - resumedBytes) / elapsed
+                        if (connections < maxConnections && throughput > lastThroughput * THROUGHPUT_GAIN) {
+                            connections++
+                        }
+                        lastThroughput = throughput
+                    }
+                } finally {
+                    // 完成、失败或取消时都记录已落盘的进度
+                    try {
+                        checkpoint(channel, journal, journalFile, segments)
+                    } catch (e: IOException) {
+                        // 保留上一次检查点
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    /**
+     * 先记录各分段的位置再把数据刷到磁盘，保证日志中的进度不超过已落盘的数据
+     */
+    private fun checkpoint(channel: FileChannel, journal: Journal, journalFile: File, segments: List<Segment>) {
+        val remaining = segments.filter { it.start <= it.end }.map { Range(it.start, it.end) }
+        channel.force(false)
+        journal.remaining = remaining
+        val tempFile = File(journalFile.parentFile, journalFile.name + ".tmp")
+        tempFile.writeText(Gson().toJson(journal))
+        if (!tempFile.renameTo(journalFile)) {
+            journalFile.delete()
+            tempFile.renameTo(journalFile)
+        }
+    }
+
+    private fun discard(partFile: File, journalFile: File) {
+        partFile.delete()
+        journalFile.delete()
+    }
+
+    private fun fetchSegment(
+        url: String,
+        etag: String?,
+        segment: Segment,
+        channel: FileChannel,
+        downloaded: AtomicLong,
+        isActive: () -> Boolean
+    ) {
+        try {
+            execute(url, "bytes=${segment.start}-${segment.end}", etag).use { response ->
+                if (response.code == HttpURLConnection.HTTP_OK) {
+                    // If-Range校验失败（资源已变化）或服务器不再支持Range
+                    throw ResourceChangedException("分段下载失败，资源已变化: $url")
+                }
+                if (response.code != HttpURLConnection.HTTP_PARTIAL) {
+                    throw IOException("分段下载失败，HTTP响应码: ${response.code}")
+                }
+                val range = ResumableDownloader.parseContentRange(response.header("Content-Range"))
+                if (range == null || range.first != segment.start) {
+                    throw ResourceChangedException("分段区间不一致: ${response.header("Content-Range")}")
+                }
+                readSegment(url, response, segment, channel, downloaded, isActive)
+            }
+            if (segment.start <= segment.end) {
+                throw SegmentException(segment, IOException("连接提前断开: ${segment.start}-${segment.end}"))
+            }
+        } catch (e: SegmentException) {
+            throw e
+        } catch (e: ResourceChangedException) {
+            throw e
+        } catch (e: IOException) {
+            throw SegmentException(segment, e)
+        }
+    }
+
+    private fun readSegment(
+        url: String,
+        response: Response,
+        segment: Segment,
+        channel: FileChannel,
+        downloaded: AtomicLong,
+        isActive: () -> Boolean
+    ) {
+        response.body!!.byteStream().use { input ->
+            BufferPool.use { buffer ->
+                while (segment.start <= segment.end) {
+                    val bytesRead = input.read(buffer)
+                    if (bytesRead == -1) break
+                    if (!isActive()) {
+                        throw CancellationException("下载已取消: $url")
+                    }
+                    val length = minOf(bytesRead.toLong(), segment.end - segment.start + 1).toInt()
+                    val byteBuffer = ByteBuffer.wrap(buffer, 0, length)
+                    var position = segment.start
+                    while (byteBuffer.hasRemaining()) {
+                        position += channel.write(byteBuffer, position)
+                    }
+                    segment.start = position
+                    downloaded.addAndGet(length.toLong())
+                }
+            }
+        }
+    }
+
+    private fun execute(url: String, range: String, ifRange: String?): Response {
+        val httpUrl = url.toHttpUrlOrNull() ?: throw IOException("无效的下载地址: $url")
+        val request = Request.Builder()
+            .url(httpUrl)
+            .header("Accept-Encoding", "identity")
+            .header("Range", range)
+        if (ifRange != null) {
+            request.header("If-Range", ifRange)
+        }
+        return client.newCall(request.build()).execute()
+    }
+
+    private fun fileMd5(file: File): String {
+        val digest = MessageDigest.getInstance("MD5")
+        file.inputStream().use { input ->
+            BufferPool.use { buffer ->
+                var bytesRead: Int
+                while (input.read(buffer).also { bytesRead = it } != -1) {
+                    digest.update(buffer, 0, bytesRead)
+                }
+            }
+        }
+        return MD5Util.toHex(digest)
+    }
+
+    /**
+     * 分段中断，携带已推进的分段以便重新排队
+     */
+    private class SegmentException(val segment: Segment, cause: IOException) : IOException(cause.message, cause)
+
+    /**
+     * 资源已变化或服务器不再支持Range，已下载的分段不能继续使用
+     */
+    private class ResourceChangedException(message: String) : IOException(message)
+
+    companion object {
+        private const val POLL_INTERVAL_MS = 200L
+        // 新增连接后吞吐量至少提升10%才继续增加
+        private const val THROUGHPUT_GAIN = 1.1
+
+        fun partFileOf(target: File): File = File(target.parentFile, target.name + ".seg")
+
+        fun journalFileOf(target: File): File = File(target.parentFile, target.name + ".seg.journal")
+
+        /**
+         * 分段日志中已完成的字节数，没有续传进度时为0
+         */
+        fun resumedBytesOf(target: File): Long {
+            val journal = readJournal(journalFileOf(target)) ?: return 0
+            val remaining = journal.remaining ?: return 0
+            return (journal.totalLength - remaining.sumOf { it.end - it.start + 1 }).coerceAtLeast(0)
+        }
+
+        private fun readJournal(journalFile: File): Journal? {
+            return try {
+                if (journalFile.exists()) Gson().fromJson(journalFile.readText(), Journal::class.java) else null
+            } catch (e: Exception) {
+                null
+            }
+        }
+
+        private val threadIndex = AtomicInteger()
+        private val workerThreadFactory = ThreadFactory { runnable ->
+            Thread(runnable, "so-segment-${threadIndex.incrementAndGet()}").apply { isDaemon = true }
+        }
+    }
+}
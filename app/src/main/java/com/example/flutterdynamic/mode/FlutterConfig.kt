@@ -8,6 +8,7 @@ data class FlutterConfig(
     // SO版本信息
     val libflutterVersion: String? = null,
     val libappVersion: String? = null,
+    val flutterassetsVersion: String? = null,
     
     // 通用配置字段
     val minAppVersion: String = "1.0.0",
@@ -18,6 +19,10 @@ data class FlutterConfig(
     val arm64_v8a: AbiConfig? = null,
     val armeabi_v7a: AbiConfig? = null,
     
+    // 与架构无关的资源包配置（flutter_assets）
+    val universal: AbiConfig? = null,
+    val icuData: Boolean = false,
+    
     // 上传和下载URL
     val uploadUrl: String? = null,
     val downloadUrl: String? = null,
@@ -47,9 +52,39 @@ data class FlutterConfig(
 data class AbiConfig(
     val url: String,
     val md5: String,
-    val size: Long
+    val size: Long,
+    // 同一内容的其他可选包（如压缩率不同），客户端按网络情况选择，未配置时只使用上面的地址
+    val variants: List<PackageVariant>? = null
 )
 
+/**
+ * 包变体：内容相同，编码不同
+ */
+data class PackageVariant(
+    val url: String,
+    val md5: String,
+    val size: Long,
+    // 编码方式：raw（文件本身）、deflate（压缩包）、store（仅打包不压缩），未配置时为raw
+    // SO的deflate/store变体与服务器SO包格式相同（ZIP内含package_info.json）
+    val codec: String? = null,
+    // 解压后的大小，用于估计解压耗时
+    val unpackedSize: Long = 0
+) {
+    fun codecOrDefault(): String = codec ?: CODEC_RAW
+
+    /**
+     * 是否为需要解压的ZIP包
+     */
+    fun isArchive(): Boolean = codecOrDefault() == CODEC_DEFLATE || codecOrDefault() == CODEC_STORE
+
+    companion object {
+        const val CODEC_RAW = "raw"
+        const val CODEC_DEFLATE = "deflate"
+        const val CODEC_STORE = "store"
+        val SUPPORTED_CODECS = setOf(CODEC_RAW, CODEC_DEFLATE, CODEC_STORE)
+    }
+}
+
 /**
  * SO包信息
  */
@@ -60,4 +95,13 @@ data class SoPackageInfo(
     val url: String,
     val fileName: String,
     val abi: String
-)
\ No newline at end of file
+)
+
+/**
+ * 资源包信息
+ */
+data class AssetPackageInfo(
+    val version: String,
+    val size: Long,
+    val files: Map<String, String>
+)
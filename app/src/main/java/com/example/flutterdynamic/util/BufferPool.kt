@@ -0,0 +1,44 @@
+package com.example.flutterdynamic.util
+
+import java.util.ArrayDeque
+
+/**
+ * 下载与解压共用的缓冲区池，避免每次读写都分配新的大数组
+ */
+object BufferPool {
+
+    const val BUFFER_SIZE = 64 * 1024
+    private const val MAX_POOLED = 4
+
+    private val pool = ArrayDeque<ByteArray>(MAX_POOLED)
+
+    /**
+     * 获取缓冲区，池为空时新建
+     */
+    fun acquire(): ByteArray {
+        synchronized(pool) {
+            return pool.pollFirst() ?: ByteArray(BUFFER_SIZE)
+        }
+    }
+
+    /**
+     * 归还缓冲区，池满时直接丢弃
+     */
+    fun release(buffer: ByteArray) {
+        if (buffer.size != BUFFER_SIZE) return
+        synchronized(pool) {
+            if (pool.size < MAX_POOLED) {
+                pool.offerFirst(buffer)
+            }
+        }
+    }
+
+    inline fun <T> use(block: (ByteArray) -> T): T {
+        val buffer = acquire()
+        try {
+            return block(buffer)
+        } finally {
+            release(buffer)
+        }
+    }
+}
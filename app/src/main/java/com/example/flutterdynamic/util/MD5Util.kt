@@ -38,6 +38,13 @@ object MD5Util {
         }
     }
     
+    /**
+     * 输出摘要的十六进制字符串（边写边算的场景使用）
+     */
+    fun toHex(digest: MessageDigest): String {
+        return bytesToHex(digest.digest())
+    }
+    
     private fun bytesToHex(bytes: ByteArray): String {
         val hexChars = "0123456789abcdef"
         val result = StringBuilder(bytes.size * 2)
@@ -0,0 +1,78 @@
+package com.example.flutterdynamic.util
+
+/**
+ * 语义化版本号，按 SemVer 2.0.0 规则比较：
+ * 依次比较主、次、修订号（数值比较，1.10.0 > 1.9.0）；
+ * 带预发布标识的版本低于对应的正式版本，预发布标识逐段比较（纯数字按数值，且低于非数字标识）；
+ * 构建元数据（`+`之后）不参与比较。
+ */
+data class SemVer(
+    val major: Int,
+    val minor: Int,
+    val patch: Int,
+    val preRelease: List<String> = emptyList()
+) : Comparable<SemVer> {
+
+    override fun compareTo(other: SemVer): Int {
+        if (major != other.major) return major.compareTo(other.major)
+        if (minor != other.minor) return minor.compareTo(other.minor)
+        if (patch != other.patch) return patch.compareTo(other.patch)
+        // 正式版本高于预发布版本
+        if (preRelease.isEmpty() || other.preRelease.isEmpty()) {
+            return other.preRelease.size.compareTo(preRelease.size).coerceIn(-1, 1)
+        }
+        for (i in 0 until minOf(preRelease.size, other.preRelease.size)) {
+            val result = compareIdentifier(preRelease[i], other.preRelease[i])
+            if (result != 0) return result
+        }
+        return preRelease.size.compareTo(other.preRelease.size)
+    }
+
+    override fun toString(): String {
+        val core = "$major.$minor.$patch"
+        return if (preRelease.isEmpty()) core else core + "-" + preRelease.joinToString(".")
+    }
+
+    companion object {
+
+        val ZERO = SemVer(0, 0, 0)
+
+        private val PATTERN = Regex("""^[vV]?(\d+)(?:\.(\d+))?(?:\.(\d+))?(?:-([0-9A-Za-z.-]+))?(?:\+[0-9A-Za-z.-]+)?$""")
+
+        /**
+         * 解析版本号，允许省略次、修订号（1.2 视为 1.2.0）和前缀v，无法解析时返回null
+         */
+        fun parse(version: String?): SemVer? {
+            val match = PATTERN.matchEntire(version?.trim() ?: return null) ?: return null
+            return try {
+                val (major, minor, patch, preRelease) = match.destructured
+                SemVer(
+                    major.toInt(),
+                    minor.ifEmpty { "0" }.toInt(),
+                    patch.ifEmpty { "0" }.toInt(),
+                    if (preRelease.isEmpty()) emptyList() else preRelease.split('.')
+                )
+            } catch (e: NumberFormatException) {
+                // 数值超出Int范围
+                null
+            }
+        }
+
+        private fun compareIdentifier(a: String, b: String): Int {
+            val aNumeric = a.all { it.isDigit() }
+            val bNumeric = b.all { it.isDigit() }
+            return when {
+                aNumeric && bNumeric -> {
+                    // 数字标识按数值比较，避免超出Long范围先比较长度
+                    val aTrimmed = a.trimStart('0')
+                    val bTrimmed = b.trimStart('0')
+                    if (aTrimmed.length != bTrimmed.length) aTrimmed.length.compareTo(bTrimmed.length)
+                    else aTrimmed.compareTo(bTrimmed)
+                }
+                aNumeric -> -1
+                bNumeric -> 1
+                else -> a.compareTo(b)
+            }
+        }
+    }
+}
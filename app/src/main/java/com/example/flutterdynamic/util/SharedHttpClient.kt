@@ -0,0 +1,116 @@
+package com.example.flutterdynamic.util
+
+import okhttp3.Call
+import okhttp3.ConnectionPool
+import okhttp3.Dns
+import okhttp3.EventListener
+import okhttp3.Interceptor
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * 进程内共享的HTTP客户端，包列表请求、流式下载和断点续传/分段下载都通过它发起
+ *
+ * - 连接池保持长连接，同一服务器的后续请求不再重新握手；
+ * - HTTPS服务器支持时通过ALPN协商HTTP/2，多个请求复用同一连接；
+ * - 未指定Accept-Encoding的请求自动带gzip并透明解压（下载请求显式指定identity保证字节偏移准确）；
+ * - DNS结果缓存 [DNS_TTL_MS]，连接失败时立即失效；
+ * - 超时统一在这里定义，不同超时的客户端通过 [withTimeouts] 派生，共用同一个连接池和DNS缓存。
+ *
+ * 不依赖Android API，可在本地单元测试中直接使用。
+ */
+object SharedHttpClient {
+
+    const val USER_AGENT = "FlutterDynamic/1.0"
+    const val CONNECT_TIMEOUT_MS = 10_000
+    // 接口请求（包列表等）的读取超时
+    const val READ_TIMEOUT_MS = 30_000
+    // 大文件下载的读取超时
+    const val DOWNLOAD_READ_TIMEOUT_MS = 60_000
+
+    private const val DNS_TTL_MS = 60_000L
+    // 分段下载最多同时使用6个连接，空闲连接保留数量要能容纳它们
+    private const val MAX_IDLE_CONNECTIONS = 8
+    private const val KEEP_ALIVE_MINUTES = 5L
+
+    private val dns = CachingDns(Dns.SYSTEM, DNS_TTL_MS)
+
+    /**
+     * 接口请求使用的客户端（连接超时 [CONNECT_TIMEOUT_MS]，读取超时 [READ_TIMEOUT_MS]）
+     */
+    val client: OkHttpClient by lazy {
+        OkHttpClient.Builder()
+            .connectionPool(ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .protocols(listOf(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .dns(dns)
+            .eventListener(object : EventListener() {
+                override fun connectFailed(
+                    call: Call,
+                    inetSocketAddress: InetSocketAddress,
+                    proxy: Proxy,
+                    protocol: Protocol?,
+                    ioe: IOException
+                ) {
+                    // 缓存的地址可能已失效，下次请求重新解析
+                    dns.evict(call.request().url.host)
+                }
+            })
+            .addInterceptor(Interceptor { chain ->
+                val request = chain.request()
+                if (request.header("User-Agent") != null) {
+                    chain.proceed(request)
+                } else {
+                    chain.proceed(request.newBuilder().header("User-Agent", USER_AGENT).build())
+                }
+            })
+            .connectTimeout(CONNECT_TIMEOUT_MS.toLong(), TimeUnit.MILLISECONDS)
+            .readTimeout(READ_TIMEOUT_MS.toLong(), TimeUnit.MILLISECONDS)
+            .retryOnConnectionFailure(true)
+            .build()
+    }
+
+    private val derivedClients = ConcurrentHashMap<Pair<Int, Int>, OkHttpClient>()
+
+    /**
+     * 派生指定超时的客户端，与 [client] 共用连接池、DNS缓存和拦截器
+     */
+    fun withTimeouts(connectTimeoutMs: Int, readTimeoutMs: Int): OkHttpClient {
+        if (connectTimeoutMs == CONNECT_TIMEOUT_MS && readTimeoutMs == READ_TIMEOUT_MS) {
+            return client
+        }
+        return derivedClients.getOrPut(Pair(connectTimeoutMs, readTimeoutMs)) {
+            client.newBuilder()
+                .connectTimeout(connectTimeoutMs.toLong(), TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs.toLong(), TimeUnit.MILLISECONDS)
+                .build()
+        }
+    }
+
+    /**
+     * 带有效期的DNS缓存
+     */
+    internal class CachingDns(private val delegate: Dns, private val ttlMs: Long) : Dns {
+
+        private class Record(val addresses: List<InetAddress>, val expiresAt: Long)
+
+        private val records = ConcurrentHashMap<String, Record>()
+
+        override fun lookup(hostname: String): List<InetAddress> {
+            val now = System.currentTimeMillis()
+            records[hostname]?.takeIf { it.expiresAt > now }?.let { return it.addresses }
+            val addresses = delegate.lookup(hostname)
+            records[hostname] = Record(addresses, now + ttlMs)
+            return addresses
+        }
+
+        fun evict(hostname: String) {
+            records.remove(hostname)
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.flutterdynamic
+
+import com.example.flutterdynamic.LoadTrace.Phase
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * 加载阶段耗时和进度计算
+ */
+class LoadTraceTest {
+
+    @Test
+    fun progressFollowsPhaseWeightsAndBytes() {
+        val launch = LoadTrace.begin()
+        launch.close(launch.open(Phase.CATALOG, ""))
+        assertEquals(0.05f, launch.snapshot().progress, 0.001f)
+
+        val download = launch.open(Phase.DOWNLOAD, "libflutter.so")
+        launch.reportBytes("libflutter.so", 50, 100)
+        assertEquals(0.35f, launch.snapshot().progress, 0.001f)
+        launch.close(download)
+
+        // 解压、校验等被跳过的阶段视为已完成
+        launch.open(Phase.JNI_INIT, "")
+        assertEquals(0.82f, launch.snapshot().progress, 0.001f)
+
+        // 后面再执行靠前的阶段时进度不回退
+        launch.open(Phase.EXTRACT, "")
+        assertEquals(0.82f, launch.snapshot().progress, 0.001f)
+
+        val breakdown = launch.finish(true)
+        assertEquals(1f, breakdown.progress, 0f)
+        assertEquals(50L, breakdown.completedBytes)
+        assertEquals(100L, breakdown.totalBytes)
+        assertTrue(breakdown.finished && breakdown.success)
+        assertEquals(setOf(Phase.CATALOG, Phase.DOWNLOAD, Phase.EXTRACT, Phase.JNI_INIT), breakdown.phaseMs.keys)
+    }
+
+    @Test
+    fun concurrentSpansCountWallTimeOnce() {
+        val launch = LoadTrace.begin()
+        val tokens = listOf("a", "b", "c").map { launch.open(Phase.DOWNLOAD, it) }
+        Thread.sleep(200)
+        tokens.forEach { launch.close(it) }
+        val breakdown = launch.snapshot()
+        assertEquals(3, breakdown.spans.size)
+        val downloadMs = breakdown.phaseMs.getValue(Phase.DOWNLOAD)
+        assertTrue("$downloadMs", downloadMs in 200..breakdown.elapsedMs)
+        assertFalse(breakdown.finished)
+    }
+}
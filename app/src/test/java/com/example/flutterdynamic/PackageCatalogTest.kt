@@ -0,0 +1,102 @@
+package com.example.flutterdynamic
+
+import com.example.flutterdynamic.mode.SoPackageInfo
+import com.example.flutterdynamic.util.SemVer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.util.Random
+
+/**
+ * 包列表索引测试：随机生成大量历史包，索引查找结果应与逐个比较的结果一致
+ */
+class PackageCatalogTest {
+
+    private val libraries = listOf("libflutter", "libapp", "flutterassets")
+    private val abis = listOf("arm64-v8a", "armeabi-v7a", "x86_64", "universal")
+
+    private fun soPackage(library: String, abi: String, version: String) =
+        SoPackageInfo(version, "$library-$abi-$version", 0, "", "${library}_${abi}_$version.zip", abi)
+
+    private fun randomCatalog(random: Random, size: Int): List<SoPackageInfo> {
+        return List(size) {
+            val version = "${random.nextInt(5)}.${random.nextInt(15)}.${random.nextInt(15)}"
+            soPackage(libraries[random.nextInt(libraries.size)], abis[random.nextInt(abis.size)], version)
+        }
+    }
+
+    /**
+     * 参考实现：过滤后逐个比较
+     */
+    private fun bruteForceLatest(packages: List<SoPackageInfo>, library: String, deviceAbi: String, maxVersion: SemVer?) =
+        packages
+            .filter { it.fileName.startsWith(library) && (it.abi == deviceAbi || it.abi == "universal") }
+            .filter { maxVersion == null || SemVer.parse(it.version)!! <= maxVersion }
+            .maxByOrNull { SemVer.parse(it.version)!! }
+            ?.version
+
+    @Test
+    fun selectsHighestSemanticVersion() {
+        val catalog = PackageCatalog(listOf(
+            soPackage("libflutter", "arm64-v8a", "1.9.0"),
+            soPackage("libflutter", "arm64-v8a", "1.10.0"),
+            soPackage("libflutter", "universal", "1.2.0"),
+            soPackage("libflutter", "x86_64", "3.0.0")
+        ), libraries)
+
+        assertEquals("1.10.0", catalog.latest("libflutter", "arm64-v8a")?.version)
+        assertEquals("1.9.0", catalog.latest("libflutter", "arm64-v8a", SemVer.parse("1.9.5"))?.version)
+        assertEquals("1.2.0", catalog.latest("libflutter", "armeabi-v7a")?.version)
+        assertNull(catalog.latest("libapp", "arm64-v8a"))
+    }
+
+    @Test
+    fun inferAbiFromFileName() {
+        val withoutAbi = SoPackageInfo("1.0.0", "", 0, "", "libapp_x86_64_1.0.0.zip", "")
+        assertEquals("x86_64", PackageCatalog.abiOf(withoutAbi))
+        assertEquals("universal", PackageCatalog.abiOf(withoutAbi.copy(fileName = "libapp_1.0.0.zip")))
+    }
+
+    @Test
+    fun fileNameAbiWinsOverDeclaredAbi() {
+        // 服务器把所有包都声明为arm64-v8a，且版本都解析成1.0.0
+        val arm64 = SoPackageInfo("1.0.0", "a", 0, "", "libflutter_3.22.0-a-arm64-v8a.zip", "arm64-v8a")
+        val armv7 = SoPackageInfo("1.0.0", "b", 0, "", "libflutter_3.22.0-b-armeabi-v7a.zip", "arm64-v8a")
+        for (packages in listOf(listOf(armv7, arm64), listOf(arm64, armv7))) {
+            val catalog = PackageCatalog(packages, libraries)
+            assertEquals(armv7, catalog.latest("libflutter", "armeabi-v7a"))
+            assertEquals(arm64, catalog.latest("libflutter", "arm64-v8a"))
+        }
+    }
+
+    @Test
+    fun readsPackageListFromStream() {
+        val json = """[
+            {"fileName":"libflutter_arm64-v8a_1.0.0.zip","version":"1.0.0","size":12,"md5":"a","url":"/api/download/x","abi":"arm64-v8a","extra":{"k":[1,2]}},
+            {"fileName":"libapp_1.0.0.zip","version":"1.0.0","size":3,"md5":"b","url":"/u","abi":null}
+        ]"""
+        val packages = PackageCatalog.readPackageList(json.byteInputStream())
+
+        assertEquals(2, packages.size)
+        assertEquals(SoPackageInfo("1.0.0", "a", 12, "/api/download/x", "libflutter_arm64-v8a_1.0.0.zip", "arm64-v8a"), packages[0])
+        assertEquals("", packages[1].abi)
+    }
+
+    @Test
+    fun matchesBruteForceOnRandomCatalogs() {
+        val random = Random(7)
+        repeat(200) {
+            val packages = randomCatalog(random, 1 + random.nextInt(300))
+            val catalog = PackageCatalog(packages, libraries)
+            for (library in libraries) {
+                for (abi in abis) {
+                    val maxVersion = if (random.nextBoolean()) null else SemVer(random.nextInt(5), random.nextInt(15), 0)
+                    assertEquals(
+                        bruteForceLatest(packages, library, abi, maxVersion),
+                        catalog.latest(library, abi, maxVersion)?.version
+                    )
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.flutterdynamic
+
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+/**
+ * native库路径安装测试，用结构与DexPathList一致的假对象代替系统ClassLoader
+ */
+class TinkerLoadLibraryTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    @Suppress("unused")
+    private class FakeDexPathList(systemDirs: List<File>) {
+        private val nativeLibraryDirectories: MutableList<File> = ArrayList()
+        private val systemNativeLibraryDirectories: List<File> = systemDirs
+        private var nativeLibraryPathElements: Array<Any> = emptyArray()
+        var makePathElementsCalls = 0
+
+        val libraryDirs: List<File> get() = nativeLibraryDirectories
+        val elements: Array<Any> get() = nativeLibraryPathElements
+
+        // 与系统实现一样逐个检查目录
+        private fun makePathElements(files: List<File>): Array<Any> {
+            makePathElementsCalls++
+            return files.map { file -> file.isDirectory to file }.toTypedArray()
+        }
+    }
+
+    private class FakeClassLoader(systemDirs: List<File>) : ClassLoader() {
+        val pathList = FakeDexPathList(systemDirs)
+    }
+
+    private fun newClassLoader() = FakeClassLoader(listOf(File("/system/lib64"), File("/vendor/lib64")))
+
+    @Test
+    fun installsFoldersInOneRebuild() {
+        val flutterDir = tempFolder.newFolder("flutter")
+        val appDir = tempFolder.newFolder("app")
+        val classLoader = newClassLoader()
+
+        TinkerLoadLibrary.V25.install(classLoader, listOf(flutterDir, appDir))
+
+        assertEquals(1, classLoader.pathList.makePathElementsCalls)
+        assertEquals(listOf(flutterDir, appDir), classLoader.pathList.libraryDirs)
+        assertEquals(4, classLoader.pathList.elements.size)
+    }
+
+    @Test
+    fun reinstallMovesFoldersToFrontWithoutDuplicates() {
+        val oldDir = tempFolder.newFolder("old")
+        val flutterDir = tempFolder.newFolder("flutter")
+        val classLoader = newClassLoader()
+
+        TinkerLoadLibrary.V25.install(classLoader, listOf(flutterDir))
+        TinkerLoadLibrary.V25.install(classLoader, listOf(oldDir))
+        TinkerLoadLibrary.V25.install(classLoader, listOf(flutterDir))
+
+        assertEquals(listOf(flutterDir, oldDir), classLoader.pathList.libraryDirs)
+    }
+
+    /**
+     * 对比每次重新查找反射句柄、逐个目录重建与缓存句柄、批量重建的安装耗时
+     */
+    @Test
+    fun benchmarkInstallLatency() {
+        val folders = List(2) { tempFolder.newFolder("so$it") }
+        val iterations = 5000
+
+        fun measure(install: (FakeClassLoader) -> Unit): Pair<Long, Int> {
+            val classLoader = newClassLoader()
+            repeat(iterations / 10) { install(classLoader) }
+            classLoader.pathList.makePathElementsCalls = 0
+            val start = System.nanoTime()
+            repeat(iterations) { install(classLoader) }
+            return Pair((System.nanoTime() - start) / iterations, classLoader.pathList.makePathElementsCalls)
+        }
+
+        val (legacyNs, legacyRebuilds) = measure { classLoader ->
+            folders.forEach { legacyInstall(classLoader, it) }
+        }
+        val (batchedNs, batchedRebuilds) = measure { classLoader ->
+            TinkerLoadLibrary.V25.install(classLoader, folders)
+        }
+        println("TinkerLoadLibrary benchmark: folders=${folders.size}, " +
+            "legacy=${legacyNs}ns/install ($legacyRebuilds rebuilds), " +
+            "cached+batched=${batchedNs}ns/install ($batchedRebuilds rebuilds)")
+        assertEquals(iterations * folders.size, legacyRebuilds)
+        assertEquals(iterations, batchedRebuilds)
+    }
+
+    /**
+     * 优化前的实现：每次都遍历类层级查找字段和方法，每个目录单独重建
+     */
+    @Suppress("UNCHECKED_CAST")
+    private fun legacyInstall(classLoader: ClassLoader, folder: File) {
+        val dexPathList = ShareReflectUtil.findField(classLoader, "pathList")[classLoader]
+        val origLibDirs = ShareReflectUtil.findField(dexPathList, "nativeLibraryDirectories")[dexPathList] as MutableList<File>
+        origLibDirs.remove(folder)
+        origLibDirs.add(0, folder)
+        val origSystemLibDirs =
+            ShareReflectUtil.findField(dexPathList, "systemNativeLibraryDirectories")[dexPathList] as List<File>
+        val newLibDirs = ArrayList<File>(origLibDirs.size + origSystemLibDirs.size)
+        newLibDirs.addAll(origLibDirs)
+        newLibDirs.addAll(origSystemLibDirs)
+        val makeElements = ShareReflectUtil.findMethod(dexPathList, "makePathElements", MutableList::class.java)
+        ShareReflectUtil.findField(dexPathList, "nativeLibraryPathElements")[dexPathList] =
+            makeElements.invoke(dexPathList, newLibDirs)
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.flutterdynamic.download
+
+import com.example.flutterdynamic.mode.PackageVariant
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+/**
+ * 带宽估计、超时计算和包变体选择
+ */
+class BandwidthEstimatorTest {
+
+    private val mb = 1024L * 1024
+
+    private fun estimatorWith(bytesPerSecond: Long, latencyMs: Long): BandwidthEstimator {
+        return BandwidthEstimator().apply {
+            repeat(10) { addSample(2 * mb, 2 * mb * 1000 / bytesPerSecond, latencyMs) }
+        }
+    }
+
+    @Test
+    fun medianIgnoresOutliersAndSmallSamples() {
+        val estimator = BandwidthEstimator()
+        val random = Random(11)
+        repeat(50) {
+            // 约500KB/s，上下浮动10%
+            val rate = 500 * 1024 * (0.9 + random.nextDouble() * 0.2)
+            estimator.addSample(mb, (mb * 1000 / rate).toLong(), 200)
+        }
+        // 个别异常快的样本和极小的样本不应明显改变估计
+        estimator.addSample(mb, 10, 200)
+        estimator.addSample(1024, 1, 200)
+
+        val bandwidth = estimator.bandwidth()
+        assertTrue("$bandwidth", bandwidth in 450L * 1024..550L * 1024)
+        assertEquals(200, estimator.latency())
+    }
+
+    @Test
+    fun adaptsToNewNetworkConditions() {
+        val estimator = estimatorWith(10 * mb, 20)
+        repeat(40) { estimator.addSample(mb, 10_000, 800) }
+        assertTrue(estimator.bandwidth() < 200 * 1024)
+        assertTrue(estimator.latency() > 600)
+    }
+
+    @Test
+    fun networkChangeDiscardsSamples() {
+        val estimator = estimatorWith(10 * mb, 20)
+        estimator.setPrior(1, 64 * 1024, 300)
+        estimator.setPrior(0, 64 * 1024, 300)
+        assertEquals(64 * 1024L, estimator.bandwidth())
+        assertEquals(300, estimator.latency())
+    }
+
+    @Test
+    fun timeoutsGrowOnSlowLinksWithinBounds() {
+        val fast = estimatorWith(20 * mb, 20)
+        val slow = estimatorWith(16 * 1024, 1500)
+
+        assertTrue(fast.connectTimeoutMs() < slow.connectTimeoutMs())
+        assertTrue(fast.readTimeoutMs() <= slow.readTimeoutMs())
+        assertTrue(fast.transferTimeoutMs(20 * mb) < slow.transferTimeoutMs(20 * mb))
+        for (estimator in listOf(fast, slow)) {
+            assertEquals(0, estimator.connectTimeoutMs() % 1000)
+            assertTrue(estimator.connectTimeoutMs() in 5_000..20_000)
+            assertTrue(estimator.readTimeoutMs() in 10_000..60_000)
+            assertTrue(estimator.transferTimeoutMs(1024 * mb) <= 10 * 60_000L)
+        }
+    }
+
+    @Test
+    fun selectsVariantWithLowestExpectedReadyTime() {
+        val raw = PackageVariant("/raw", "a", 12 * mb, PackageVariant.CODEC_RAW)
+        val deflate = PackageVariant("/deflate", "b", 5 * mb, PackageVariant.CODEC_DEFLATE, 12 * mb)
+        val store = PackageVariant("/store", "c", 12 * mb + 1024, PackageVariant.CODEC_STORE, 12 * mb)
+        val delta = PackageVariant("/delta", "d", mb, "bsdiff")
+        val variants = listOf(raw, deflate, store, delta)
+
+        // 弱网下载占主导，选最小的压缩包；不支持的编码即使最小也不选
+        assertEquals(deflate, estimatorWith(100 * 1024, 300).selectVariant(variants))
+        // 网络很快时解压成为瓶颈，选不需要解压的原始文件
+        assertEquals(raw, estimatorWith(500 * mb, 5).selectVariant(variants))
+        assertNull(BandwidthEstimator().selectVariant(listOf(delta)))
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.flutterdynamic.download
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.security.MessageDigest
+import java.util.Collections
+import java.util.Random
+import java.util.concurrent.CancellationException
+
+/**
+ * 使用本地HTTP服务模拟断线，验证断点续传
+ */
+class ResumableDownloaderTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private lateinit var server: HttpServer
+    private var content = ByteArray(0)
+    private var etag = "\"v1\""
+
+    /** 前几次请求在发送该字节数后断开连接 */
+    @Volatile
+    private var dropAfterBytes = Int.MAX_VALUE
+    @Volatile
+    private var dropCount = 0
+
+    private val requestedRanges = Collections.synchronizedList(mutableListOf<String?>())
+
+    /** 总是返回与请求偏移不一致的Content-Range */
+    @Volatile
+    private var misalignedRange = false
+
+    @Before
+    fun setUp() {
+        content = ByteArray(300 * 1024).also { Random(7).nextBytes(it) }
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/file.zip") { exchange -> serve(exchange) }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    private val url get() = "http://127.0.0.1:${server.address.port}/file.zip"
+
+    private fun serve(exchange: HttpExchange) {
+        val range = exchange.requestHeaders.getFirst("Range")
+        val ifRange = exchange.requestHeaders.getFirst("If-Range")
+        requestedRanges.add(range)
+        exchange.responseHeaders.add("ETag", etag)
+        var start = 0
+        if (misalignedRange) {
+            start = 1
+            exchange.responseHeaders.add("Content-Range", "bytes $start-${content.size - 1}/${content.size}")
+            exchange.sendResponseHeaders(206, (content.size - start).toLong())
+        } else if (range != null && (ifRange == null || ifRange == etag)) {
+            start = range.removePrefix("bytes=").removeSuffix("-").toInt()
+            exchange.responseHeaders.add("Content-Range", "bytes $start-${content.size - 1}/${content.size}")
+            exchange.sendResponseHeaders(206, (content.size - start).toLong())
+        } else {
+            exchange.sendResponseHeaders(200, content.size.toLong())
+        }
+        val body = exchange.responseBody
+        try {
+            var length = content.size - start
+            if (dropCount > 0) {
+                dropCount--
+                length = minOf(length, dropAfterBytes)
+            }
+            body.write(content, start, length)
+            body.flush()
+        } finally {
+            try {
+                exchange.close()
+            } catch (e: IOException) {
+                // 模拟断线时未写完响应体
+            }
+        }
+    }
+
+    private fun md5(bytes: ByteArray): String {
+        return MessageDigest.getInstance("MD5").digest(bytes).joinToString("") { "%02x".format(it) }
+    }
+
+    private fun newDownloader(maxRetries: Int = 3) = ResumableDownloader(
+        connectTimeout = 5000,
+        readTimeout = 5000,
+        maxRetries = maxRetries,
+        retryDelayMs = 10,
+        checkpointBytes = 16 * 1024
+    )
+
+    @Test
+    fun resumesAfterDroppedConnections() {
+        dropAfterBytes = 100 * 1024
+        dropCount = 2
+        val target = tempFolder.newFolder().resolve("file.zip")
+
+        newDownloader().download(url, target, md5(content))
+
+        assertArrayEquals(content, target.readBytes())
+        assertEquals(3, requestedRanges.size)
+        assertEquals(null, requestedRanges[0])
+        assertTrue(requestedRanges.drop(1).all { it != null && it != "bytes=0-" })
+        assertFalse(ResumableDownloader.partFileOf(target).exists())
+        assertFalse(ResumableDownloader.journalFileOf(target).exists())
+    }
+
+    @Test
+    fun resumesFromJournalInNewDownloader() {
+        dropAfterBytes = 128 * 1024
+        dropCount = 1
+        val target = tempFolder.newFolder().resolve("file.zip")
+
+        // 模拟进程被杀：不重试，保留分片和日志
+        try {
+            newDownloader(maxRetries = 0).download(url, target)
+            fail("首次下载应当中断")
+        } catch (e: IOException) {
+            // expected
+        }
+        assertTrue(ResumableDownloader.journalFileOf(target).exists())
+        val partLength = ResumableDownloader.partFileOf(target).length()
+        assertTrue(partLength > 0)
+
+        newDownloader().download(url, target, md5(content))
+
+        assertArrayEquals(content, target.readBytes())
+        assertEquals("bytes=$partLength-", requestedRanges.last())
+    }
+
+    @Test
+    fun restartsWhenResourceChanged() {
+        dropAfterBytes = 64 * 1024
+        dropCount = 1
+        val target = tempFolder.newFolder().resolve("file.zip")
+        try {
+            newDownloader(maxRetries = 0).download(url, target)
+            fail("首次下载应当中断")
+        } catch (e: IOException) {
+            // expected
+        }
+
+        // 服务器内容变化，If-Range校验失败后返回完整文件
+        content = ByteArray(200 * 1024).also { Random(8).nextBytes(it) }
+        etag = "\"v2\""
+        newDownloader().download(url, target, md5(content))
+
+        assertArrayEquals(content, target.readBytes())
+    }
+
+    @Test
+    fun countsUnresumableResponsesAgainstRetries() {
+        misalignedRange = true
+        val target = tempFolder.newFolder().resolve("file.zip")
+        try {
+            newDownloader(maxRetries = 2).download(url, target)
+            fail("服务器一直返回错误的区间时应当失败")
+        } catch (e: IOException) {
+            // expected
+        }
+        assertEquals(3, requestedRanges.size)
+    }
+
+    @Test
+    fun cancelsWhileWaitingToRetry() {
+        misalignedRange = true
+        val target = tempFolder.newFolder().resolve("file.zip")
+        val downloader = ResumableDownloader(connectTimeout = 5000, readTimeout = 5000, maxRetries = 3, retryDelayMs = 60_000)
+        val deadline = System.nanoTime() + 200_000_000L
+        val start = System.nanoTime()
+        try {
+            downloader.download(url, target, isActive = { System.nanoTime() < deadline })
+            fail("等待重试时应当响应取消")
+        } catch (e: CancellationException) {
+            // expected
+        }
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 5_000)
+    }
+
+    @Test
+    fun rejectsMd5Mismatch() {
+        val target = tempFolder.newFolder().resolve("file.zip")
+        try {
+            newDownloader().download(url, target, "00000000000000000000000000000000")
+            fail("MD5不一致时应当失败")
+        } catch (e: IOException) {
+            // expected
+        }
+        assertFalse(target.exists())
+        assertFalse(ResumableDownloader.partFileOf(target).exists())
+        assertFalse(ResumableDownloader.journalFileOf(target).exists())
+    }
+
+    @Test
+    fun parsesContentRange() {
+        assertEquals(Pair(100L, 1000L), ResumableDownloader.parseContentRange("bytes 100-999/1000"))
+        assertEquals(Pair(0L, -1L), ResumableDownloader.parseContentRange("bytes 0-10/*"))
+        assertEquals(null, ResumableDownloader.parseContentRange(null))
+    }
+}
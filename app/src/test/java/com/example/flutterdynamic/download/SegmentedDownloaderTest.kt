@@ -0,0 +1,219 @@
+package com.example.flutterdynamic.download
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.security.MessageDigest
+import java.util.Random
+import java.util.concurrent.Executors
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 分段下载测试，使用按连接限速并带固定延迟的本地HTTP服务模拟高延迟移动网络
+ */
+class SegmentedDownloaderTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private lateinit var server: HttpServer
+    private val content = ByteArray(3 * 1024 * 1024).also { Random(11).nextBytes(it) }
+    private val etag = "\"seg\""
+
+    /** 每个连接的限速（字节/秒） */
+    private val bytesPerSecond = 1024 * 1024
+    private val latencyMs = 50L
+    private val maxConnections = 4
+
+    @Volatile
+    private var supportRanges = true
+    private val rangeRequests = AtomicInteger()
+    private val maxConcurrent = AtomicInteger()
+    private val concurrent = AtomicInteger()
+    private val servedBytes = AtomicLong()
+    private val requestedRanges = CopyOnWriteArrayList<IntRange>()
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.executor = Executors.newCachedThreadPool()
+        server.createContext("/engine.zip") { exchange -> serve(exchange) }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    private val url get() = "http://127.0.0.1:${server.address.port}/engine.zip"
+
+    private fun serve(exchange: HttpExchange) {
+        maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), ::maxOf)
+        try {
+            Thread.sleep(latencyMs)
+            val range = exchange.requestHeaders.getFirst("Range")
+            var start = 0
+            var end = content.size - 1
+            exchange.responseHeaders.add("ETag", etag)
+            if (supportRanges && range != null) {
+                rangeRequests.incrementAndGet()
+                val bounds = range.removePrefix("bytes=").split("-")
+                start = bounds[0].toInt()
+                if (bounds[1].isNotEmpty()) {
+                    end = minOf(bounds[1].toInt(), content.size - 1)
+                }
+                requestedRanges.add(start..end)
+                exchange.responseHeaders.add("Accept-Ranges", "bytes")
+                exchange.responseHeaders.add("Content-Range", "bytes $start-$end/${content.size}")
+                exchange.sendResponseHeaders(206, (end - start + 1).toLong())
+            } else {
+                exchange.sendResponseHeaders(200, content.size.toLong())
+            }
+            throttledWrite(exchange, start, end + 1)
+        } catch (e: IOException) {
+            // 客户端提前断开
+        } finally {
+            concurrent.decrementAndGet()
+            exchange.close()
+        }
+    }
+
+    private fun throttledWrite(exchange: HttpExchange, from: Int, to: Int) {
+        val chunk = 16 * 1024
+        val body = exchange.responseBody
+        var position = from
+        while (position < to) {
+            val length = minOf(chunk, to - position)
+            body.write(content, position, length)
+            servedBytes.addAndGet(length.toLong())
+            position += length
+            Thread.sleep(length * 1000L / bytesPerSecond)
+        }
+        body.flush()
+    }
+
+    private fun md5(bytes: ByteArray): String {
+        return MessageDigest.getInstance("MD5").digest(bytes).joinToString("") { "%02x".format(it) }
+    }
+
+    private fun newDownloader() = SegmentedDownloader(
+        fallback = ResumableDownloader(connectTimeout = 5000, readTimeout = 5000, retryDelayMs = 10),
+        connectTimeout = 5000,
+        readTimeout = 5000,
+        maxConnections = maxConnections,
+        segmentSize = 256 * 1024,
+        minSegmentedSize = 1024 * 1024
+    )
+
+    @Test
+    fun downloadsWithMultipleConnections() {
+        val target = tempFolder.newFolder().resolve("engine.zip")
+
+        newDownloader().download(url, target, md5(content))
+
+        assertArrayEquals(content, target.readBytes())
+        assertTrue("应当使用多个连接: ${maxConcurrent.get()}", maxConcurrent.get() > 1)
+    }
+
+    @Test
+    fun fallsBackWithoutRangeSupport() {
+        supportRanges = false
+        val target = tempFolder.newFolder().resolve("engine.zip")
+
+        newDownloader().download(url, target, md5(content))
+
+        assertArrayEquals(content, target.readBytes())
+        assertEquals(0, rangeRequests.get())
+    }
+
+    @Test
+    fun resumesOnlyMissingRangesAfterInterruption() {
+        val target = tempFolder.newFolder().resolve("engine.zip")
+        var reported = 0L
+        try {
+            // 下载过半后取消，模拟进程退出或网络中断
+            newDownloader().download(url, target, md5(content), { reported < content.size / 2 }) { downloaded, _ ->
+                reported = downloaded
+            }
+            throw AssertionError("下载应当被取消")
+        } catch (e: CancellationException) {
+            // 预期
+        }
+        assertTrue(SegmentedDownloader.journalFileOf(target).exists())
+        assertTrue(SegmentedDownloader.resumedBytesOf(target) >= reported)
+
+        // 等取消前的连接在服务端结束，避免计入第二次下载
+        val deadline = System.currentTimeMillis() + 5000
+        while (concurrent.get() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        servedBytes.set(0)
+        val progress = ArrayList<Long>()
+        newDownloader().download(url, target, md5(content)) { downloaded, _ -> progress.add(downloaded) }
+
+        assertArrayEquals(content, target.readBytes())
+        // 已完成的区间不再请求（探测请求另有1字节）
+        assertTrue("重新下载了 ${servedBytes.get()} 字节，取消前已完成 $reported 字节",
+            servedBytes.get() <= content.size - reported + 1)
+        assertTrue(progress.first() >= reported)
+        assertEquals(content.size.toLong(), progress.last())
+        assertEquals(progress.sorted(), progress)
+        assertTrue(!SegmentedDownloader.journalFileOf(target).exists())
+    }
+
+    @Test
+    fun segmentsCoverFileExactlyOnceWithinConnectionLimit() {
+        val target = tempFolder.newFolder().resolve("engine.zip")
+
+        newDownloader().download(url, target, md5(content))
+
+        // 除探测请求外，各分段请求的区间恰好覆盖整个文件
+        val ranges = requestedRanges.filter { it != 0..0 }.sortedBy { it.first }
+        var next = 0
+        for (range in ranges) {
+            assertEquals(next, range.first)
+            next = range.last + 1
+        }
+        assertEquals(content.size, next)
+        assertTrue("连接数超过上限: ${maxConcurrent.get()}", maxConcurrent.get() <= maxConnections)
+    }
+
+    /**
+     * 基准：与单连接断点续传对比耗时，只输出结果不做断言。
+     * 耗时受机器负载影响，默认跳过，需要时这样运行：
+     * SEGMENTED_BENCHMARK=true ./gradlew :app:testDebugUnitTest --tests '*SegmentedDownloaderTest.benchmarkAgainstSingleConnection'
+     */
+    @Test
+    fun benchmarkAgainstSingleConnection() {
+        assumeTrue("设置环境变量SEGMENTED_BENCHMARK=true后运行", System.getenv("SEGMENTED_BENCHMARK") == "true")
+        val folder = tempFolder.newFolder()
+        val expectedMd5 = md5(content)
+
+        var start = System.nanoTime()
+        ResumableDownloader(connectTimeout = 5000, readTimeout = 5000)
+            .download(url, folder.resolve("single.zip"), expectedMd5)
+        val singleMs = (System.nanoTime() - start) / 1_000_000
+
+        maxConcurrent.set(0)
+        start = System.nanoTime()
+        newDownloader().download(url, folder.resolve("segmented.zip"), expectedMd5)
+        val segmentedMs = (System.nanoTime() - start) / 1_000_000
+
+        println("SegmentedDownloader benchmark: size=${content.size} bytes, " +
+                "single=${singleMs}ms, segmented=${segmentedMs}ms, maxConnections=${maxConcurrent.get()}")
+    }
+}
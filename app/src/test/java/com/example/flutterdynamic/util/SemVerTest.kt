@@ -0,0 +1,94 @@
+package com.example.flutterdynamic.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+import kotlin.math.sign
+
+/**
+ * 版本号排序的性质测试：用固定种子随机生成大量版本号，验证比较满足全序关系并与参考实现一致
+ */
+class SemVerTest {
+
+    private val random = Random(2024)
+    private val iterations = 2000
+
+    private fun randomIdentifier(): String {
+        return if (random.nextBoolean()) {
+            random.nextInt(20).toString()
+        } else {
+            listOf("alpha", "beta", "rc", "x-y", "Alpha").let { it[random.nextInt(it.size)] }
+        }
+    }
+
+    private fun randomVersion(): SemVer {
+        // 取值范围较小，保证经常出现相等的分量
+        val preRelease = if (random.nextInt(3) == 0) List(1 + random.nextInt(3)) { randomIdentifier() } else emptyList()
+        return SemVer(random.nextInt(12), random.nextInt(12), random.nextInt(12), preRelease)
+    }
+
+    @Test
+    fun fixesDigitConcatenationOrdering() {
+        assertTrue(SemVer.parse("1.10.0")!! > SemVer.parse("1.9.0")!!)
+        assertTrue(SemVer.parse("2.0.0")!! > SemVer.parse("1.10.0")!!)
+        assertTrue(SemVer.parse("1.0.0-rc.1")!! < SemVer.parse("1.0.0")!!)
+        assertTrue(SemVer.parse("1.0.0-alpha")!! < SemVer.parse("1.0.0-alpha.1")!!)
+        assertTrue(SemVer.parse("1.0.0-alpha.2")!! < SemVer.parse("1.0.0-alpha.10")!!)
+        assertTrue(SemVer.parse("1.0.0-2")!! < SemVer.parse("1.0.0-alpha")!!)
+        assertEquals(0, SemVer.parse("1.2")!!.compareTo(SemVer.parse("v1.2.0+build.5")!!))
+        assertNull(SemVer.parse("1.x"))
+        assertNull(SemVer.parse(""))
+    }
+
+    @Test
+    fun parseRoundTripsToString() {
+        repeat(iterations) {
+            val version = randomVersion()
+            assertEquals(version, SemVer.parse(version.toString()))
+        }
+    }
+
+    @Test
+    fun comparisonIsAntisymmetricAndReflexive() {
+        repeat(iterations) {
+            val a = randomVersion()
+            val b = randomVersion()
+            assertEquals(0, a.compareTo(a))
+            assertEquals(a.compareTo(b).sign, -b.compareTo(a).sign)
+        }
+    }
+
+    @Test
+    fun comparisonIsTransitive() {
+        repeat(iterations) {
+            val (a, b, c) = List(3) { randomVersion() }.sorted()
+            assertTrue(a <= b && b <= c)
+            assertTrue("$a <= $c", a <= c)
+        }
+    }
+
+    @Test
+    fun releaseVersionsOrderLikeNumericTuples() {
+        repeat(iterations) {
+            val a = randomVersion().copy(preRelease = emptyList())
+            val b = randomVersion().copy(preRelease = emptyList())
+            val expected = compareValuesBy(a, b, { it.major }, { it.minor }, { it.patch })
+            assertEquals("$a vs $b", expected.sign, a.compareTo(b).sign)
+        }
+    }
+
+    @Test
+    fun preReleaseIsLowerThanItsRelease() {
+        repeat(iterations) {
+            val version = randomVersion()
+            val release = version.copy(preRelease = emptyList())
+            if (version.preRelease.isNotEmpty()) {
+                assertTrue("$version < $release", version < release)
+            }
+            // 修订号加一后一定更高，无论是否为预发布
+            assertTrue(release < version.copy(patch = version.patch + 1))
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.flutterplugin;
+
+import com.android.build.gradle.api.ApplicationVariant;
+import com.example.flutterplugin.storage.SoStorage;
+import com.example.flutterplugin.storage.SoStorageFactory;
+import com.example.flutterplugin.util.FileUtil;
+import com.example.flutterplugin.util.LogUtil;
+import com.example.flutterplugin.util.MD5Util;
+import com.example.flutterplugin.util.SizeUtil;
+import com.example.flutterplugin.util.SoSizeTracker;
+import com.example.flutterplugin.util.ZipUtil;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 动态下发Flutter资源任务
+ * 将合并后的flutter_assets和icudtl.dat打成内容寻址的资源包，发布后从APK中移除
+ */
+public class AssetsDynamicTask extends DefaultTask {
+
+    public static final String ASSETS_NAME = "flutterassets";
+    public static final String CONFIG_FILE_NAME = "flutterassets.json";
+    public static final String ASSETS_ABI = "universal";
+
+    private static final String FLUTTER_ASSETS_DIR = "flutter_assets";
+    private static final String ICU_DATA_FILE = "icudtl.dat";
+
+    @Internal
+    public ApplicationVariant variant;
+
+    @Input
+    public String mergeAssetsOutputPath;
+
+    @Internal
+    public SoConfig soConfig;
+
+    @OutputFile
+    public File sizeRecordFile;
+
+    public ApplicationVariant getVariant() {
+        return variant;
+    }
+
+    public String getMergeAssetsOutputPath() {
+        return mergeAssetsOutputPath;
+    }
+
+    public SoConfig getSoConfig() {
+        return soConfig;
+    }
+
+    public File getSizeRecordFile() {
+        return sizeRecordFile;
+    }
+
+    public AssetsDynamicTask() {
+        setGroup("flutterOpt");
+        // 合并产物每次都会重新生成，声明了体积记录输出后也不能被判定为UP-TO-DATE
+        getOutputs().upToDateWhen(task -> false);
+    }
+
+    @TaskAction
+    public void optimizeAssets() {
+        SoSizeTracker sizeTracker = new SoSizeTracker(variant.getName());
+        try {
+            processAssets(sizeTracker);
+        } finally {
+            SoDynamicTask.writeSizeRecord(sizeTracker, sizeRecordFile);
+        }
+    }
+
+    private void processAssets(SoSizeTracker sizeTracker) {
+        LogUtil.log("开始处理Flutter资源，配置信息: " + soConfig);
+
+        File assetsRoot = findAssetsRoot();
+        if (assetsRoot == null) {
+            LogUtil.log("未找到flutter_assets目录，跳过处理");
+            return;
+        }
+
+        File flutterAssetsDir = new File(assetsRoot, FLUTTER_ASSETS_DIR);
+        List<File> files = new ArrayList<>();
+        collectFiles(flutterAssetsDir, files);
+        File icuDataFile = new File(assetsRoot, ICU_DATA_FILE);
+        boolean hasIcuData = icuDataFile.isFile();
+        if (hasIcuData) {
+            files.add(icuDataFile);
+        }
+        if (files.isEmpty()) {
+            LogUtil.log("flutter_assets为空，跳过处理");
+            return;
+        }
+
+        String version = SoDynamicTask.findAppSOVersion(getProject(), variant.getName()).split("-")[0];
+        File tempZip = new File(getProject().getBuildDir(), "temp_so_packages/" + ASSETS_NAME + "_" + version + ".zip");
+        if (ZipUtil.createAssetPackage(assetsRoot, files, version, tempZip,
+                soConfig.getMinVersion(), soConfig.getMaxVersion()) == null) {
+            LogUtil.log("创建Flutter资源包失败，保留原始资源");
+            return;
+        }
+
+        // 资源包是确定性的，ZIP的MD5即内容地址
+        String md5 = MD5Util.getFileMD5(tempZip);
+        File zipFile = new File(tempZip.getParentFile(), ASSETS_NAME + "_" + version + "-" + md5 + "-" + ASSETS_ABI + ".zip");
+        if (!tempZip.renameTo(zipFile)) {
+            zipFile = tempZip;
+        }
+        long compressedSize = zipFile.length();
+        long uncompressedSize = 0;
+        for (File file : files) {
+            uncompressedSize += file.length();
+        }
+        LogUtil.log("Flutter资源包大小: " + SizeUtil.format(compressedSize) + ", 压缩前: " + SizeUtil.format(uncompressedSize));
+        sizeTracker.record(ASSETS_NAME, ASSETS_ABI, compressedSize, uncompressedSize);
+        if (soConfig.getMaxCompressedSize() > 0 && compressedSize > soConfig.getMaxCompressedSize()) {
+            zipFile.delete();
+            throw new GradleException(ASSETS_NAME + " 压缩包大小 " + SizeUtil.format(compressedSize)
+                    + " 超出预算 " + SizeUtil.format(soConfig.getMaxCompressedSize()));
+        }
+
+        SoStorage storage = SoStorageFactory.create(getProject(), soConfig);
+        String url = storage.find(ASSETS_NAME, ASSETS_ABI, md5);
+        if (url == null || url.isEmpty()) {
+            url = storage.publish(zipFile, ASSETS_NAME, ASSETS_ABI, md5);
+        } else {
+            LogUtil.log("Flutter资源包已存在于存储后端，无需重新上传");
+        }
+        zipFile.delete();
+        if (url == null) {
+            LogUtil.log("Flutter资源包发布失败，保留原始资源");
+            return;
+        }
+        LogUtil.log("Flutter资源包发布成功: " + url);
+
+        Map<String, Object> archInfo = new HashMap<>();
+        archInfo.put("url", url);
+        archInfo.put("md5", md5);
+        archInfo.put("size", compressedSize);
+        Map<String, Object> configMap = new HashMap<>();
+        configMap.put(ASSETS_NAME + "Version", version);
+        configMap.put(ASSETS_ABI, archInfo);
+        configMap.put("icuData", hasIcuData);
+        configMap.put("minAppVersion", soConfig.getMinVersion());
+        configMap.put("maxAppVersion", soConfig.getMaxVersion());
+        String jsonContent = new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson(configMap);
+
+        try {
+            FileUtil.writeStringToFile(new File(getProject().getProjectDir(), "src/main/assets/" + CONFIG_FILE_NAME), jsonContent);
+            // 合并资源已经生成，同时写入本次构建的产物
+            FileUtil.writeStringToFile(new File(assetsRoot, CONFIG_FILE_NAME), jsonContent);
+            LogUtil.log("资源配置写入成功: " + jsonContent);
+        } catch (IOException e) {
+            LogUtil.log("资源配置写入失败，保留原始资源: " + e.getMessage());
+            return;
+        }
+
+        // 从APK中移除资源
+        boolean deleteResult = FileUtil.deleteRecursively(flutterAssetsDir);
+        if (hasIcuData) {
+            deleteResult &= icuDataFile.delete();
+        }
+        LogUtil.log("从APK中删除flutter_assets" + (hasIcuData ? "和icudtl.dat" : "") + "结果= " + deleteResult);
+    }
+
+    private File findAssetsRoot() {
+        for (String path : mergeAssetsOutputPath.split(File.pathSeparator)) {
+            File root = new File(path);
+            if (new File(root, FLUTTER_ASSETS_DIR).isDirectory()) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    private static void collectFiles(File dir, List<File> result) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectFiles(child, result);
+            } else {
+                result.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.flutterplugin;
+
+import com.example.flutterplugin.util.LogUtil;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * AAB模块包处理任务
+ * 在build<Variant>PreBundle生成模块包（base.zip）后，移除已动态下发的SO和资源，
+ * 并写入运行时配置文件，保证bundletool生成的base及各架构config split都不再包含这些文件
+ */
+public class BundleSoStripTask extends DefaultTask {
+
+    private static final String FLUTTER_ASSETS_PREFIX = "assets/flutter_assets/";
+    private static final String ICU_DATA_ENTRY = "assets/icudtl.dat";
+    private static final String[] CONFIG_FILES = {"flutterso.json", "appso.json", AssetsDynamicTask.CONFIG_FILE_NAME};
+
+    @Input
+    public String moduleBundleOutputPath;
+
+    @Input
+    public String mergeNativeLibsOutputPath;
+
+    @Input
+    public String mergeAssetsOutputPath = "";
+
+    @Internal
+    public List<String> soNames = new ArrayList<>();
+
+    public String getModuleBundleOutputPath() {
+        return moduleBundleOutputPath;
+    }
+
+    public String getMergeNativeLibsOutputPath() {
+        return mergeNativeLibsOutputPath;
+    }
+
+    public String getMergeAssetsOutputPath() {
+        return mergeAssetsOutputPath;
+    }
+
+    public List<String> getSoNames() {
+        return soNames;
+    }
+
+    public BundleSoStripTask() {
+        setGroup("flutterOpt");
+    }
+
+    @TaskAction
+    public void stripModuleBundle() throws IOException {
+        // 只移除已经成功下发（已从合并产物中删除）的SO，上传失败时保留
+        List<String> stripSoNames = new ArrayList<>();
+        for (String soName : soNames) {
+            if (!containsFile(mergeNativeLibsOutputPath, soName + ".so")) {
+                stripSoNames.add(soName + ".so");
+            }
+        }
+        boolean stripAssets = isAssetsStripped();
+        List<File> configFiles = getConfigFiles();
+
+        List<File> moduleZips = new ArrayList<>();
+        for (String path : moduleBundleOutputPath.split(File.pathSeparator)) {
+            collectZips(new File(path), moduleZips);
+        }
+        if (moduleZips.isEmpty()) {
+            LogUtil.log("未找到AAB模块包，跳过处理: " + moduleBundleOutputPath);
+            return;
+        }
+
+        for (File moduleZip : moduleZips) {
+            int removed = rewrite(moduleZip, stripSoNames, stripAssets, configFiles);
+            LogUtil.log("AAB模块包处理完成: " + moduleZip.getName() + ", 移除 " + removed + " 个条目, 写入配置 " + configFiles.size() + " 个");
+        }
+    }
+
+    private int rewrite(File moduleZip, List<String> stripSoNames, boolean stripAssets, List<File> configFiles) throws IOException {
+        File temp = new File(moduleZip.getParentFile(), moduleZip.getName() + ".tmp");
+        int removed = 0;
+        byte[] buffer = new byte[8192];
+        try (ZipFile zip = new ZipFile(moduleZip);
+             ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(temp))) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (shouldStrip(name, stripSoNames, stripAssets) || isConfigEntry(name, configFiles)) {
+                    if (!isConfigEntry(name, configFiles)) {
+                        LogUtil.log("从AAB模块包中移除: " + name);
+                        removed++;
+                    }
+                    continue;
+                }
+                // 保留原条目的压缩方式，未压缩的SO需要保持STORED以便页对齐加载
+                ZipEntry newEntry = new ZipEntry(name);
+                newEntry.setTime(entry.getTime());
+                if (entry.getMethod() == ZipEntry.STORED) {
+                    newEntry.setMethod(ZipEntry.STORED);
+                    newEntry.setSize(entry.getSize());
+                    newEntry.setCompressedSize(entry.getSize());
+                    newEntry.setCrc(entry.getCrc());
+                }
+                zipOut.putNextEntry(newEntry);
+                try (InputStream in = zip.getInputStream(entry)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        zipOut.write(buffer, 0, read);
+                    }
+                }
+                zipOut.closeEntry();
+            }
+            for (File config : configFiles) {
+                zipOut.putNextEntry(new ZipEntry("assets/" + config.getName()));
+                try (InputStream in = new FileInputStream(config)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        zipOut.write(buffer, 0, read);
+                    }
+                }
+                zipOut.closeEntry();
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), moduleZip.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return removed;
+    }
+
+    /**
+     * 资源包发布成功时，合并资源中的flutter_assets已被删除并写入了资源配置
+     */
+    boolean isAssetsStripped() {
+        if (mergeAssetsOutputPath.isEmpty()) {
+            return false;
+        }
+        for (String path : mergeAssetsOutputPath.split(File.pathSeparator)) {
+            if (new File(path, "flutter_assets").isDirectory()) {
+                return false;
+            }
+        }
+        return containsFile(mergeAssetsOutputPath, AssetsDynamicTask.CONFIG_FILE_NAME);
+    }
+
+    /**
+     * 需要写入各模块包assets目录的运行时配置文件
+     */
+    List<File> getConfigFiles() {
+        File assetsDir = new File(getProject().getProjectDir(), "src/main/assets");
+        List<File> configFiles = new ArrayList<>();
+        for (String name : CONFIG_FILES) {
+            File config = new File(assetsDir, name);
+            if (config.isFile()) {
+                configFiles.add(config);
+            }
+        }
+        return configFiles;
+    }
+
+    static boolean shouldStrip(String name, List<String> stripSoNames, boolean stripAssets) {
+        if (name.startsWith("lib/")) {
+            for (String soName : stripSoNames) {
+                if (name.endsWith("/" + soName)) {
+                    return true;
+                }
+            }
+        }
+        return stripAssets && isDynamicAsset(name);
+    }
+
+    static boolean isDynamicAsset(String name) {
+        return name.startsWith(FLUTTER_ASSETS_PREFIX) || name.equals(ICU_DATA_ENTRY);
+    }
+
+    private static boolean isConfigEntry(String name, List<File> configFiles) {
+        for (File config : configFiles) {
+            if (name.equals("assets/" + config.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean containsFile(String paths, String fileName) {
+        for (String path : paths.split(File.pathSeparator)) {
+            if (containsFile(new File(path), fileName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsFile(File dir, String fileName) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return false;
+        }
+        for (File child : children) {
+            if (child.isDirectory() ? containsFile(child, fileName) : child.getName().equals(fileName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void collectZips(File file, List<File> result) {
+        if (file.isFile() && file.getName().endsWith(".zip")) {
+            result.add(file);
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                collectZips(child, result);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.flutterplugin;
+
+import com.example.flutterplugin.util.LogUtil;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * AAB校验任务
+ * 检查最终生成的.aab中各模块都不再包含已动态下发的SO和flutter_assets，并且带有运行时配置文件
+ */
+public class BundleSoVerifyTask extends DefaultTask {
+
+    private static final String MODULE_MANIFEST = "manifest/AndroidManifest.xml";
+
+    @Input
+    public String bundleOutputPath;
+
+    @Internal
+    public BundleSoStripTask stripTask;
+
+    public String getBundleOutputPath() {
+        return bundleOutputPath;
+    }
+
+    public BundleSoVerifyTask() {
+        setGroup("flutterOpt");
+    }
+
+    @TaskAction
+    public void verifyBundle() throws IOException {
+        List<File> bundles = new ArrayList<>();
+        for (String path : bundleOutputPath.split(File.pathSeparator)) {
+            File file = new File(path);
+            File[] children = file.isDirectory() ? file.listFiles((dir, name) -> name.endsWith(".aab")) : new File[]{file};
+            if (children != null) {
+                for (File child : children) {
+                    if (child.getName().endsWith(".aab")) {
+                        bundles.add(child);
+                    }
+                }
+            }
+        }
+
+        boolean assetsStripped = stripTask.isAssetsStripped();
+        List<File> configFiles = stripTask.getConfigFiles();
+        List<String> leftovers = new ArrayList<>();
+        List<String> missingConfigs = new ArrayList<>();
+        for (File bundle : bundles) {
+            Set<String> modules = new LinkedHashSet<>();
+            Set<String> entryNames = new HashSet<>();
+            try (ZipFile zip = new ZipFile(bundle)) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    entryNames.add(name);
+                    // .aab中的条目形如 <module>/lib/<abi>/libapp.so
+                    int slash = name.indexOf('/');
+                    String moduleEntry = slash >= 0 ? name.substring(slash + 1) : name;
+                    if (moduleEntry.equals(MODULE_MANIFEST)) {
+                        modules.add(name.substring(0, slash));
+                    }
+                    for (String soName : stripTask.getSoNames()) {
+                        if (moduleEntry.startsWith("lib/") && moduleEntry.endsWith("/" + soName + ".so")
+                                && !isKeptByStripTask(soName)) {
+                            leftovers.add(bundle.getName() + "!/" + name);
+                        }
+                    }
+                    if (assetsStripped && BundleSoStripTask.isDynamicAsset(moduleEntry)) {
+                        leftovers.add(bundle.getName() + "!/" + name);
+                    }
+                }
+            }
+            // 配置文件由BundleSoStripTask写入每个模块包，最终.aab中每个模块都应带有
+            for (String module : modules) {
+                for (File config : configFiles) {
+                    String entry = module + "/assets/" + config.getName();
+                    if (!entryNames.contains(entry)) {
+                        missingConfigs.add(bundle.getName() + "!/" + entry);
+                    }
+                }
+            }
+            LogUtil.log("AAB校验完成: " + bundle.getAbsolutePath() + ", 模块 " + modules);
+        }
+
+        List<String> errors = new ArrayList<>();
+        if (!leftovers.isEmpty()) {
+            errors.add("AAB中仍包含已动态下发的文件:\n  " + String.join("\n  ", leftovers));
+        }
+        if (!missingConfigs.isEmpty()) {
+            errors.add("AAB中缺少运行时配置文件:\n  " + String.join("\n  ", missingConfigs));
+        }
+        if (!errors.isEmpty()) {
+            throw new GradleException(String.join("\n", errors));
+        }
+    }
+
+    private boolean isKeptByStripTask(String soName) {
+        // 上传失败时SO保留在合并产物中，此时AAB保留SO是预期行为
+        return BundleSoStripTask.containsFile(stripTask.getMergeNativeLibsOutputPath(), soName + ".so");
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.flutterplugin;
 
+import com.example.flutterplugin.storage.SoStorageFactory;
 import com.example.flutterplugin.util.LogUtil;
 
 /**
@@ -33,6 +34,22 @@ public class ConfigValidator {
             return false;
         }
         
+        // 验证存储后端
+        if (!SoStorageFactory.isSupported(config.getStorage())) {
+            LogUtil.log("❌ 不支持的存储后端: " + config.getStorage());
+            return false;
+        }
+        
+        if (SoStorageFactory.TYPE_HTTP.equals(config.getStorage()) && !isValidUrl(config.getUploadUrl())) {
+            LogUtil.log("❌ 上传地址格式无效: " + config.getUploadUrl());
+            return false;
+        }
+        
+        if (config.getMaxCompressedSize() < 0) {
+            LogUtil.log("❌ 体积预算不能为负数: " + config.getMaxCompressedSize());
+            return false;
+        }
+        
         LogUtil.log("✅ SO配置验证通过: " + config.getName());
         return true;
     }
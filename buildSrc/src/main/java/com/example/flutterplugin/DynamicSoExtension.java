@@ -1,15 +1,23 @@
 package com.example.flutterplugin;
 
+import com.example.flutterplugin.util.SizeUtil;
+
 import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.Project;
 
+import java.io.File;
+
 /**
  * 动态SO配置扩展
  */
 public class DynamicSoExtension {
     private final NamedDomainObjectContainer<SoConfig> soConfigs;
+    private final Project project;
+    private long maxTotalCompressedSize = 0;
+    private File sizeHistoryFile;
     
     public DynamicSoExtension(Project project) {
+        this.project = project;
         this.soConfigs = project.container(SoConfig.class);
     }
     
@@ -33,6 +41,14 @@ public class DynamicSoExtension {
         action.execute(config);
     }
     
+    /**
+     * 配置flutter_assets和icudtl.dat的动态下发
+     */
+    public void flutterAssets(org.gradle.api.Action<? super SoConfig> action) {
+        SoConfig config = soConfigs.maybeCreate("flutterassets");
+        action.execute(config);
+    }
+    
     /**
      * 检查是否配置了指定的SO
      */
@@ -47,4 +63,40 @@ public class DynamicSoExtension {
         return soConfigs.findByName(soName);
     }
     
-}
\ No newline at end of file
+    public long getMaxTotalCompressedSize() {
+        return maxTotalCompressedSize;
+    }
+    
+    public void setMaxTotalCompressedSize(long maxTotalCompressedSize) {
+        this.maxTotalCompressedSize = maxTotalCompressedSize;
+    }
+    
+    /**
+     * 单个架构所有动态SO压缩包的总体积上限（字节），0表示不限制
+     */
+    public void maxTotalCompressedSize(long maxTotalCompressedSize) {
+        this.maxTotalCompressedSize = maxTotalCompressedSize;
+    }
+    
+    /**
+     * 单个架构所有动态SO压缩包的总体积上限，支持 "20MB" 写法
+     */
+    public void maxTotalCompressedSize(String maxTotalCompressedSize) {
+        this.maxTotalCompressedSize = SizeUtil.parse(maxTotalCompressedSize);
+    }
+    
+    /**
+     * 体积历史文件，默认为工程目录下的 so_size_history.json
+     */
+    public File getSizeHistoryFile() {
+        return sizeHistoryFile != null ? sizeHistoryFile : new File(project.getProjectDir(), "so_size_history.json");
+    }
+    
+    public void setSizeHistoryFile(File sizeHistoryFile) {
+        this.sizeHistoryFile = sizeHistoryFile;
+    }
+    
+    public void sizeHistoryFile(Object path) {
+        this.sizeHistoryFile = project.file(path);
+    }
+}
@@ -27,6 +27,9 @@ public class FlutterDynamicPlugin implements Plugin<Project> {
                 System.out.println("📋 项目评估完成，开始处理构建变体");
                 printDynamicSoConfig();
                 
+                SoSizeReportTask sizeReportTask = project.getTasks().create("soSizeReport", SoSizeReportTask.class);
+                sizeReportTask.dynamicSoExtension = dynamicSoExtension;
+                
                 AppExtension appExtension = project.getExtensions().getByType(AppExtension.class);
                 appExtension.getApplicationVariants().all(variant -> {
                     String variantName = StringUtil.capitalize(variant.getName());
@@ -59,6 +62,7 @@ public class FlutterDynamicPlugin implements Plugin<Project> {
                                 soDynamicTask.soType = "libflutter".equals(soType) ? "engine" : "app";
                                 soDynamicTask.soConfig = soConfig;
                                 soDynamicTask.dynamicSoExtension = dynamicSoExtension;
+                                soDynamicTask.sizeRecordFile = sizeRecordFileOf(project, taskName);
                                 
                                 soDynamicTasks.add(soDynamicTask);
                                 System.out.println("📋 " + soType + "配置: " + soConfig);
@@ -68,6 +72,63 @@ public class FlutterDynamicPlugin implements Plugin<Project> {
                         }
                     }
 
+                    // 配置了flutterAssets时，动态下发flutter_assets和icudtl.dat
+                    Task mergeAssetsTask = project.getTasks().findByName("merge" + variantName + "Assets");
+                    AssetsDynamicTask assetsDynamicTask = null;
+                    if (dynamicSoExtension.hasSoConfig(AssetsDynamicTask.ASSETS_NAME) && mergeAssetsTask != null) {
+                        SoConfig assetsConfig = dynamicSoExtension.getSoConfig(AssetsDynamicTask.ASSETS_NAME);
+                        if (ConfigValidator.validateSoConfig(assetsConfig)) {
+                            String taskName = "flutterAssetsDynamic" + variantName;
+                            System.out.println("🔧 创建flutter_assets动态下发任务: " + taskName);
+                            
+                            assetsDynamicTask = project.getTasks().create(taskName, AssetsDynamicTask.class);
+                            assetsDynamicTask.variant = variant;
+                            assetsDynamicTask.mergeAssetsOutputPath = mergeAssetsTask.getOutputs().getFiles().getAsPath();
+                            assetsDynamicTask.soConfig = assetsConfig;
+                            assetsDynamicTask.sizeRecordFile = sizeRecordFileOf(project, taskName);
+                            mergeAssetsTask.finalizedBy(assetsDynamicTask);
+                            
+                            Task compressAssetsTask = project.getTasks().findByName("compress" + variantName + "Assets");
+                            if (compressAssetsTask != null) {
+                                compressAssetsTask.mustRunAfter(assetsDynamicTask);
+                            }
+                            Task packageAppTask = project.getTasks().findByName("package" + variantName);
+                            if (packageAppTask != null) {
+                                packageAppTask.mustRunAfter(assetsDynamicTask);
+                            }
+                        } else {
+                            System.out.println("❌ flutterAssets配置验证失败，跳过处理");
+                        }
+                    }
+
+                    // AAB构建：处理build<Variant>PreBundle生成的模块包，并校验最终的.aab
+                    Task preBundleTask = project.getTasks().findByName("build" + variantName + "PreBundle");
+                    if (preBundleTask != null && (!soDynamicTasks.isEmpty() || assetsDynamicTask != null)) {
+                        BundleSoStripTask bundleStripTask = project.getTasks().create("bundleSoStrip" + variantName, BundleSoStripTask.class);
+                        bundleStripTask.moduleBundleOutputPath = preBundleTask.getOutputs().getFiles().getAsPath();
+                        bundleStripTask.mergeNativeLibsOutputPath = mergeSOTask.getOutputs().getFiles().getAsPath();
+                        if (assetsDynamicTask != null) {
+                            bundleStripTask.mergeAssetsOutputPath = assetsDynamicTask.mergeAssetsOutputPath;
+                            preBundleTask.mustRunAfter(assetsDynamicTask);
+                        }
+                        for (SoDynamicTask task : soDynamicTasks) {
+                            bundleStripTask.soNames.add("engine".equals(task.soType) ? "libflutter" : "libapp");
+                            preBundleTask.mustRunAfter(task);
+                        }
+                        preBundleTask.finalizedBy(bundleStripTask);
+                        
+                        Task packageBundleTask = project.getTasks().findByName("package" + variantName + "Bundle");
+                        if (packageBundleTask != null) {
+                            packageBundleTask.mustRunAfter(bundleStripTask);
+                            
+                            BundleSoVerifyTask bundleVerifyTask = project.getTasks().create("bundleSoVerify" + variantName, BundleSoVerifyTask.class);
+                            bundleVerifyTask.bundleOutputPath = packageBundleTask.getOutputs().getFiles().getAsPath();
+                            bundleVerifyTask.stripTask = bundleStripTask;
+                            packageBundleTask.finalizedBy(bundleVerifyTask);
+                        }
+                        System.out.println("🔧 已配置AAB动态SO处理: " + bundleStripTask.getName());
+                    }
+
                     // 如果没有配置任何SO，跳过
                     if (soDynamicTasks.isEmpty()) {
                         System.out.println("⚠️ 未配置任何动态SO，跳过处理");
@@ -92,9 +153,24 @@ public class FlutterDynamicPlugin implements Plugin<Project> {
                         previousTask = task;
                     }
                     
+                    // 所有SO处理完成后汇总体积并检查总体积预算
+                    SoSizeBudgetTask sizeBudgetTask = project.getTasks().create("soSizeBudget" + variantName, SoSizeBudgetTask.class);
+                    sizeBudgetTask.variantName = variant.getName();
+                    sizeBudgetTask.dynamicSoExtension = dynamicSoExtension;
+                    for (SoDynamicTask task : soDynamicTasks) {
+                        sizeBudgetTask.sizeRecordFiles.add(task.sizeRecordFile);
+                    }
+                    previousTask.finalizedBy(sizeBudgetTask);
+                    sizeBudgetTask.mustRunAfter(previousTask);
+                    if (assetsDynamicTask != null) {
+                        sizeBudgetTask.mustRunAfter(assetsDynamicTask);
+                        sizeBudgetTask.sizeRecordFiles.add(assetsDynamicTask.sizeRecordFile);
+                    }
+                    
                     // 确保在package任务之前完成
                     if (packageTask != null && !soDynamicTasks.isEmpty()) {
                         packageTask.mustRunAfter(soDynamicTasks.get(soDynamicTasks.size() - 1));
+                        packageTask.mustRunAfter(sizeBudgetTask);
                     }
                     
                     // 如果有strip任务，确保在strip之前完成
@@ -106,6 +182,13 @@ public class FlutterDynamicPlugin implements Plugin<Project> {
         }
     }
     
+    /**
+     * 各动态下发任务的体积记录文件
+     */
+    private static java.io.File sizeRecordFileOf(Project project, String taskName) {
+        return new java.io.File(project.getBuildDir(), "intermediates/flutterOpt/soSize/" + taskName + ".json");
+    }
+    
     /**
      * 打印动态SO配置信息
      */
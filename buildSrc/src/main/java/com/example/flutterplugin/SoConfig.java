@@ -1,5 +1,7 @@
 package com.example.flutterplugin;
 
+import com.example.flutterplugin.util.SizeUtil;
+
 /**
  * SO配置类
  */
@@ -9,6 +11,9 @@ public class SoConfig {
     private String maxVersion = "9.9.9";
     private String uploadUrl = "";
     private String downloadUrl = "";
+    private String storage = "http";
+    private String localRepoDir = "";
+    private long maxCompressedSize = 0;
     
     public SoConfig(String name) {
         this.name = name;
@@ -66,6 +71,58 @@ public class SoConfig {
         this.downloadUrl = downloadUrl;
     }
     
+    public String getStorage() {
+        return storage;
+    }
+    
+    public void setStorage(String storage) {
+        this.storage = storage;
+    }
+    
+    /**
+     * 存储后端类型："http"（默认）或 "local"
+     */
+    public void storage(String storage) {
+        this.storage = storage;
+    }
+    
+    public String getLocalRepoDir() {
+        return localRepoDir;
+    }
+    
+    public void setLocalRepoDir(String localRepoDir) {
+        this.localRepoDir = localRepoDir;
+    }
+    
+    /**
+     * 本地仓库目录，仅storage为"local"时生效
+     */
+    public void localRepoDir(String localRepoDir) {
+        this.localRepoDir = localRepoDir;
+    }
+    
+    public long getMaxCompressedSize() {
+        return maxCompressedSize;
+    }
+    
+    public void setMaxCompressedSize(long maxCompressedSize) {
+        this.maxCompressedSize = maxCompressedSize;
+    }
+    
+    /**
+     * 单个架构压缩包的体积上限（字节），0表示不限制
+     */
+    public void maxCompressedSize(long maxCompressedSize) {
+        this.maxCompressedSize = maxCompressedSize;
+    }
+    
+    /**
+     * 单个架构压缩包的体积上限，支持 "6MB"、"512KB" 写法
+     */
+    public void maxCompressedSize(String maxCompressedSize) {
+        this.maxCompressedSize = SizeUtil.parse(maxCompressedSize);
+    }
+    
     @Override
     public String toString() {
         return "SoConfig{" +
@@ -74,6 +131,9 @@ public class SoConfig {
                 ", maxVersion='" + maxVersion + '\'' +
                 ", uploadUrl='" + uploadUrl + '\'' +
                 ", downloadUrl='" + downloadUrl + '\'' +
+                ", storage='" + storage + '\'' +
+                ", localRepoDir='" + localRepoDir + '\'' +
+                ", maxCompressedSize=" + maxCompressedSize +
                 '}';
     }
 }
\ No newline at end of file
@@ -2,25 +2,27 @@ package com.example.flutterplugin;
 
 import com.android.build.gradle.AppExtension;
 import com.android.build.gradle.api.ApplicationVariant;
+import com.example.flutterplugin.storage.SoStorage;
+import com.example.flutterplugin.storage.SoStorageFactory;
 import com.example.flutterplugin.util.FileUtil;
-import com.example.flutterplugin.util.HttpUtil;
 import com.example.flutterplugin.util.LogUtil;
 import com.example.flutterplugin.util.MD5Util;
-import com.example.flutterplugin.util.SoType;
-import com.example.flutterplugin.util.StringUtil;
+import com.example.flutterplugin.util.SizeUtil;
+import com.example.flutterplugin.util.SoSizeTracker;
 import com.example.flutterplugin.util.ZipUtil;
 
 import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ResolvedDependency;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 
 import java.io.File;
-
-import javax.annotation.Nullable;
+import java.io.IOException;
 
 /**
  * 动态加载SO文件任务
@@ -46,6 +48,11 @@ public class SoDynamicTask extends DefaultTask {
     @Internal
     public DynamicSoExtension dynamicSoExtension; // 动态SO扩展配置
     
+    @OutputFile
+    public File sizeRecordFile; // 本次执行的SO体积记录，供体积预算任务读取
+    
+    private SoSizeTracker sizeTracker;
+    
     public SoConfig getSoConfig() {
         return soConfig;
     }
@@ -70,32 +77,55 @@ public class SoDynamicTask extends DefaultTask {
         return soType;
     }
 
+    public File getSizeRecordFile() {
+        return sizeRecordFile;
+    }
+
     public SoDynamicTask() {
         setGroup("flutterOpt");
+        // 合并产物每次都会重新生成，声明了体积记录输出后也不能被判定为UP-TO-DATE
+        getOutputs().upToDateWhen(task -> false);
     }
 
     @TaskAction
     public void optimizeSo() {
+        sizeTracker = new SoSizeTracker(variant.getName());
+        try {
+            processSo();
+        } finally {
+            writeSizeRecord(sizeTracker, sizeRecordFile);
+        }
+    }
+
+    /**
+     * 每次执行都覆盖体积记录文件，跳过处理时写入空记录
+     */
+    static void writeSizeRecord(SoSizeTracker tracker, File recordFile) {
+        try {
+            tracker.writeTo(recordFile);
+        } catch (IOException e) {
+            throw new GradleException("SO体积记录写入失败: " + recordFile.getAbsolutePath(), e);
+        }
+    }
+
+    private void processSo() {
         LogUtil.log("开始处理SO，配置信息: " + (soConfig != null ? soConfig.toString() : "无配置"));
         
         // 统一处理SO文件
         String soVersion;
         String soName;
         String configFileName;
-        SoType soTypeEnum;
         
         if ("engine".equals(soType)) {
             LogUtil.log("开始处理Flutter引擎SO文件");
             soVersion = findFlutterSDKVersion(getProject(), variant.getName());
             soName = "libflutter";
             configFileName = "flutterso.json";
-            soTypeEnum = SoType.LIB_FLUTTER_SO;
         } else if ("app".equals(soType)) {
             LogUtil.log("开始处理App SO文件");
             soVersion = findAppSOVersion(getProject(), variant.getName());
             soName = "libapp";
             configFileName = "appso.json";
-            soTypeEnum = SoType.LIB_APP_SO;
         } else {
             LogUtil.log("未知的SO类型: " + soType);
             return;
@@ -108,7 +138,7 @@ public class SoDynamicTask extends DefaultTask {
         LogUtil.log(soType + " SO版本: " + soVersion);
         
         // 处理SO文件
-        processSoFiles(soVersion, soName, configFileName, soTypeEnum);
+        processSoFiles(soVersion, soName, configFileName);
     }
     
     /**
@@ -116,9 +146,8 @@ public class SoDynamicTask extends DefaultTask {
      * @param soVersion SO文件版本
      * @param soName SO文件名称（不含.so后缀）
      * @param configFileName 配置文件名称
-     * @param soType SO类型
      */
-    private void processSoFiles(String soVersion, String soName, String configFileName, SoType soType) {
+    private void processSoFiles(String soVersion, String soName, String configFileName) {
         // 处理ARM架构的SO文件（移除x86支持）
         String[] abis = {"arm64-v8a", "armeabi-v7a"};
         java.util.Map<String, File> soFiles = new java.util.HashMap<>();
@@ -138,6 +167,9 @@ public class SoDynamicTask extends DefaultTask {
         }
         
         LogUtil.log("找到 " + soFiles.size() + " 个架构的" + soName + ".so文件");
+        
+        SoStorage storage = SoStorageFactory.create(getProject(), soConfig);
+        LogUtil.log("使用存储后端: " + storage);
 
         // 创建配置Map
         java.util.Map<String, Object> configMap = new java.util.HashMap<>();
@@ -160,15 +192,6 @@ public class SoDynamicTask extends DefaultTask {
             long fileSize = soFile.length();
             LogUtil.log(abi + " " + soName + ".so MD5: " + md5 + ", 大小: " + fileSize + " bytes");
             
-            // 检测该架构的SO是否需要重新上传
-            String archSoUrl = checkSo(soType, soVersion + "-" + abi);
-            if (archSoUrl != null && !archSoUrl.isEmpty()) {
-                LogUtil.log(abi + " 架构的" + soName + ".so已存在于服务器，无需重新上传");
-                // 即使不需要重新上传，也要添加架构信息到配置中
-                addArchInfo(configMap, abi, archSoUrl, md5, fileSize);
-                continue;
-            }
-            
             // 创建该架构的ZIP包（使用该架构SO文件的MD5）
             File zipFile = createSoZipPackage(soFile, soVersion, soName, abi, md5);
             if (zipFile == null) {
@@ -177,11 +200,33 @@ public class SoDynamicTask extends DefaultTask {
                 continue;
             }
             
-            // 上传ZIP包到本地服务器
-            LogUtil.log("正在上传 " + abi + " " + soName + ".so ZIP包到本地服务器...");
-            String url = HttpUtil.getInstance().upload(zipFile);
+            // 记录体积并检查单库体积预算
+            long compressedSize = zipFile.length();
+            LogUtil.log(abi + " " + soName + " 压缩后大小: " + SizeUtil.format(compressedSize)
+                    + ", 压缩前大小: " + SizeUtil.format(fileSize));
+            sizeTracker.record(soName, abi, compressedSize, fileSize);
+            if (soConfig != null && soConfig.getMaxCompressedSize() > 0
+                    && compressedSize > soConfig.getMaxCompressedSize()) {
+                zipFile.delete();
+                throw new GradleException(abi + " " + soName + " 压缩包大小 " + SizeUtil.format(compressedSize)
+                        + " 超出预算 " + SizeUtil.format(soConfig.getMaxCompressedSize()));
+            }
+            
+            // 检测该架构的SO是否需要重新上传
+            String archSoUrl = storage.find(soName, abi, md5);
+            if (archSoUrl != null && !archSoUrl.isEmpty()) {
+                LogUtil.log(abi + " 架构的" + soName + ".so已存在于存储后端，无需重新上传");
+                // 即使不需要重新上传，也要添加架构信息到配置中
+                addArchInfo(configMap, abi, archSoUrl, md5, fileSize);
+                zipFile.delete();
+                continue;
+            }
+            
+            // 发布ZIP包到存储后端
+            LogUtil.log("正在发布 " + abi + " " + soName + ".so ZIP包到存储后端...");
+            String url = storage.publish(zipFile, soName, abi, md5);
             if (url != null) {
-                LogUtil.log(abi + " " + soName + ".so ZIP包上传成功: " + url);
+                LogUtil.log(abi + " " + soName + ".so ZIP包发布成功: " + url);
                 // 添加架构信息到配置中
                 addArchInfo(configMap, abi, url, md5, fileSize);
                 // 清理临时ZIP文件
@@ -209,11 +254,6 @@ public class SoDynamicTask extends DefaultTask {
         finalizeAssetsConfig(configMap, configFileName);
     }
     
-    @Nullable
-    private String checkSo(SoType soType, String version) {
-        return HttpUtil.getInstance().check(soType, version);
-    }
-    
     private void addArchInfo(java.util.Map<String, Object> configMap, String arch, String url, String md5, long size) {
         java.util.Map<String, Object> archInfo = new java.util.HashMap<>();
         archInfo.put("url", url);
@@ -277,14 +317,16 @@ public class SoDynamicTask extends DefaultTask {
             // 使用基础版本号和该架构SO文件的MD5来命名ZIP包
             String baseVersion = version.split("-")[0]; // 去掉版本中的MD5部分
             File zipFile = new File(tempDir, packageName + "_" + baseVersion + "-" + md5 + "-" + abi + ".zip");
-            return ZipUtil.createSoPackage(soFile, version, zipFile, packageName, abi);
+            return ZipUtil.createSoPackage(soFile, version, zipFile, packageName, abi,
+                    soConfig != null ? soConfig.getMinVersion() : null,
+                    soConfig != null ? soConfig.getMaxVersion() : null);
         } catch (Exception e) {
             LogUtil.log("创建 " + abi + " SO ZIP包失败: " + e.getMessage());
             return null;
         }
     }
 
-    private String findAppSOVersion(Project project, String variantName) {
+    static String findAppSOVersion(Project project, String variantName) {
         Configuration configuration = project.getConfigurations().getByName(variantName + "RuntimeClasspath");
         for (ResolvedDependency resolvedDependency : configuration.getResolvedConfiguration().getLenientConfiguration().getAllModuleDependencies()) {
             //TODO: 修改成自己 flutter aar 的 ModuleGroup
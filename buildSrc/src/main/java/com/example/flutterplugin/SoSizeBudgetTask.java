@@ -0,0 +1,91 @@
+package com.example.flutterplugin;
+
+import com.example.flutterplugin.util.LogUtil;
+import com.example.flutterplugin.util.SizeUtil;
+import com.example.flutterplugin.util.SoSizeTracker;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SO体积预算检查任务
+ * 汇总本次构建各架构的动态SO压缩体积，写入体积历史并检查总体积预算
+ */
+public class SoSizeBudgetTask extends DefaultTask {
+
+    @Input
+    public String variantName;
+
+    @Internal
+    public DynamicSoExtension dynamicSoExtension;
+
+    @InputFiles
+    public List<File> sizeRecordFiles = new ArrayList<>();
+
+    public String getVariantName() {
+        return variantName;
+    }
+
+    public DynamicSoExtension getDynamicSoExtension() {
+        return dynamicSoExtension;
+    }
+
+    public List<File> getSizeRecordFiles() {
+        return sizeRecordFiles;
+    }
+
+    public SoSizeBudgetTask() {
+        setGroup("flutterOpt");
+    }
+
+    @TaskAction
+    public void checkBudget() {
+        // 只读取本次构建各任务输出的体积记录，不依赖守护进程中的静态状态
+        List<SoSizeTracker.Entry> entries = new ArrayList<>();
+        for (File recordFile : sizeRecordFiles) {
+            entries.addAll(SoSizeTracker.readRecords(recordFile));
+        }
+        if (entries.isEmpty()) {
+            LogUtil.log("本次构建没有SO体积记录，跳过体积预算检查");
+            return;
+        }
+
+        try {
+            SoSizeTracker.appendHistory(dynamicSoExtension.getSizeHistoryFile(), getProject().getRootDir(), entries);
+            LogUtil.log("SO体积历史已更新: " + dynamicSoExtension.getSizeHistoryFile().getAbsolutePath());
+        } catch (IOException e) {
+            LogUtil.log("SO体积历史写入失败: " + e.getMessage());
+        }
+
+        // 用户只会下载自己架构的SO，因此按架构汇总
+        Map<String, Long> totalByAbi = new LinkedHashMap<>();
+        for (SoSizeTracker.Entry entry : entries) {
+            totalByAbi.merge(entry.abi, entry.compressedSize, Long::sum);
+        }
+
+        long budget = dynamicSoExtension.getMaxTotalCompressedSize();
+        StringBuilder overBudget = new StringBuilder();
+        for (Map.Entry<String, Long> total : totalByAbi.entrySet()) {
+            LogUtil.log(total.getKey() + " 动态SO压缩总大小: " + SizeUtil.format(total.getValue()));
+            if (budget > 0 && total.getValue() > budget) {
+                overBudget.append("\n  ").append(total.getKey()).append(": ")
+                        .append(SizeUtil.format(total.getValue()));
+            }
+        }
+
+        if (overBudget.length() > 0) {
+            throw new GradleException("动态SO压缩总大小超出预算 " + SizeUtil.format(budget) + ":" + overBudget);
+        }
+    }
+}
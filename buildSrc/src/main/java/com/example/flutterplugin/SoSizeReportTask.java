@@ -0,0 +1,97 @@
+package com.example.flutterplugin;
+
+import com.example.flutterplugin.util.FileUtil;
+import com.example.flutterplugin.util.LogUtil;
+import com.example.flutterplugin.util.SizeUtil;
+import com.example.flutterplugin.util.SoSizeTracker;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SO体积趋势报告任务
+ * 读取体积历史，按变体/SO/架构输出体积变化，并标出libapp.so增长最大的提交
+ */
+public class SoSizeReportTask extends DefaultTask {
+
+    @Internal
+    public DynamicSoExtension dynamicSoExtension;
+
+    public DynamicSoExtension getDynamicSoExtension() {
+        return dynamicSoExtension;
+    }
+
+    public SoSizeReportTask() {
+        setGroup("flutterOpt");
+        setDescription("输出动态SO体积趋势报告");
+    }
+
+    @TaskAction
+    public void report() throws IOException {
+        List<SoSizeTracker.Entry> history = SoSizeTracker.readHistory(dynamicSoExtension.getSizeHistoryFile());
+        if (history.isEmpty()) {
+            LogUtil.log("没有SO体积历史: " + dynamicSoExtension.getSizeHistoryFile().getAbsolutePath());
+            return;
+        }
+        history.sort(Comparator.comparingLong(e -> e.time));
+
+        Map<String, List<SoSizeTracker.Entry>> series = new LinkedHashMap<>();
+        for (SoSizeTracker.Entry entry : history) {
+            String key = entry.variant + " " + entry.soName + " " + entry.abi;
+            series.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+        }
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        StringBuilder report = new StringBuilder("动态SO体积趋势报告\n");
+        for (Map.Entry<String, List<SoSizeTracker.Entry>> item : series.entrySet()) {
+            List<SoSizeTracker.Entry> entries = item.getValue();
+            report.append("\n== ").append(item.getKey()).append(" ==\n");
+
+            // 找出压缩体积增长最大的一次提交
+            int maxGrowthIndex = -1;
+            long maxGrowth = 0;
+            for (int i = 1; i < entries.size(); i++) {
+                long growth = entries.get(i).compressedSize - entries.get(i - 1).compressedSize;
+                if (growth > maxGrowth) {
+                    maxGrowth = growth;
+                    maxGrowthIndex = i;
+                }
+            }
+
+            for (int i = 0; i < entries.size(); i++) {
+                SoSizeTracker.Entry entry = entries.get(i);
+                long delta = i == 0 ? 0 : entry.compressedSize - entries.get(i - 1).compressedSize;
+                report.append(i == maxGrowthIndex && "libapp".equals(entry.soName) ? "⚠️ " : "   ")
+                        .append(dateFormat.format(entry.time)).append("  ")
+                        .append(entry.commit).append("  压缩: ")
+                        .append(SizeUtil.format(entry.compressedSize)).append("  未压缩: ")
+                        .append(SizeUtil.format(entry.uncompressedSize));
+                if (delta != 0) {
+                    report.append("  (").append(delta > 0 ? "+" : "-")
+                            .append(SizeUtil.format(Math.abs(delta))).append(")");
+                }
+                report.append("\n");
+            }
+
+            if (maxGrowthIndex > 0 && "libapp".equals(entries.get(maxGrowthIndex).soName)) {
+                report.append("   libapp.so 在提交 ").append(entries.get(maxGrowthIndex).commit)
+                        .append(" 增长最多: +").append(SizeUtil.format(maxGrowth)).append("\n");
+            }
+        }
+
+        File reportFile = new File(getProject().getBuildDir(), "reports/soSize/trend.txt");
+        FileUtil.writeStringToFile(reportFile, report.toString());
+        LogUtil.log(report.toString());
+        LogUtil.log("体积趋势报告: " + reportFile.getAbsolutePath());
+    }
+}
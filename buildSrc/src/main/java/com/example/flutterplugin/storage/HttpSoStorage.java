@@ -0,0 +1,53 @@
+package com.example.flutterplugin.storage;
+
+import com.example.flutterplugin.util.HttpUtil;
+
+import java.io.File;
+
+import javax.annotation.Nullable;
+
+/**
+ * 基于HTTP multipart上传的存储后端（默认，对应dart_server）
+ */
+public class HttpSoStorage implements SoStorage {
+
+    public static final String DEFAULT_UPLOAD_URL = "http://127.0.0.1:1234/api/upload";
+    public static final String DEFAULT_DOWNLOAD_URL = "http://127.0.0.1:1234/api/download";
+
+    private final String uploadUrl;
+    private final String downloadUrl;
+
+    public HttpSoStorage(String uploadUrl, String downloadUrl) {
+        this.uploadUrl = isEmpty(uploadUrl) ? DEFAULT_UPLOAD_URL : uploadUrl;
+        this.downloadUrl = isEmpty(downloadUrl) ? DEFAULT_DOWNLOAD_URL : trimSlash(downloadUrl);
+    }
+
+    @Nullable
+    @Override
+    public String find(String soName, String abi, String md5) {
+        return HttpUtil.getInstance().check(soName, abi, md5);
+    }
+
+    @Nullable
+    @Override
+    public String publish(File zipFile, String soName, String abi, String md5) {
+        String filename = HttpUtil.getInstance().upload(zipFile, uploadUrl);
+        if (filename == null) {
+            return null;
+        }
+        return downloadUrl + "/" + filename;
+    }
+
+    private static boolean isEmpty(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpSoStorage{uploadUrl='" + uploadUrl + "', downloadUrl='" + downloadUrl + "'}";
+    }
+}
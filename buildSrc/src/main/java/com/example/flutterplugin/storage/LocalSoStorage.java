@@ -0,0 +1,110 @@
+package com.example.flutterplugin.storage;
+
+import com.example.flutterplugin.util.FileUtil;
+import com.example.flutterplugin.util.LogUtil;
+import com.example.flutterplugin.util.MD5Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import javax.annotation.Nullable;
+
+/**
+ * 本地目录存储后端
+ * 按内容寻址存放SO包：{@code <repo>/<soName>/<abi>/<md5前两位>/<md5>/<zip文件名>}，
+ * 同目录下写入 {@code .md5} 与 {@code .sha256} 校验文件，供离线CI、集成测试使用
+ */
+public class LocalSoStorage implements SoStorage {
+
+    static final String MD5_SUFFIX = ".md5";
+    static final String SHA256_SUFFIX = ".sha256";
+
+    private final File repoDir;
+    private final String downloadUrl;
+
+    /**
+     * @param repoDir 本地仓库根目录
+     * @param downloadUrl 仓库对外的访问前缀，为空时返回file://地址
+     */
+    public LocalSoStorage(File repoDir, String downloadUrl) {
+        this.repoDir = repoDir;
+        this.downloadUrl = downloadUrl == null || downloadUrl.trim().isEmpty() ? null
+                : (downloadUrl.endsWith("/") ? downloadUrl.substring(0, downloadUrl.length() - 1) : downloadUrl);
+    }
+
+    @Nullable
+    @Override
+    public String find(String soName, String abi, String md5) {
+        File dir = contentDir(soName, abi, md5);
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".zip"));
+        if (files == null) {
+            return null;
+        }
+        for (File file : files) {
+            if (verify(file)) {
+                return toUrl(file);
+            }
+            LogUtil.log("本地仓库中的SO包校验失败，忽略: " + file.getAbsolutePath());
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String publish(File zipFile, String soName, String abi, String md5) {
+        File dir = contentDir(soName, abi, md5);
+        if (!dir.exists() && !dir.mkdirs()) {
+            LogUtil.log("创建本地仓库目录失败: " + dir.getAbsolutePath());
+            return null;
+        }
+        File target = new File(dir, zipFile.getName());
+        File temp = new File(dir, zipFile.getName() + ".tmp");
+        try {
+            Files.copy(zipFile.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            FileUtil.writeStringToFile(new File(dir, target.getName() + MD5_SUFFIX), MD5Util.getFileMD5(temp));
+            FileUtil.writeStringToFile(new File(dir, target.getName() + SHA256_SUFFIX), MD5Util.getFileSHA256(temp));
+            // 校验文件先落盘，再原子替换，保证可见的包总带有校验文件
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LogUtil.log("发布到本地仓库: " + target.getAbsolutePath());
+            return toUrl(target);
+        } catch (IOException e) {
+            LogUtil.log("发布到本地仓库失败: " + e.getMessage());
+            temp.delete();
+            return null;
+        }
+    }
+
+    private File contentDir(String soName, String abi, String md5) {
+        return new File(repoDir, soName + File.separator + abi + File.separator
+                + md5.substring(0, Math.min(2, md5.length())) + File.separator + md5);
+    }
+
+    private boolean verify(File file) {
+        File md5File = new File(file.getParentFile(), file.getName() + MD5_SUFFIX);
+        if (!md5File.exists()) {
+            return false;
+        }
+        try {
+            String expected = new String(Files.readAllBytes(md5File.toPath()), "UTF-8").trim();
+            return expected.equals(MD5Util.getFileMD5(file));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private String toUrl(File file) {
+        if (downloadUrl == null) {
+            return file.toURI().toString();
+        }
+        String relative = repoDir.toURI().relativize(file.toURI()).getPath();
+        return downloadUrl + "/" + relative;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalSoStorage{repoDir='" + repoDir + "', downloadUrl='" + downloadUrl + "'}";
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.flutterplugin.storage;
+
+import java.io.File;
+
+import javax.annotation.Nullable;
+
+/**
+ * SO包存储后端
+ * 负责发布构建产出的SO包，并返回运行时可用的下载地址
+ */
+public interface SoStorage {
+
+    /**
+     * 查找是否已经发布过相同内容的SO包
+     * @param soName SO名称（不含.so后缀）
+     * @param abi 架构
+     * @param md5 SO文件的MD5
+     * @return 已发布的下载地址，未发布返回null
+     */
+    @Nullable
+    String find(String soName, String abi, String md5);
+
+    /**
+     * 发布SO包
+     * @param zipFile SO的ZIP包
+     * @param soName SO名称（不含.so后缀）
+     * @param abi 架构
+     * @param md5 SO文件的MD5
+     * @return 下载地址，发布失败返回null
+     */
+    @Nullable
+    String publish(File zipFile, String soName, String abi, String md5);
+}
@@ -0,0 +1,34 @@
+package com.example.flutterplugin.storage;
+
+import com.example.flutterplugin.SoConfig;
+
+import org.gradle.api.Project;
+
+import java.io.File;
+
+/**
+ * 根据SoConfig创建对应的存储后端
+ */
+public class SoStorageFactory {
+
+    public static final String TYPE_HTTP = "http";
+    public static final String TYPE_LOCAL = "local";
+
+    public static boolean isSupported(String type) {
+        return TYPE_HTTP.equals(type) || TYPE_LOCAL.equals(type);
+    }
+
+    public static SoStorage create(Project project, SoConfig config) {
+        if (config == null) {
+            return new HttpSoStorage(null, null);
+        }
+        if (TYPE_LOCAL.equals(config.getStorage())) {
+            String repo = config.getLocalRepoDir();
+            File repoDir = repo == null || repo.isEmpty()
+                    ? new File(project.getRootProject().getBuildDir(), "so_repo")
+                    : project.file(repo);
+            return new LocalSoStorage(repoDir, config.getDownloadUrl());
+        }
+        return new HttpSoStorage(config.getUploadUrl(), config.getDownloadUrl());
+    }
+}
@@ -43,6 +43,19 @@ public class FileUtil {
         return targetFile;
     }
 
+    public static boolean deleteRecursively(File file) {
+        if (file == null || !file.exists()) {
+            return true;
+        }
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        return file.delete();
+    }
+
     public static void writeStringToFile(File file, String data) throws IOException {
         writeStringToFile(file, data, Charset.forName("utf-8"), false);
     }
@@ -39,16 +39,14 @@ public class HttpUtil {
     }
 
     /**
-     * 上传到本地服务器
+     * 上传到服务器
      * @param file
-     * @return
+     * @param uploadUrl 上传地址
+     * @return 服务器保存的文件名
      */
     @Nullable
-    public String upload(File file){
+    public String upload(File file, String uploadUrl){
         try{
-            // 上传到本地Dart服务器
-            String uploadUrl = "http://127.0.0.1:1234/api/upload";
-            
             MultipartBody multipartBody = new MultipartBody.Builder()
                     .setType(MultipartBody.FORM)
                     .addFormDataPart("file", file.getName(),
@@ -77,12 +75,11 @@ public class HttpUtil {
             JSONObject jsonObject = new JSONObject(resultJson);
             boolean success = jsonObject.optBoolean("success", false);
             if (success) {
-                String filename = jsonObject.optString("filename", file.getName());
-                return "http://127.0.0.1:1234/api/download/" + filename;
+                return jsonObject.optString("filename", file.getName());
             }
             
         } catch (Exception e) {
-            LogUtil.log("上传到本地服务器失败: " + e.getMessage());
+            LogUtil.log("上传到服务器失败: " + e.getMessage());
         }
         return null;
     }
@@ -92,7 +89,7 @@ public class HttpUtil {
      * @return
      */
     @Nullable
-    public String check(SoType type, String sdkVersion){
+    public String check(String soName, String abi, String md5){
         //TODO: 自己实现版本校验
         return null;
     }
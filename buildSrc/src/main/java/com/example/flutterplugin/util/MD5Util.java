@@ -34,6 +34,30 @@ public class MD5Util {
         }
     }
     
+    /**
+     * 计算文件的SHA-256值
+     */
+    public static String getFileSHA256(File file) {
+        if (file == null || !file.exists()) {
+            return "";
+        }
+        
+        try (FileInputStream fis = new FileInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            
+            while ((bytesRead = fis.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+            
+            return bytesToHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            LogUtil.log("计算SHA-256失败: " + e.getMessage());
+            return "";
+        }
+    }
+    
     /**
      * 计算字符串的MD5值
      */
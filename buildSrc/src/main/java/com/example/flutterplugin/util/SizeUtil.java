@@ -0,0 +1,44 @@
+package com.example.flutterplugin.util;
+
+import java.util.Locale;
+
+public class SizeUtil {
+
+    /**
+     * 解析大小配置，支持纯数字（字节）以及 KB/MB/GB 后缀，例如 "512KB"、"6.5MB"
+     */
+    public static long parse(String size) {
+        if (size == null || size.trim().isEmpty()) {
+            return 0;
+        }
+        String value = size.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (value.endsWith("KB")) {
+            unit = 1024L;
+        } else if (value.endsWith("MB")) {
+            unit = 1024L * 1024;
+        } else if (value.endsWith("GB")) {
+            unit = 1024L * 1024 * 1024;
+        }
+        if (unit != 1) {
+            value = value.substring(0, value.length() - 2).trim();
+        } else if (value.endsWith("B")) {
+            value = value.substring(0, value.length() - 1).trim();
+        }
+        try {
+            return (long) (Double.parseDouble(value) * unit);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的大小配置: " + size);
+        }
+    }
+
+    public static String format(long bytes) {
+        if (bytes >= 1024L * 1024) {
+            return String.format(Locale.ROOT, "%.2f MB", bytes / 1024.0 / 1024.0);
+        }
+        if (bytes >= 1024L) {
+            return String.format(Locale.ROOT, "%.2f KB", bytes / 1024.0);
+        }
+        return bytes + " B";
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.flutterplugin.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SO体积记录
+ * 收集单个任务各SO、各架构的压缩/未压缩大小并写入任务输出的记录文件，
+ * 由体积预算任务读取后追加到本地历史文件
+ */
+public class SoSizeTracker {
+
+    /**
+     * 单条体积记录
+     */
+    public static class Entry {
+        public long time;
+        public String commit;
+        public String variant;
+        public String soName;
+        public String abi;
+        public long compressedSize;
+        public long uncompressedSize;
+    }
+
+    private final String variant;
+    private final List<Entry> entries = new ArrayList<>();
+
+    public SoSizeTracker(String variant) {
+        this.variant = variant;
+    }
+
+    public void record(String soName, String abi, long compressedSize, long uncompressedSize) {
+        // 同一次执行中重复记录时，以最后一次为准
+        entries.removeIf(e -> e.soName.equals(soName) && e.abi.equals(abi));
+        Entry entry = new Entry();
+        entry.time = System.currentTimeMillis();
+        entry.variant = variant;
+        entry.soName = soName;
+        entry.abi = abi;
+        entry.compressedSize = compressedSize;
+        entry.uncompressedSize = uncompressedSize;
+        entries.add(entry);
+    }
+
+    /**
+     * 写入任务的体积记录文件，每次执行都会覆盖，避免上次构建的记录残留
+     */
+    public void writeTo(File recordFile) throws IOException {
+        FileUtil.writeStringToFile(recordFile, new GsonBuilder().setPrettyPrinting().create().toJson(entries));
+    }
+
+    public static List<Entry> readRecords(File recordFile) {
+        return readHistory(recordFile);
+    }
+
+    public static List<Entry> readHistory(File historyFile) {
+        if (historyFile == null || !historyFile.exists()) {
+            return new ArrayList<>();
+        }
+        try {
+            String json = new String(Files.readAllBytes(historyFile.toPath()), StandardCharsets.UTF_8);
+            List<Entry> entries = new Gson().fromJson(json, new TypeToken<List<Entry>>() {}.getType());
+            return entries != null ? entries : new ArrayList<>();
+        } catch (Exception e) {
+            LogUtil.log("读取体积历史失败: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    public static void appendHistory(File historyFile, File gitDir, List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        String commit = currentCommit(gitDir);
+        List<Entry> history = readHistory(historyFile);
+        // 同一提交重复构建时只保留第一次的记录，避免历史被重复条目撑大
+        Set<String> recorded = new HashSet<>();
+        for (Entry entry : history) {
+            recorded.add(historyKey(entry.commit, entry));
+        }
+        int added = 0;
+        for (Entry entry : entries) {
+            if ("unknown".equals(commit) || recorded.add(historyKey(commit, entry))) {
+                entry.commit = commit;
+                history.add(entry);
+                added++;
+            }
+        }
+        if (added == 0) {
+            LogUtil.log("提交 " + commit + " 已有体积记录，跳过写入历史");
+            return;
+        }
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        FileUtil.writeStringToFile(historyFile, gson.toJson(history));
+    }
+
+    private static String historyKey(String commit, Entry entry) {
+        return commit + "|" + entry.variant + "|" + entry.soName + "|" + entry.abi;
+    }
+
+    private static String currentCommit(File workDir) {
+        try {
+            Process process = new ProcessBuilder("git", "rev-parse", "--short", "HEAD")
+                    .directory(workDir)
+                    .redirectErrorStream(true)
+                    .start();
+            byte[] output;
+            try (InputStream in = process.getInputStream()) {
+                output = readAll(in);
+            }
+            if (process.waitFor() == 0) {
+                return new String(output, StandardCharsets.UTF_8).trim();
+            }
+        } catch (Exception e) {
+            LogUtil.log("获取git提交失败: " + e.getMessage());
+        }
+        return "unknown";
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
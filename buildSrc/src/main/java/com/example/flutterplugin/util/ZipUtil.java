@@ -7,7 +7,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -24,8 +26,10 @@ public class ZipUtil {
     
     /**
      * 创建SO包（ZIP格式，支持架构信息）
+     * package_info.json中写入版本、ABI和兼容的App版本范围，供分发服务器按条件过滤
      */
-    public static File createSoPackage(File soFile, String version, File outputZipFile, String packageName, String abi) {
+    public static File createSoPackage(File soFile, String version, File outputZipFile, String packageName, String abi,
+                                       String minAppVersion, String maxAppVersion) {
         if (soFile == null || !soFile.exists()) {
             LogUtil.log("SO文件不存在: " + (soFile != null ? soFile.getAbsolutePath() : "null"));
             return null;
@@ -49,6 +53,7 @@ public class ZipUtil {
             if (abi != null && !abi.isEmpty()) {
                 packageInfo.put("abi", abi);
             }
+            putAppVersionRange(packageInfo, minAppVersion, maxAppVersion);
             
             // 创建ZIP文件
             ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(outputZipFile));
@@ -78,13 +83,87 @@ public class ZipUtil {
         }
     }
     
+    private static void putAppVersionRange(Map<String, Object> packageInfo, String minAppVersion, String maxAppVersion) {
+        if (minAppVersion != null && !minAppVersion.isEmpty()) {
+            packageInfo.put("minAppVersion", minAppVersion);
+        }
+        if (maxAppVersion != null && !maxAppVersion.isEmpty()) {
+            packageInfo.put("maxAppVersion", maxAppVersion);
+        }
+    }
+    
+    /**
+     * 创建Flutter资源包（ZIP格式）
+     * 资源按 {@code assets/<相对路径>} 存放，可直接作为AssetManager的资源路径使用；
+     * 条目按路径排序并固定时间戳，保证相同内容生成相同的ZIP，ZIP的MD5即内容地址
+     * @param assetsRoot 合并后的assets根目录
+     * @param files 需要打包的文件（位于assetsRoot下）
+     */
+    public static File createAssetPackage(File assetsRoot, List<File> files, String version, File outputZipFile,
+                                          String minAppVersion, String maxAppVersion) {
+        try {
+            File parentDir = outputZipFile.getParentFile();
+            if (parentDir != null && !parentDir.exists()) {
+                parentDir.mkdirs();
+            }
+            
+            String rootPath = assetsRoot.getCanonicalPath() + File.separator;
+            Map<String, File> sortedFiles = new TreeMap<>();
+            for (File file : files) {
+                String relative = file.getCanonicalPath().substring(rootPath.length()).replace(File.separatorChar, '/');
+                sortedFiles.put(relative, file);
+            }
+            
+            Map<String, String> fileMd5 = new TreeMap<>();
+            long totalSize = 0;
+            ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(outputZipFile));
+            try {
+                for (Map.Entry<String, File> entry : sortedFiles.entrySet()) {
+                    addFileToZip(zipOut, entry.getValue(), "assets/" + entry.getKey(), 0L);
+                    fileMd5.put(entry.getKey(), MD5Util.getFileMD5(entry.getValue()));
+                    totalSize += entry.getValue().length();
+                }
+                
+                Map<String, Object> packageInfo = new HashMap<>();
+                packageInfo.put("version", version);
+                packageInfo.put("packageName", "flutterassets");
+                packageInfo.put("size", totalSize);
+                packageInfo.put("files", fileMd5);
+                putAppVersionRange(packageInfo, minAppVersion, maxAppVersion);
+                ZipEntry infoEntry = new ZipEntry(PACKAGE_INFO_FILE);
+                infoEntry.setTime(0L);
+                zipOut.putNextEntry(infoEntry);
+                zipOut.write(new Gson().toJson(packageInfo).getBytes("UTF-8"));
+                zipOut.closeEntry();
+            } finally {
+                zipOut.close();
+            }
+            
+            LogUtil.log("资源包创建成功: " + outputZipFile.getAbsolutePath() + ", 文件数: " + sortedFiles.size());
+            return outputZipFile;
+        } catch (IOException e) {
+            LogUtil.log("创建资源包失败: " + e.getMessage());
+            if (outputZipFile.exists()) {
+                outputZipFile.delete();
+            }
+            return null;
+        }
+    }
+    
     /**
      * 添加文件到ZIP
      */
     private static void addFileToZip(ZipOutputStream zipOut, File file, String entryName) throws IOException {
+        addFileToZip(zipOut, file, entryName, -1L);
+    }
+    
+    private static void addFileToZip(ZipOutputStream zipOut, File file, String entryName, long time) throws IOException {
         FileInputStream fis = new FileInputStream(file);
         try {
             ZipEntry entry = new ZipEntry(entryName);
+            if (time >= 0) {
+                entry.setTime(time);
+            }
             zipOut.putNextEntry(entry);
             
             byte[] buffer = new byte[8192];
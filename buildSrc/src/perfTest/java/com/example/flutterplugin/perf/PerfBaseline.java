@@ -0,0 +1,101 @@
+package com.example.flutterplugin.perf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 性能基线
+ * 基线以properties保存，键形如 variants.8.configurationMs；缺少基线的指标判定为失败，
+ * 需要先用 -Dperf.updateBaseline=true 在基准机器上记录
+ */
+class PerfBaseline {
+
+    /**
+     * 小于该值的波动视为噪声，不判定为退化
+     */
+    private static final long NOISE_FLOOR_MS = 50;
+
+    private final File baselineFile;
+    private final Properties baseline = new Properties();
+    private final double threshold;
+
+    PerfBaseline(File baselineFile, double threshold) throws IOException {
+        this.baselineFile = baselineFile;
+        this.threshold = threshold;
+        if (baselineFile.exists()) {
+            try (InputStream in = new FileInputStream(baselineFile)) {
+                baseline.load(in);
+            }
+        }
+    }
+
+    /**
+     * 与基线比较耗时指标
+     * @return 退化或缺少基线的描述，未退化时返回null
+     */
+    String checkDuration(String key, long actualMs) {
+        String expected = baseline.getProperty(key);
+        if (expected == null) {
+            return missing(key);
+        }
+        long expectedMs = Long.parseLong(expected.trim());
+        long limit = (long) (expectedMs * (1 + threshold));
+        if (actualMs > limit && actualMs - expectedMs > NOISE_FLOOR_MS) {
+            return key + ": " + actualMs + "ms, 基线 " + expectedMs + "ms, 允许上限 " + limit + "ms";
+        }
+        return null;
+    }
+
+    /**
+     * 与基线比较布尔指标（如配置缓存是否复用），基线为true而实际为false时判定为退化
+     */
+    String checkFlag(String key, boolean actual) {
+        String expected = baseline.getProperty(key);
+        if (expected == null) {
+            return missing(key);
+        }
+        if (Boolean.parseBoolean(expected.trim()) && !actual) {
+            return key + ": 基线为true，实际为false";
+        }
+        return null;
+    }
+
+    private String missing(String key) {
+        return key + ": 缺少基线（" + baselineFile.getName() + "），请用 -Dperf.updateBaseline=true 记录";
+    }
+
+    static void merge(File file, Properties values, String comment) throws IOException {
+        Properties merged = new Properties();
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                merged.load(in);
+            }
+        }
+        merged.putAll(values);
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(file)) {
+            merged.store(out, comment);
+        }
+    }
+
+    File getBaselineFile() {
+        return baselineFile;
+    }
+
+    static List<String> nonNull(String... items) {
+        List<String> result = new ArrayList<>();
+        for (String item : items) {
+            if (item != null) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.flutterplugin.perf;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * FlutterDynamicPlugin性能测试
+ * 分别在1、8、32个变体的工程上测量配置耗时、SoDynamicTask执行耗时、重复执行耗时，
+ * 以及merge<Variant>NativeLibs（带插件任务）在配置缓存下的耗时和是否复用，
+ * 与 src/perfTest/resources/perf-baseline.properties 比较，超出阈值（默认25%）或缺少基线时失败
+ *
+ * 参数：-Dperf.threshold=0.25 -Dperf.runs=3 -Dperf.updateBaseline=true
+ */
+@RunWith(Parameterized.class)
+public class PluginPerformanceTest {
+
+    private static final int SO_SIZE = 512 * 1024;
+
+    @Parameterized.Parameters(name = "{0} variants")
+    public static Collection<Object[]> variantCounts() {
+        return Arrays.asList(new Object[][]{{1}, {8}, {32}});
+    }
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static String sdkDir;
+
+    private final int variantCount;
+
+    public PluginPerformanceTest(int variantCount) {
+        this.variantCount = variantCount;
+    }
+
+    @BeforeClass
+    public static void findAndroidSdk() {
+        sdkDir = System.getenv("ANDROID_SDK_ROOT");
+        if (sdkDir == null || sdkDir.isEmpty()) {
+            sdkDir = System.getenv("ANDROID_HOME");
+        }
+        Assume.assumeTrue("需要Android SDK（ANDROID_SDK_ROOT或ANDROID_HOME）", sdkDir != null && new File(sdkDir).isDirectory());
+    }
+
+    @Test
+    public void pluginCostStaysWithinBaseline() throws IOException {
+        SyntheticAndroidProject project = new SyntheticAndroidProject(temporaryFolder.newFolder("project"), variantCount, SO_SIZE);
+        project.generate(sdkDir);
+        File timingFile = new File(temporaryFolder.getRoot(), "task-timing.properties");
+        File initScript = project.writeTaskTimingInitScript(timingFile);
+        int runs = Integer.getInteger("perf.runs", 3);
+        String mergeTask = "merge" + project.firstVariantName() + "NativeLibs";
+
+        // 预热：启动守护进程并完成首次配置
+        runner(project, "help").build();
+
+        List<Long> configuration = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            configuration.add(timed(runner(project, "help")));
+        }
+
+        List<Long> execution = new ArrayList<>();
+        List<Long> rerun = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            runner(project, mergeTask, "--init-script", initScript.getAbsolutePath()).build();
+            execution.add(sumTaskTimings(timingFile));
+            // 再次执行同一任务：衡量无改动时插件带来的耗时
+            rerun.add(timed(runner(project, mergeTask)));
+        }
+
+        // 配置缓存在执行耗时所用的同一任务图上检查，插件任务在执行期访问Project等问题会使缓存条目被丢弃；
+        // 问题按warn处理，保证构建继续并由是否复用体现出来
+        runner(project, mergeTask, "--configuration-cache", "--configuration-cache-problems=warn").build();
+        long start = System.nanoTime();
+        BuildResult cached = runner(project, mergeTask, "--configuration-cache", "--configuration-cache-problems=warn").build();
+        long configurationCacheMs = (System.nanoTime() - start) / 1_000_000;
+        boolean configurationCacheReused = cached.getOutput().contains("Reusing configuration cache");
+        if (!configurationCacheReused) {
+            System.out.println("配置缓存未复用(" + mergeTask + "):\n" + cached.getOutput());
+        }
+
+        String prefix = "variants." + variantCount + ".";
+        Properties results = new Properties();
+        results.setProperty(prefix + "configurationMs", String.valueOf(median(configuration)));
+        results.setProperty(prefix + "soDynamicTaskMs", String.valueOf(median(execution)));
+        results.setProperty(prefix + "upToDateRerunMs", String.valueOf(median(rerun)));
+        results.setProperty(prefix + "configurationCacheMs", String.valueOf(configurationCacheMs));
+        results.setProperty(prefix + "configurationCacheReused", String.valueOf(configurationCacheReused));
+        System.out.println("FlutterDynamicPlugin性能(" + variantCount + "个变体): " + results);
+
+        PerfBaseline.merge(new File(System.getProperty("perf.resultFile", "build/reports/perf/perf-results.properties")),
+                results, "FlutterDynamicPlugin performance results");
+        PerfBaseline baseline = new PerfBaseline(
+                new File(System.getProperty("perf.baselineFile", "src/perfTest/resources/perf-baseline.properties")),
+                Double.parseDouble(System.getProperty("perf.threshold", "0.25")));
+        if (Boolean.getBoolean("perf.updateBaseline")) {
+            PerfBaseline.merge(baseline.getBaselineFile(), results, "FlutterDynamicPlugin performance baseline");
+            return;
+        }
+
+        List<String> regressions = PerfBaseline.nonNull(
+                baseline.checkDuration(prefix + "configurationMs", median(configuration)),
+                baseline.checkDuration(prefix + "soDynamicTaskMs", median(execution)),
+                baseline.checkDuration(prefix + "upToDateRerunMs", median(rerun)),
+                baseline.checkDuration(prefix + "configurationCacheMs", configurationCacheMs),
+                baseline.checkFlag(prefix + "configurationCacheReused", configurationCacheReused));
+        if (!regressions.isEmpty()) {
+            fail("插件性能退化或缺少基线:\n  " + String.join("\n  ", regressions));
+        }
+    }
+
+    private GradleRunner runner(SyntheticAndroidProject project, String... arguments) {
+        return GradleRunner.create()
+                .withProjectDir(project.getProjectDir())
+                .withPluginClasspath()
+                .withArguments(arguments);
+    }
+
+    private static long timed(GradleRunner runner) {
+        long start = System.nanoTime();
+        runner.build();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static long sumTaskTimings(File timingFile) throws IOException {
+        assertTrue("未记录到flutterOpt任务耗时", timingFile.exists());
+        Properties timings = new Properties();
+        try (InputStream in = new FileInputStream(timingFile)) {
+            timings.load(in);
+        }
+        long total = 0;
+        for (String key : timings.stringPropertyNames()) {
+            total += Long.parseLong(timings.getProperty(key).trim());
+        }
+        return total;
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
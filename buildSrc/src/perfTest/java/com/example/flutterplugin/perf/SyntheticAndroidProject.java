@@ -0,0 +1,139 @@
+package com.example.flutterplugin.perf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * 生成用于性能测试的Android工程
+ * 每个变体对应一个productFlavor的release构建，jniLibs中放入固定种子生成的假SO
+ */
+class SyntheticAndroidProject {
+
+    static final String[] ABIS = {"arm64-v8a", "armeabi-v7a"};
+    static final String[] SO_NAMES = {"libflutter", "libapp"};
+
+    private final File projectDir;
+    private final int variantCount;
+    private final int soSize;
+
+    SyntheticAndroidProject(File projectDir, int variantCount, int soSize) {
+        this.projectDir = projectDir;
+        this.variantCount = variantCount;
+        this.soSize = soSize;
+    }
+
+    File getProjectDir() {
+        return projectDir;
+    }
+
+    /**
+     * 第一个变体的名称（首字母大写），例如 Flavor0Release
+     */
+    String firstVariantName() {
+        return "Flavor0Release";
+    }
+
+    void generate(String sdkDir) throws IOException {
+        // AGP在插件类路径中，但aapt2等运行时依赖仍需从仓库解析
+        write("settings.gradle", ""
+                + "pluginManagement {\n"
+                + "    repositories {\n"
+                + "        google()\n"
+                + "        mavenCentral()\n"
+                + "        gradlePluginPortal()\n"
+                + "    }\n"
+                + "}\n"
+                + "rootProject.name = 'perf-" + variantCount + "'\n");
+        write("local.properties", "sdk.dir=" + sdkDir.replace("\\", "\\\\") + "\n");
+        write("gradle.properties", "android.useAndroidX=true\norg.gradle.jvmargs=-Xmx1536m\n");
+        write("src/main/AndroidManifest.xml", "<manifest package=\"com.example.perf\" />\n");
+
+        StringBuilder flavors = new StringBuilder();
+        for (int i = 0; i < variantCount; i++) {
+            flavors.append("        flavor").append(i).append(" { dimension 'perf' }\n");
+        }
+        write("build.gradle", ""
+                + "plugins {\n"
+                + "    id 'com.android.application'\n"
+                + "    id 'com.example.flutterplugin'\n"
+                + "}\n"
+                + "\n"
+                + "repositories {\n"
+                + "    google()\n"
+                + "    mavenCentral()\n"
+                + "}\n"
+                + "\n"
+                + "dynamicSo {\n"
+                + "    libapp {\n"
+                + "        storage 'local'\n"
+                + "        localRepoDir 'so_repo'\n"
+                + "    }\n"
+                + "    libflutter {\n"
+                + "        storage 'local'\n"
+                + "        localRepoDir 'so_repo'\n"
+                + "    }\n"
+                + "}\n"
+                + "\n"
+                + "android {\n"
+                + "    compileSdk 30\n"
+                + "    defaultConfig {\n"
+                + "        applicationId 'com.example.perf'\n"
+                + "        minSdk 24\n"
+                + "        targetSdk 30\n"
+                + "        versionCode 1\n"
+                + "        versionName '1.0'\n"
+                + "    }\n"
+                + "    flavorDimensions 'perf'\n"
+                + "    productFlavors {\n"
+                + flavors
+                + "    }\n"
+                + "    variantFilter { variant ->\n"
+                + "        if (variant.buildType.name == 'debug') {\n"
+                + "            variant.ignore = true\n"
+                + "        }\n"
+                + "    }\n"
+                + "}\n");
+
+        Random random = new Random(42);
+        byte[] payload = new byte[soSize];
+        for (String abi : ABIS) {
+            for (String soName : SO_NAMES) {
+                random.nextBytes(payload);
+                File so = new File(projectDir, "src/main/jniLibs/" + abi + "/" + soName + ".so");
+                so.getParentFile().mkdirs();
+                try (OutputStream out = new FileOutputStream(so)) {
+                    out.write(payload);
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录flutterOpt分组任务耗时的初始化脚本
+     */
+    File writeTaskTimingInitScript(File timingFile) throws IOException {
+        File initScript = new File(projectDir, "task-timing.gradle");
+        Files.write(initScript.toPath(), (""
+                + "def starts = [:]\n"
+                + "def timingFile = new File('" + timingFile.getAbsolutePath().replace("\\", "\\\\") + "')\n"
+                + "timingFile.delete()\n"
+                + "gradle.taskGraph.beforeTask { task -> starts[task.path] = System.nanoTime() }\n"
+                + "gradle.taskGraph.afterTask { task ->\n"
+                + "    if (task.group == 'flutterOpt' && starts[task.path] != null) {\n"
+                + "        timingFile << \"${task.path}=${(System.nanoTime() - starts[task.path]) / 1000000}\\n\"\n"
+                + "    }\n"
+                + "}\n").getBytes(StandardCharsets.UTF_8));
+        return initScript;
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(projectDir, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
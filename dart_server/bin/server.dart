@@ -13,15 +13,25 @@ import 'package:crypto/crypto.dart';
 class FlutterSoServer {
   static const int defaultPort = 1234;
   static const String soPackagesDir = 'so_packages';
+  /// 构建插件写入每个包的元数据文件
+  static const String packageInfoFile = 'package_info.json';
+  /// 客户端可直接使用缓存的包列表的时间（秒），过期后带If-None-Match重新验证
+  static const int catalogMaxAgeSeconds = 300;
   
   late final Router _router;
   late final Directory _packagesDir;
   
-  FlutterSoServer() {
+  /// 包信息缓存，文件大小和修改时间不变时不再重新计算MD5
+  final _packageInfoCache = <String, ({int size, DateTime modified, Map<String, dynamic> info})>{};
+  
+  FlutterSoServer({String packagesDir = soPackagesDir}) {
     _setupRouter();
-    _setupPackagesDirectory();
+    _setupPackagesDirectory(packagesDir);
   }
   
+  /// 请求处理器，供测试直接调用
+  Handler get handler => _router.call;
+  
   void _setupRouter() {
     _router = Router()
       ..get('/', _handleRoot)
@@ -31,8 +41,8 @@ class FlutterSoServer {
       ..get('/api/status', _handleStatus);
   }
   
-  void _setupPackagesDirectory() {
-    _packagesDir = Directory(soPackagesDir);
+  void _setupPackagesDirectory(String packagesDir) {
+    _packagesDir = Directory(packagesDir);
     if (!_packagesDir.existsSync()) {
       _packagesDir.createSync(recursive: true);
       print('📁 创建SO包目录: ${_packagesDir.absolute.path}');
@@ -60,7 +70,7 @@ class FlutterSoServer {
     
     <h2>📋 API接口</h2>
     <ul>
-        <li><code>GET /api/so-packages</code> - 获取SO包列表</li>
+        <li><code>GET /api/so-packages</code> - 获取SO包列表（可选过滤参数 abi、library、appVersion）</li>
         <li><code>GET /api/download/&lt;filename&gt;</code> - 下载SO包</li>
         <li><code>POST /api/upload</code> - 上传SO包</li>
         <li><code>GET /api/status</code> - 服务器状态</li>
@@ -100,29 +110,73 @@ class FlutterSoServer {
   }
   
   /// 获取SO包列表
+  /// 支持查询参数过滤：
+  /// - `abi`：只返回该架构和通用（universal）的包
+  /// - `library`：只返回文件名以这些前缀开头的包，多个用逗号分隔
+  /// - `appVersion`：包声明了minAppVersion/maxAppVersion时，只返回兼容该App版本的包
+  /// 带任一过滤参数时，每个（库，架构）只返回最新版本
   Response _handleGetSoPackages(Request request) {
     try {
-      final packages = <Map<String, dynamic>>[];
+      final query = request.url.queryParameters;
+      final abi = query['abi'];
+      final libraries = query['library']
+          ?.split(',')
+          .map((library) => library.trim())
+          .where((library) => library.isNotEmpty)
+          .toList();
+      final appVersion = query['appVersion'];
+      final filtered = abi != null || libraries != null || appVersion != null;
+      
+      var packages = <Map<String, dynamic>>[];
       
       for (final file in _packagesDir.listSync()) {
         if (file is File && file.path.endsWith('.zip')) {
           final packageInfo = _extractPackageInfo(file);
-          if (packageInfo != null) {
-            packages.add(packageInfo);
-          }
+          if (packageInfo == null) continue;
+          // 未能确定ABI的旧包交给客户端按文件名判断
+          final packageAbi = packageInfo['abi'] as String?;
+          if (abi != null && packageAbi != null && packageAbi != abi && packageAbi != 'universal') continue;
+          if (libraries != null && _libraryOf(packageInfo['fileName'], libraries) == null) continue;
+          if (appVersion != null && !_isAppVersionCompatible(packageInfo, appVersion)) continue;
+          packages.add(packageInfo);
         }
       }
       
-      // 按版本排序
-      packages.sort((a, b) => _compareVersions(b['version'], a['version']));
+      // 按版本从高到低排序，版本相同时按文件名排序，保证结果稳定
+      packages.sort((a, b) {
+        final byVersion = _compareVersions(b['version'], a['version']);
+        return byVersion != 0 ? byVersion : (a['fileName'] as String).compareTo(b['fileName']);
+      });
+      
+      if (filtered) {
+        // 已按版本从高到低排序，每个（库，架构）保留第一个；ABI未知的旧包不合并
+        final seen = <String>{};
+        packages = packages.where((pkg) {
+          final library = libraries != null
+              ? _libraryOf(pkg['fileName'], libraries)!
+              : _parseFilename(pkg['fileName'])?.library ?? pkg['fileName'];
+          return seen.add('$library|${pkg['abi'] ?? pkg['fileName']}');
+        }).toList();
+      }
       
-      // 按版本排序
-      packages.sort((a, b) => _compareVersions(b['version'], a['version']));
+      final body = jsonEncode(packages);
+      // 强ETag：响应内容的MD5，过滤参数不同的响应内容不同，ETag也不同
+      final etag = '"${md5.convert(utf8.encode(body))}"';
+      final headers = {
+        'ETag': etag,
+        'Cache-Control': 'max-age=$catalogMaxAgeSeconds',
+      };
+      final ifNoneMatch = request.headers['if-none-match'];
+      if (ifNoneMatch != null &&
+          ifNoneMatch.split(',').map((tag) => tag.trim()).any((tag) => tag == etag || tag == '*')) {
+        print('📋 SO包列表未变化，返回304');
+        return Response.notModified(headers: headers);
+      }
       
-      print('📋 返回SO包列表，共 ${packages.length} 个包');
+      print('📋 返回SO包列表，共 ${packages.length} 个包${filtered ? '（abi=$abi, library=$libraries, appVersion=$appVersion）' : ''}');
       return Response.ok(
-        jsonEncode(packages),
-        headers: {'Content-Type': 'application/json; charset=utf-8'}
+        body,
+        headers: {...headers, 'Content-Type': 'application/json; charset=utf-8'}
       );
     } catch (e) {
       print('❌ 获取SO包列表失败: $e');
@@ -130,7 +184,32 @@ class FlutterSoServer {
     }
   }
   
-  /// 下载SO包
+  /// 返回文件名匹配的最长库名前缀，不匹配时为null
+  String? _libraryOf(String fileName, List<String> libraries) {
+    String? matched;
+    for (final library in libraries) {
+      if (fileName.startsWith(library) && (matched == null || library.length > matched.length)) {
+        matched = library;
+      }
+    }
+    return matched;
+  }
+  
+  /// 包未声明App版本范围时视为兼容
+  bool _isAppVersionCompatible(Map<String, dynamic> packageInfo, String appVersion) {
+    try {
+      final minAppVersion = packageInfo['minAppVersion'] as String?;
+      final maxAppVersion = packageInfo['maxAppVersion'] as String?;
+      if (minAppVersion != null && _compareVersions(appVersion, minAppVersion) < 0) return false;
+      if (maxAppVersion != null && _compareVersions(appVersion, maxAppVersion) > 0) return false;
+      return true;
+    } catch (e) {
+      // 版本号无法解析时不过滤
+      return true;
+    }
+  }
+  
+  /// 下载SO包，支持 Range / If-Range 断点续传
   Response _handleDownloadSoPackage(Request request) {
     final filename = request.params['filename']!;
     final file = File(path.join(_packagesDir.path, filename));
@@ -141,15 +220,49 @@ class FlutterSoServer {
     }
     
     try {
-      final bytes = file.readAsBytesSync();
-      print('📥 下载SO包: $filename (${bytes.length} bytes)');
+      final length = file.lengthSync();
+      // ETag使用按大小和修改时间缓存的MD5，Range请求和分段下载不再重复读取整个文件
+      final fileMd5 = _extractPackageInfo(file)?['md5'] ?? md5.convert(file.readAsBytesSync()).toString();
+      final etag = '"$fileMd5"';
+      final headers = {
+        'Content-Type': 'application/zip',
+        'Content-Disposition': 'attachment; filename="$filename"',
+        'Accept-Ranges': 'bytes',
+        'ETag': etag,
+      };
       
+      // If-Range与当前ETag不一致时忽略Range，返回完整文件
+      final rangeHeader = request.headers['range'];
+      final ifRange = request.headers['if-range'];
+      if (rangeHeader != null && (ifRange == null || ifRange == etag)) {
+        final match = RegExp(r'^bytes=(\d+)-(\d*)$').firstMatch(rangeHeader.trim());
+        if (match != null) {
+          final start = int.parse(match.group(1)!);
+          final end = match.group(2)!.isEmpty
+              ? length - 1
+              : (int.parse(match.group(2)!)).clamp(0, length - 1);
+          if (start >= length || start > end) {
+            return Response(416, headers: {...headers, 'Content-Range': 'bytes */$length'});
+          }
+          print('📥 续传SO包: $filename ($start-$end/$length)');
+          return Response(
+            206,
+            body: file.openRead(start, end + 1),
+            headers: {
+              ...headers,
+              'Content-Range': 'bytes $start-$end/$length',
+              'Content-Length': '${end - start + 1}',
+            },
+          );
+        }
+      }
+      
+      print('📥 下载SO包: $filename ($length bytes)');
       return Response.ok(
-        bytes,
+        file.openRead(),
         headers: {
-          'Content-Type': 'application/zip',
-          'Content-Disposition': 'attachment; filename="$filename"',
-          'Content-Length': '${bytes.length}',
+          ...headers,
+          'Content-Length': '$length',
         }
       );
     } catch (e) {
@@ -157,6 +270,7 @@ class FlutterSoServer {
       return Response.internalServerError(body: '下载文件失败: $e');
     }
   }
+
   
   /// 上传SO包
   Future<Response> _handleUploadSoPackage(Request request) async {
@@ -259,32 +373,98 @@ class FlutterSoServer {
   Map<String, dynamic>? _extractPackageInfo(File zipFile) {
     try {
       final stat = zipFile.statSync();
+      final cached = _packageInfoCache[zipFile.path];
+      if (cached != null && cached.size == stat.size && cached.modified == stat.modified) {
+        return Map.of(cached.info);
+      }
       final bytes = zipFile.readAsBytesSync();
       final md5Hash = md5.convert(bytes).toString();
       
-      // 从文件名提取版本信息
+      // 版本、ABI和App版本范围优先取包内的package_info.json，没有时从文件名解析
       final filename = path.basename(zipFile.path);
-      final version = _extractVersionFromFilename(filename) ?? '1.0.0';
+      final parsed = _parseFilename(filename);
+      final embedded = _readEmbeddedPackageInfo(bytes);
+      // package_info.json中的版本可能带有"-<md5>"后缀，只保留基础版本号
+      final embeddedVersion = (embedded?['version'] as String?)?.split('-').first;
       
       final packageInfo = <String, dynamic>{};
       packageInfo['fileName'] = filename;
-      packageInfo['version'] = version;
+      packageInfo['version'] = embeddedVersion != null && RegExp(r'^\d+(\.\d+)*$').hasMatch(embeddedVersion)
+          ? embeddedVersion
+          : parsed?.version ?? '1.0.0';
       packageInfo['size'] = stat.size;
       packageInfo['md5'] = md5Hash;
       packageInfo['url'] = '/api/download/$filename';
-      packageInfo['abi'] = 'arm64-v8a';
-      return packageInfo;
+      final abi = embedded?['abi'] as String? ?? parsed?.abi;
+      if (abi != null) {
+        packageInfo['abi'] = abi;
+      }
+      for (final key in const ['minAppVersion', 'maxAppVersion']) {
+        final value = embedded?[key];
+        if (value is String && value.isNotEmpty) {
+          packageInfo[key] = value;
+        }
+      }
+      _packageInfoCache[zipFile.path] = (size: stat.size, modified: stat.modified, info: packageInfo);
+      return Map.of(packageInfo);
     } catch (e) {
       print('❌ 提取包信息失败: ${zipFile.path}, $e');
       return null;
     }
   }
   
-  /// 从文件名提取版本
-  String? _extractVersionFromFilename(String filename) {
-    final regex = RegExp(r'_(\d+\.\d+\.\d+)\.zip$');
-    final match = regex.firstMatch(filename);
-    return match?.group(1);
+  /// 解析构建插件生成的文件名 `<库名>_<版本>-<md5>-<abi>.zip`，兼容旧的 `<库名>_<版本>.zip`
+  ({String library, String version, String? abi})? _parseFilename(String filename) {
+    final match = RegExp(r'^([^_]+)_(\d+\.\d+\.\d+)(?:-[0-9a-fA-F]{32}-(.+))?\.zip$').firstMatch(filename);
+    if (match == null) return null;
+    return (library: match.group(1)!, version: match.group(2)!, abi: match.group(3));
+  }
+  
+  /// 读取ZIP中的package_info.json，不存在或无法解析时返回null
+  Map<String, dynamic>? _readEmbeddedPackageInfo(Uint8List bytes) {
+    try {
+      final data = ByteData.sublistView(bytes);
+      // 从末尾查找中央目录结束记录（EOCD），其后最多是64K的注释
+      var eocd = -1;
+      for (var i = bytes.length - 22; i >= 0 && i >= bytes.length - 22 - 0xFFFF; i--) {
+        if (data.getUint32(i, Endian.little) == 0x06054b50) {
+          eocd = i;
+          break;
+        }
+      }
+      if (eocd < 0) return null;
+      final entryCount = data.getUint16(eocd + 10, Endian.little);
+      var offset = data.getUint32(eocd + 16, Endian.little);
+      for (var i = 0; i < entryCount; i++) {
+        if (data.getUint32(offset, Endian.little) != 0x02014b50) return null;
+        final method = data.getUint16(offset + 10, Endian.little);
+        final compressedSize = data.getUint32(offset + 20, Endian.little);
+        final nameLength = data.getUint16(offset + 28, Endian.little);
+        final extraLength = data.getUint16(offset + 30, Endian.little);
+        final commentLength = data.getUint16(offset + 32, Endian.little);
+        final localOffset = data.getUint32(offset + 42, Endian.little);
+        final name = utf8.decode(bytes.sublist(offset + 46, offset + 46 + nameLength));
+        if (name == packageInfoFile) {
+          // 本地文件头的扩展字段长度可能与中央目录不同，需要从本地文件头读取
+          final localNameLength = data.getUint16(localOffset + 26, Endian.little);
+          final localExtraLength = data.getUint16(localOffset + 28, Endian.little);
+          final start = localOffset + 30 + localNameLength + localExtraLength;
+          final raw = bytes.sublist(start, start + compressedSize);
+          final List<int>? content = switch (method) {
+            0 => raw,
+            8 => ZLibDecoder(raw: true).convert(raw),
+            _ => null,
+          };
+          if (content == null) return null;
+          return jsonDecode(utf8.decode(content)) as Map<String, dynamic>;
+        }
+        offset += 46 + nameLength + extraLength + commentLength;
+      }
+      return null;
+    } catch (e) {
+      print('⚠️ 读取package_info.json失败: $e');
+      return null;
+    }
   }
   
   /// 版本比较
@@ -0,0 +1,144 @@
+import 'dart:convert';
+import 'dart:io';
+import 'dart:typed_data';
+
+import 'package:path/path.dart' as path;
+import 'package:shelf/shelf.dart';
+import 'package:test/test.dart';
+
+import '../bin/server.dart';
+
+/// SO包列表按ABI、库名和App版本过滤
+void main() {
+  late Directory packagesDir;
+  late FlutterSoServer server;
+
+  const arm64Md5 = '0123456789abcdef0123456789abcdef';
+  const armv7Md5 = 'fedcba9876543210fedcba9876543210';
+
+  setUp(() {
+    packagesDir = Directory.systemTemp.createTempSync('so_packages_test');
+    // 每个ABI各一个包，同一库名同一版本
+    _writePackage(packagesDir, 'libflutter_3.22.0-$arm64Md5-arm64-v8a.zip',
+        {'version': '3.22.0', 'abi': 'arm64-v8a'});
+    _writePackage(packagesDir, 'libflutter_3.22.0-$armv7Md5-armeabi-v7a.zip',
+        {'version': '3.22.0', 'abi': 'armeabi-v7a'});
+    _writePackage(packagesDir, 'libflutter_3.19.0-$armv7Md5-armeabi-v7a.zip',
+        {'version': '3.19.0', 'abi': 'armeabi-v7a'});
+    _writePackage(packagesDir, 'libapp_1.2.0-$arm64Md5-arm64-v8a.zip',
+        {'version': '1.2.0-$arm64Md5', 'abi': 'arm64-v8a', 'minAppVersion': '2.0.0', 'maxAppVersion': '9.9.9'});
+    server = FlutterSoServer(packagesDir: packagesDir.path);
+  });
+
+  tearDown(() {
+    packagesDir.deleteSync(recursive: true);
+  });
+
+  Future<List<Map<String, dynamic>>> list(String query) async {
+    final response = await server.handler(Request('GET', Uri.parse('http://localhost/api/so-packages?$query')));
+    expect(response.statusCode, 200);
+    return (jsonDecode(await response.readAsString()) as List).cast<Map<String, dynamic>>();
+  }
+
+  test('每个设备ABI只返回该ABI的最新包', () async {
+    final armv7 = await list('abi=armeabi-v7a&library=libflutter');
+    expect(armv7, hasLength(1));
+    expect(armv7.single['abi'], 'armeabi-v7a');
+    expect(armv7.single['version'], '3.22.0');
+    expect(armv7.single['fileName'], contains('armeabi-v7a'));
+
+    final arm64 = await list('abi=arm64-v8a&library=libflutter');
+    expect(arm64, hasLength(1));
+    expect(arm64.single['abi'], 'arm64-v8a');
+    expect(arm64.single['fileName'], contains('arm64-v8a'));
+  });
+
+  test('不带过滤参数时返回所有包并从package_info.json读取版本', () async {
+    final all = await list('');
+    expect(all, hasLength(4));
+    final app = all.singleWhere((pkg) => (pkg['fileName'] as String).startsWith('libapp'));
+    expect(app['version'], '1.2.0');
+    expect(app['minAppVersion'], '2.0.0');
+  });
+
+  test('按App版本范围过滤', () async {
+    expect(await list('abi=arm64-v8a&library=libapp&appVersion=1.5.0'), isEmpty);
+    expect(await list('abi=arm64-v8a&library=libapp&appVersion=2.1.0'), hasLength(1));
+  });
+
+  test('没有package_info.json时从文件名解析版本和ABI', () async {
+    _writeZip(File(path.join(packagesDir.path, 'libflutter_3.24.0-$arm64Md5-armeabi-v7a.zip')), {});
+    final armv7 = await list('abi=armeabi-v7a&library=libflutter');
+    expect(armv7.single['version'], '3.24.0');
+    expect(armv7.single['abi'], 'armeabi-v7a');
+  });
+}
+
+void _writePackage(Directory dir, String fileName, Map<String, dynamic> packageInfo) {
+  _writeZip(File(path.join(dir.path, fileName)), {
+    FlutterSoServer.packageInfoFile: utf8.encode(jsonEncode(packageInfo)),
+    'lib.so': utf8.encode(fileName),
+  });
+}
+
+/// 写出只包含STORED条目的最小ZIP
+void _writeZip(File file, Map<String, List<int>> entries) {
+  final out = BytesBuilder();
+  final central = BytesBuilder();
+  entries.forEach((name, content) {
+    final nameBytes = utf8.encode(name);
+    final crc = _crc32(content);
+    final localOffset = out.length;
+    out.add(_header(0x04034b50, [20, 0, 0, 0, 0], [crc, content.length, content.length], [nameBytes.length, 0]));
+    out.add(nameBytes);
+    out.add(content);
+    central.add(_header(0x02014b50, [20, 20, 0, 0, 0, 0], [crc, content.length, content.length],
+        [nameBytes.length, 0, 0, 0, 0]));
+    // 外部属性和本地文件头偏移
+    central.add((ByteData(8)..setUint32(4, localOffset, Endian.little)).buffer.asUint8List());
+    central.add(nameBytes);
+  });
+  final centralOffset = out.length;
+  final centralBytes = central.takeBytes();
+  out.add(centralBytes);
+  final eocd = ByteData(22)
+    ..setUint32(0, 0x06054b50, Endian.little)
+    ..setUint16(8, entries.length, Endian.little)
+    ..setUint16(10, entries.length, Endian.little)
+    ..setUint32(12, centralBytes.length, Endian.little)
+    ..setUint32(16, centralOffset, Endian.little);
+  out.add(eocd.buffer.asUint8List());
+  file.writeAsBytesSync(out.takeBytes());
+}
+
+/// 签名、若干16位字段、CRC和两个大小、再若干16位字段
+Uint8List _header(int signature, List<int> shortsBefore, List<int> ints, List<int> shortsAfter) {
+  final data = ByteData(4 + shortsBefore.length * 2 + ints.length * 4 + shortsAfter.length * 2);
+  var offset = 0;
+  data.setUint32(offset, signature, Endian.little);
+  offset += 4;
+  for (final value in shortsBefore) {
+    data.setUint16(offset, value, Endian.little);
+    offset += 2;
+  }
+  for (final value in ints) {
+    data.setUint32(offset, value, Endian.little);
+    offset += 4;
+  }
+  for (final value in shortsAfter) {
+    data.setUint16(offset, value, Endian.little);
+    offset += 2;
+  }
+  return data.buffer.asUint8List();
+}
+
+int _crc32(List<int> bytes) {
+  var crc = 0xFFFFFFFF;
+  for (final byte in bytes) {
+    crc ^= byte;
+    for (var i = 0; i < 8; i++) {
+      crc = (crc & 1) != 0 ? (crc >> 1) ^ 0xEDB88320 : crc >> 1;
+    }
+  }
+  return crc ^ 0xFFFFFFFF;
+}